@@ -10,11 +10,22 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static omero.rtypes.rint;
 import static omero.rtypes.rstring;
@@ -35,11 +46,18 @@ import org.apache.commons.io.filefilter.TrueFileFilter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
 /**
  * Utility class which given any {@link File} object will determine the correct
  * number and members of a given import. This facility permits iterating over a
  * directory.
  *
+ * The directories are walked once to list the files, which are then read by
+ * {@link ImportConfig#parallelScan} threads, each with its own copy of the
+ * reader. The candidates are accepted in the order of the walk, so the
+ * result is the same as when reading the files one after the other.
+ *
  * This class is NOT thread-safe.
  *
  * @since Beta4.1
@@ -121,24 +139,48 @@ public class ImportCandidates extends DirectoryWalker
     final private List<ImportContainer> containers = new ArrayList<ImportContainer>();
     final private long start = System.currentTimeMillis();
 
+    /**
+     * The files found by the walk, in order.
+     */
+    final private List<Candidate> candidates = new ArrayList<Candidate>();
+
+    /**
+     * The index of the first candidate known to use each file, so that the
+     * scanning threads can skip the files used by a candidate found earlier.
+     */
+    final private ConcurrentMap<String, Integer> claimedBy =
+            new ConcurrentHashMap<String, Integer>();
+
+    /**
+     * The reader and the pending events of the current scanning thread,
+     * <code>null</code> on the thread which called the constructor.
+     */
+    final private ThreadLocal<Scanner> scanner = new ThreadLocal<Scanner>();
+
+    /**
+     * The readers created for the scanning threads.
+     */
+    final private List<OMEROWrapper> scannerReaders =
+            new ArrayList<OMEROWrapper>();
+
     /**
      * Time taken for {@link IFormatReader#setId()}
      */
-    long readerTime = 0;
+    final AtomicLong readerTime = new AtomicLong();
 
     /**
      * Current count of calls to {@link IFormatReader#setId()}.
      */
-    int setids = 0;
+    final AtomicInteger setids = new AtomicInteger();
 
     /**
      * Number of times UNKNOWN_EVENT was raised
      */
-    int unknown = 0;
+    final AtomicInteger unknown = new AtomicInteger();
 
     /**
      * Current count of files processed. This will be incremented in two phases:
-     * once during directory counting, and once during parsing.
+     * once while walking the directories, and once during parsing.
      */
     int count = 0;
 
@@ -219,7 +261,7 @@ public class ImportCandidates extends DirectoryWalker
             execute(paths);
             total = count;
             count = 0;
-            execute(paths);
+            scan(reader.getConfig().parallelScan.get());
             g = new Groups(usedBy);
             g.parse(containers);
             long totalElapsed = System.currentTimeMillis() - start;
@@ -238,6 +280,9 @@ public class ImportCandidates extends DirectoryWalker
             g = null;
             total = -1;
             count = -1;
+        } finally {
+            candidates.clear();
+            claimedBy.clear();
         }
 
     }
@@ -364,9 +409,8 @@ public class ImportCandidates extends DirectoryWalker
     /**
      * Method called during
      * {@link ImportCandidates#ImportCandidates(OMEROWrapper, String[], IObserver)}
-     * to operate on all the given paths. This will be called twice: once
-     * without reading the files, and once (with the known total) using
-     * {@link #reader}
+     * to list the files of all the given paths without reading them. The
+     * files are then read by {@link #scan(int)}.
      *
      * @param paths
      */
@@ -413,20 +457,21 @@ public class ImportCandidates extends DirectoryWalker
             return null;
         }
 
+        final OMEROWrapper reader = reader();
         String format = null;
         String[] usedFiles = new String[] { path };
         long start = System.currentTimeMillis();
         try {
 
             try {
-                setids++;
+                setids.incrementAndGet();
                 reader.close();
                 reader.setMetadataStore(new ImageNameMetadataStore());
                 reader.setMetadataOptions(
                         new DynamicMetadataOptions(METADATA_LEVEL));
                 reader.setId(path);
                 format = reader.getFormat();
-                usedFiles = getOrderedFiles();
+                usedFiles = getOrderedFiles(reader);
                 String[] domains = reader.getReader().getDomains();
                 boolean isSPW = Arrays.asList(domains).contains(FormatTools.HCS_DOMAIN);
 
@@ -443,18 +488,18 @@ public class ImportCandidates extends DirectoryWalker
                 return ic;
             } finally
             {
-                readerTime += (System.currentTimeMillis() - start);
+                readerTime.addAndGet(System.currentTimeMillis() - start);
                 reader.close();
             }
 
         } catch (UnsupportedCompressionException uce)
         {
-            unknown++;
+            unknown.incrementAndGet();
             // Handling as UNKNOWN_FORMAT for 4.3.0
             safeUpdate(new ErrorHandler.UNKNOWN_FORMAT(path, uce, this));
         } catch (UnknownFormatException ufe)
         {
-            unknown++;
+            unknown.incrementAndGet();
             safeUpdate(new ErrorHandler.UNKNOWN_FORMAT(path, ufe, this));
         } catch (MissingLibraryException mle)
         {
@@ -494,7 +539,7 @@ public class ImportCandidates extends DirectoryWalker
      * used files. All files which can be used to initialize a fileset are
      * returned first.
      */
-    private String[] getOrderedFiles() {
+    private String[] getOrderedFiles(OMEROWrapper reader) {
 
         FileInfo[] infos = reader.getAdvancedUsedFiles(false);
         String[] usedFiles = new String[infos.length];
@@ -532,6 +577,12 @@ public class ImportCandidates extends DirectoryWalker
      * @param event
      */
     private void safeUpdate(ImportEvent event) {
+        final Scanner current = scanner.get();
+        if (current != null) {
+            // Published in order by the thread which called the constructor.
+            current.events.add(event);
+            return;
+        }
         try {
             observer.update(null, event);
         } catch (Exception ex) {
@@ -563,30 +614,229 @@ public class ImportCandidates extends DirectoryWalker
             scanWithCancel(file, depth);
         }
 
-        // If this is just a count, return
-        if (total < 0) {
-            return;
-        }
+        candidates.add(new Candidate(file, depth, candidates.size()));
+    }
 
-        // Optimization.
-        if (allFiles.contains(file.getAbsolutePath())) {
-            return;
+    /**
+     * Reads the files listed by {@link #execute(String[])}. The files are
+     * read by the given number of threads in the order they were found,
+     * while the results are accepted in the same order by the calling
+     * thread: a file used by a candidate accepted earlier is skipped, as
+     * when reading the files one after the other. The scanning threads skip
+     * the files used by any candidate found earlier; should that candidate
+     * turn out to be skipped itself, the file is read again when accepted.
+     *
+     * @param threads the number of threads reading the files
+     * @throws CANCEL if a {@link SCANNING} event is cancelled
+     */
+    private void scan(int threads) throws CANCEL {
+        final ImportConfig config = reader.getConfig();
+        ExecutorService pool = null;
+        final List<Future<Result>> results =
+                new ArrayList<Future<Result>>(candidates.size());
+        if (threads > 1 && candidates.size() > 1) {
+            pool = Executors.newFixedThreadPool(threads,
+                    new ThreadFactoryBuilder().setDaemon(true)
+                    .setNameFormat("ImportCandidates-%d").build());
+            for (final Candidate candidate : candidates) {
+                results.add(pool.submit(new Callable<Result>() {
+                    public Result call() {
+                        return scan(candidate, config, true);
+                    }
+                }));
+            }
+        }
+        try {
+            for (Candidate candidate : candidates) {
+                count++;
+                // If this is the 100th file, publish an event
+                if (count%100 == 0) {
+                    scanWithCancel(candidate.file, candidate.depth);
+                }
+                final String path = candidate.file.getAbsolutePath();
+                if (candidate.file.getName().startsWith(".")
+                        || allFiles.contains(path)) {
+                    continue;
+                }
+                Result result = null;
+                if (pool != null) {
+                    result = get(results.get(candidate.index));
+                }
+                if (result == null || result.skipped) {
+                    result = scan(candidate, config, false);
+                }
+                for (ImportEvent event : result.events) {
+                    safeUpdate(event);
+                }
+                final ImportContainer info = result.container;
+                if (info == null) {
+                    continue;
+                }
+                containers.add(info);
+                allFiles.addAll(Arrays.asList(info.getUsedFiles()));
+                for (String string : info.getUsedFiles()) {
+                    List<String> users = usedBy.get(string);
+                    if (users == null) {
+                        users = new ArrayList<String>();
+                        usedBy.put(string, users);
+                    }
+                    users.add(path);
+                }
+            }
+        } finally {
+            if (pool != null && awaitTermination(pool)) {
+                synchronized (scannerReaders) {
+                    for (OMEROWrapper r : scannerReaders) {
+                        try {
+                            r.close();
+                        } catch (IOException e) {
+                            log.warn("Failed to close reader", e);
+                        }
+                    }
+                    scannerReaders.clear();
+                }
+            }
         }
+    }
 
-        ImportContainer info = singleFile(file, reader.getConfig());
-        if (info == null) {
-            return;
+    /**
+     * Cancels the files not yet read by the scanning threads and waits for
+     * the files being read to be finished with, so that the readers of the
+     * threads can be closed. Reading a file cannot be interrupted.
+     *
+     * @param pool the scanning threads
+     * @return if the scanning threads have all terminated, <code>false</code>
+     *         if interrupted while waiting on them
+     */
+    private boolean awaitTermination(ExecutorService pool) {
+        pool.shutdownNow();
+        try {
+            while (!pool.awaitTermination(1, TimeUnit.MINUTES)) {
+                log.info("Waiting on scanning threads to finish reading");
+            }
+            return true;
+        } catch (InterruptedException ie) {
+            log.warn("Interrupted: leaving the readers of the scanning threads open");
+            Thread.currentThread().interrupt();
+            return false;
         }
+    }
 
-        containers.add(info);
-        allFiles.addAll(Arrays.asList(info.getUsedFiles()));
-        for (String string : info.getUsedFiles()) {
-            List<String> users = usedBy.get(string);
-            if (users == null) {
-                users = new ArrayList<String>();
-                usedBy.put(string, users);
+    /**
+     * Reads a single file.
+     *
+     * @param candidate the file
+     * @param config the configuration of the import
+     * @param worker if called by a scanning thread, in which case the file
+     *            is skipped if used by a candidate found earlier
+     * @return the container of the file, if any, and the events raised
+     */
+    private Result scan(Candidate candidate, ImportConfig config,
+            boolean worker) {
+        final Result result = new Result();
+        final String path = candidate.file.getAbsolutePath();
+        if (candidate.file.getName().startsWith(".")) {
+            result.skipped = true;
+            return result;
+        }
+        if (worker) {
+            final Integer claimant = claimedBy.get(path);
+            if (claimant != null && claimant < candidate.index) {
+                result.skipped = true;
+                return result;
+            }
+            Scanner current = scanner.get();
+            if (current == null) {
+                current = new Scanner(reader.copy());
+                scanner.set(current);
+                synchronized (scannerReaders) {
+                    scannerReaders.add(current.reader);
+                }
+            }
+            try {
+                result.container = singleFile(candidate.file, config);
+            } finally {
+                result.events.addAll(current.events);
+                current.events.clear();
+            }
+        } else {
+            result.container = singleFile(candidate.file, config);
+        }
+        if (result.container != null) {
+            for (String used : result.container.getUsedFiles()) {
+                Integer claimant = claimedBy.putIfAbsent(used,
+                        candidate.index);
+                while (claimant != null && claimant > candidate.index
+                        && !claimedBy.replace(used, claimant,
+                                candidate.index)) {
+                    claimant = claimedBy.get(used);
+                }
             }
-            users.add(file.getAbsolutePath());
+        }
+        return result;
+    }
+
+    /**
+     * Waits for the result of a scanning thread.
+     *
+     * @param future the pending result
+     * @return the result or <code>null</code> if the file must be read again
+     */
+    private Result get(Future<Result> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            log.warn("Failed to scan file, reading it again", e.getCause());
+            return null;
+        }
+    }
+
+    /**
+     * Returns the reader of the current thread.
+     */
+    private OMEROWrapper reader() {
+        final Scanner current = scanner.get();
+        return current == null ? reader : current.reader;
+    }
+
+    /**
+     * A file found by the walk.
+     */
+    private static class Candidate {
+        final File file;
+        final int depth;
+        final int index;
+
+        Candidate(File file, int depth, int index) {
+            this.file = file;
+            this.depth = depth;
+            this.index = index;
+        }
+    }
+
+    /**
+     * The result of reading a {@link Candidate}.
+     */
+    private static class Result {
+        /** If the file was not read. */
+        boolean skipped = false;
+        ImportContainer container;
+        final List<ImportEvent> events = new ArrayList<ImportEvent>();
+    }
+
+    /**
+     * The reader of a scanning thread and the events raised while reading
+     * the current file.
+     */
+    private static class Scanner {
+        final OMEROWrapper reader;
+        final List<ImportEvent> events = new ArrayList<ImportEvent>();
+
+        Scanner(OMEROWrapper reader) {
+            this.reader = reader;
         }
     }
 
@@ -610,10 +860,9 @@ public class ImportCandidates extends DirectoryWalker
                 this.theyUseMe = new ArrayList<String>(usedBy.get(key));
                 this.theyUseMe.remove(key);
                 this.iUseThem = new ArrayList<String>();
-                for (Map.Entry<String, List<String>> entry : usedBy.entrySet()) {
-                    if (entry.getValue().contains(key)) {
-                        iUseThem.add(entry.getKey());
-                    }
+                List<String> used = uses.get(key);
+                if (used != null) {
+                    iUseThem.addAll(used);
                 }
                 iUseThem.remove(key);
             }
@@ -662,11 +911,26 @@ public class ImportCandidates extends DirectoryWalker
         }
 
         private final Map<String, List<String>> usedBy;
+        /** The inverse of {@link #usedBy}, in the same order. */
+        private final Map<String, List<String>> uses = new HashMap<String, List<String>>();
         private final Map<String, Group> groups = new LinkedHashMap<String, Group>();
         private List<String> ordering;
 
         Groups(Map<String, List<String>> usedBy) {
             this.usedBy = usedBy;
+            for (Map.Entry<String, List<String>> entry : usedBy.entrySet()) {
+                for (String user : entry.getValue()) {
+                    List<String> used = uses.get(user);
+                    if (used == null) {
+                        used = new ArrayList<String>();
+                        uses.put(user, used);
+                    }
+                    if (used.isEmpty()
+                            || !used.get(used.size() - 1).equals(entry.getKey())) {
+                        used.add(entry.getKey());
+                    }
+                }
+            }
             for (String key : usedBy.keySet()) {
                 groups.put(key, new Group(key));
             }
@@ -691,14 +955,22 @@ public class ImportCandidates extends DirectoryWalker
             }
             ordering = new ArrayList<String>(groups.keySet());
             // Here we remove all the superfluous import containers.
-            List<ImportContainer> copy = new ArrayList<ImportContainer>(
-                    containers);
+            Map<String, List<ImportContainer>> byPath =
+                    new HashMap<String, List<ImportContainer>>();
+            for (ImportContainer importContainer : containers) {
+                String path = importContainer.getFile().getAbsolutePath();
+                List<ImportContainer> list = byPath.get(path);
+                if (list == null) {
+                    list = new ArrayList<ImportContainer>();
+                    byPath.put(path, list);
+                }
+                list.add(importContainer);
+            }
             containers.clear();
             for (String key : ordering) {
-                for (ImportContainer importContainer : copy) {
-                    if (importContainer.getFile().getAbsolutePath().equals(key)) {
-                        containers.add(importContainer);
-                    }
+                List<ImportContainer> list = byPath.get(key);
+                if (list != null) {
+                    containers.addAll(list);
                 }
             }
             // Now rewrite the filename chosen based on the first file in the
@@ -26,6 +26,7 @@ import loci.formats.FormatTools;
 import ome.formats.OMEROMetadataStoreClient;
 import ome.formats.importer.targets.ImportTarget;
 import ome.formats.importer.targets.TargetBuilder;
+import ome.formats.importer.transfers.UploadFileTransfer;
 import ome.formats.importer.util.IniFileLoader;
 import ome.system.PreferenceContext;
 import ome.system.UpgradeCheck;
@@ -131,6 +132,8 @@ public class ImportConfig {
     public final BoolValue sendLogFile;
     public final IntValue parallelUpload;
     public final IntValue parallelFileset;
+    public final IntValue parallelScan;
+    public final IntValue uploadWindow;
     public final StrValue qaBaseURL;
     public final BoolValue checkUpgrade;
 
@@ -279,6 +282,9 @@ public class ImportConfig {
         sendLogFile  = new BoolValue("sendLogFile", this, true);
         parallelUpload  = new IntValue("parallelUpload", this, 1);
         parallelFileset = new IntValue("parallelFileset", this, 1);
+        parallelScan    = new IntValue("parallelScan", this, 1);
+        uploadWindow    = new IntValue("uploadWindow", this,
+                UploadFileTransfer.DEFAULT_WINDOW);
 
         useFullPath  = new BoolValue("useFullPath", this, true);
         useCustomImageNaming = new BoolValue("overrideImageName", this, true);
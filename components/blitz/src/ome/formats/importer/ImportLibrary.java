@@ -177,7 +177,8 @@ public class ImportLibrary implements IObservable
      */
     public ImportLibrary(OMEROMetadataStoreClient client, OMEROWrapper reader)
     {
-        this(client, reader, new UploadFileTransfer());
+        this(client, reader, new UploadFileTransfer(
+                reader.getConfig().uploadWindow.get()));
     }
 
     /**
@@ -79,6 +79,11 @@ public class OMEROWrapper extends MinMaxCalculator {
 
     private ImportConfig config;
 
+    /** The memoization settings, see {@link #copy()}. */
+    private final long elapsedTime;
+
+    private final File cacheDirectory;
+
     /**
      * Wrapper for bio-formats
      *
@@ -92,6 +97,8 @@ public class OMEROWrapper extends MinMaxCalculator {
     public OMEROWrapper(ImportConfig config, long elapsedTime, File cacheDirectory) {
         super(createReader(config));
         this.config = config;
+        this.elapsedTime = elapsedTime;
+        this.cacheDirectory = cacheDirectory;
         this.iReader = (ImageReader) reader; // Save old value
         this.reader = null;
         filler = new ChannelFiller(iReader);
@@ -152,6 +159,16 @@ public class OMEROWrapper extends MinMaxCalculator {
         return this.config;
     }
 
+    /**
+     * Creates a new wrapper with the same configuration, memoizing to the
+     * same cache directory, so that files can be read by several threads.
+     *
+     * @return See above.
+     */
+    public OMEROWrapper copy() {
+        return new OMEROWrapper(config, elapsedTime, cacheDirectory);
+    }
+
     /**
      * Obtains an object which represents a given sub-image of a plane within
      * the file.
@@ -102,7 +102,8 @@ public class CommandLineImporter {
      */
     public CommandLineImporter(final ImportConfig config, String[] paths,
             boolean getUsedFiles) throws Exception {
-        this(config, paths, getUsedFiles, new UploadFileTransfer(), DEFAULT_WAIT);
+        this(config, paths, getUsedFiles,
+                new UploadFileTransfer(config.uploadWindow.get()), DEFAULT_WAIT);
     }
 
     /**
@@ -117,7 +118,8 @@ public class CommandLineImporter {
     public CommandLineImporter(final ImportConfig config, String[] paths,
             boolean getUsedFiles, FileTransfer transfer, int minutesToWait)
                     throws Exception {
-        this(config, paths, getUsedFiles, new UploadFileTransfer(), null, DEFAULT_WAIT);
+        this(config, paths, getUsedFiles,
+                new UploadFileTransfer(config.uploadWindow.get()), null, DEFAULT_WAIT);
     }
 
     /**
@@ -464,6 +466,13 @@ public class CommandLineImporter {
             + "    --no-upgrade-check\t\tDisable upgrade check for each import\n"
             + "  e.g. $ bin/omero import -- --no-upgrade-check foo.tiff\n"
             + "       $ ./importer-cli --no-upgrade-check bar.tiff\n\n"
+            + "    --parallel-upload=ARG\tNumber of file upload threads to run at the same time (default: 1)\n\n"
+            + "    --parallel-fileset=ARG\tNumber of fileset candidates to import at the same time (default: 1)\n\n"
+            + "    --parallel-scan=ARG\tNumber of files to scan for fileset candidates at the same time (default: 1)\n\n"
+            + "    --upload-window=ARG\tNumber of blocks of a file written to the server at the same time\n"
+            + "                            \tby the default upload transfer (default: 1)\n\n"
+            + "  e.g. $ bin/omero import -- --parallel-scan=4 some_directory/\n"
+            + "       $ ./importer-cli --parallel-upload=4 --parallel-fileset=2 some_directory/\n\n"
             + "\n"
             + "  Feedback:\n"
             + "  ---------\n\n"
@@ -539,7 +548,7 @@ public class CommandLineImporter {
     public static void main(String[] args) throws Exception {
 
         int minutesToWait = DEFAULT_WAIT;
-        FileTransfer transfer = new UploadFileTransfer();
+        FileTransfer transfer = null;
         ImportConfig config = new ImportConfig();
 
         // Defaults
@@ -550,6 +559,8 @@ public class CommandLineImporter {
         config.contOnError.set(false);
         config.parallelUpload.set(1);
         config.parallelFileset.set(1);
+        config.parallelScan.set(1);
+        config.uploadWindow.set(UploadFileTransfer.DEFAULT_WINDOW);
         config.debug.set(false);
         config.encryptedConnection.set(false);
 
@@ -623,6 +634,12 @@ public class CommandLineImporter {
         LongOpt readers =
                 new LongOpt("readers", LongOpt.REQUIRED_ARGUMENT, null, 29);
 
+        LongOpt parallelScan =
+                new LongOpt("parallel-scan", LongOpt.REQUIRED_ARGUMENT, null, 30);
+
+        LongOpt uploadWindow =
+                new LongOpt("upload-window", LongOpt.REQUIRED_ARGUMENT, null, 31);
+
         // DEPRECATED OPTIONS
         LongOpt minutesWaitDeprecated =
                 new LongOpt("minutes_wait", LongOpt.REQUIRED_ARGUMENT, null, 86);
@@ -662,7 +679,7 @@ public class CommandLineImporter {
                                 noUpgradeCheck, qaBaseURL,
                                 outputFormat, encryptedConnection,
                                 parallelUpload, parallelFileset,
-                                readers,
+                                readers, parallelScan, uploadWindow,
                                 plateName, plateName2,
                                 plateDescription, plateDescription2,
                                 noThumbnailsDeprecated,
@@ -839,6 +856,18 @@ public class CommandLineImporter {
                 config.parallelFileset.set(Integer.valueOf(parallelUArg));
                 break;
             }
+            case 30: {
+                String parallelSArg = g.getOptarg();
+                log.info("Setting parallel scan: {}", parallelSArg);
+                config.parallelScan.set(Integer.valueOf(parallelSArg));
+                break;
+            }
+            case 31: {
+                String windowArg = g.getOptarg();
+                log.info("Setting upload window: {}", windowArg);
+                config.uploadWindow.set(Integer.valueOf(windowArg));
+                break;
+            }
             // ADVANCED END ---------------------------------------------------
             // DEPRECATED OPTIONS
             case 90:
@@ -981,6 +1010,10 @@ public class CommandLineImporter {
         }
         config.annotations.set(annotations);
 
+        if (transfer == null) {
+            transfer = new UploadFileTransfer(config.uploadWindow.get());
+        }
+
         CommandLineImporter c = null;
         int rc = 0;
         try {
@@ -1,5 +1,5 @@
 /*
- * Copyright (C) 2014 University of Dundee & Open Microscopy Environment.
+ * Copyright (C) 2014-2018 University of Dundee & Open Microscopy Environment.
  * All rights reserved.
  *
  * This program is free software; you can redistribute it and/or modify
@@ -22,8 +22,11 @@ package ome.formats.importer.transfers;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.List;
 
+import Ice.AsyncResult;
 import ome.util.checksum.ChecksumProvider;
 import omero.ServerError;
 import omero.api.RawFileStorePrx;
@@ -35,19 +38,70 @@ import org.apache.commons.lang.ArrayUtils;
  * files using the API. This is done by reading from
  * {@link TransferState#getFile()} into {@link TransferState#getBuffer()}
  * and then {@link RawFileStorePrx#write(byte[], long, int) writing} to the
- * server. <em>Not thread safe</em>
+ * server. Up to {@link #getWindow()} blocks are written asynchronously
+ * at the same time so that reading and checksumming the next blocks overlap
+ * with the transfer of the previous ones. <em>Not thread safe</em>
  *
  * @since 5.0
  */
 public class UploadFileTransfer extends AbstractFileTransfer {
 
+    /**
+     * Default number of blocks which may be in flight at the same time.
+     * All blocks are written to the same stateful {@link RawFileStorePrx}
+     * whose calls the server does not serialize, so by default only one
+     * write is in flight at a time.
+     * @since 5.5.0
+     */
+    public static final int DEFAULT_WINDOW = 1;
+
+    /** Number of blocks which may be in flight at the same time. */
+    private final int window;
+
+    /**
+     * Buffers used in addition to {@link TransferState#getBuffer()}, kept
+     * between transfers.
+     */
+    private byte[][] buffers = new byte[0][];
+
+    public UploadFileTransfer() {
+        this(DEFAULT_WINDOW);
+    }
+
+    /**
+     * Creates a transfer which keeps up to <code>window</code> writes in
+     * flight. Passing <code>1</code> writes each block synchronously.
+     * A larger window should only be used where the server serializes the
+     * calls made to the uploader: concurrent calls on one stateful service
+     * may otherwise fail or share its Hibernate session, and writes which
+     * complete out of order prevent the server from computing the
+     * checksum as the file is written.
+     * @param window the maximum number of writes in flight
+     * @since 5.5.0
+     */
+    public UploadFileTransfer(int window) {
+        if (window < 1) {
+            throw new IllegalArgumentException("window must be positive: " + window);
+        }
+        this.window = window;
+    }
+
+    /**
+     * @return the maximum number of writes in flight
+     * @since 5.5.0
+     */
+    public int getWindow() {
+        return window;
+    }
+
     public String transfer(TransferState state) throws IOException, ServerError {
 
         final RawFileStorePrx rawFileStore = start(state);
         final File file = state.getFile();
-        final byte[] buf = state.getBuffer();
         final ChecksumProvider cp = state.getChecksumProvider();
-        
+        final Deque<byte[]> free = getBuffers(state.getBuffer());
+        final Deque<Write> pending = new ArrayDeque<Write>(window);
+
         FileInputStream stream = null;
 
         try {
@@ -63,31 +117,101 @@ public class UploadFileTransfer extends AbstractFileTransfer {
             state.uploadBytes(offset);
     
             while (true) {
+                if (free.isEmpty()) {
+                    free.add(complete(rawFileStore, pending.remove(), state));
+                }
+                final byte[] buf = free.remove();
                 state.start();
-                rlen = stream.read(buf);
+                rlen = readFully(stream, buf);
                 if (rlen == -1) {
+                    free.add(buf);
                     break;
                 }
                 cp.putBytes(buf, 0, rlen);
                 final byte[] bufferToWrite;
                 if (rlen < buf.length) {
+                    // Only the last block of the file can be short.
                     bufferToWrite = new byte[rlen];
                     System.arraycopy(buf, 0, bufferToWrite, 0, rlen);
                 } else {
                     bufferToWrite = buf;
                 }
-                rawFileStore.write(bufferToWrite, offset, rlen);
+                final AsyncResult result =
+                        rawFileStore.begin_write(bufferToWrite, offset, rlen);
                 offset += rlen;
                 state.stop(rlen);
-                state.uploadBytes(offset);
+                pending.add(new Write(result, buf, offset));
+            }
+
+            while (!pending.isEmpty()) {
+                complete(rawFileStore, pending.remove(), state);
             }
 
             return finish(state, offset);
         } finally {
+            // Wait for the writes still in flight after a failure
+            // so that the buffers can safely be reused.
+            for (Write write : pending) {
+                try {
+                    rawFileStore.end_write(write.result);
+                } catch (Exception e) {
+                    log.debug("error in pending write", e);
+                }
+            }
             cleanupUpload(rawFileStore, stream);
         }
     }
 
+    /**
+     * Waits for the given write to complete and reports its progress.
+     * @return the buffer of the write, free for reuse
+     */
+    private byte[] complete(RawFileStorePrx rawFileStore, Write write,
+            TransferState state) throws ServerError {
+        rawFileStore.end_write(write.result);
+        state.uploadBytes(write.offset);
+        return write.buffer;
+    }
+
+    /**
+     * Returns {@link #window} buffers of the same size as the given one,
+     * which is included.
+     */
+    private Deque<byte[]> getBuffers(byte[] buf) {
+        if (buffers.length != window - 1
+                || (buffers.length > 0 && buffers[0].length != buf.length)) {
+            buffers = new byte[window - 1][];
+            for (int i = 0; i < buffers.length; i++) {
+                buffers[i] = new byte[buf.length];
+            }
+        }
+        final Deque<byte[]> free = new ArrayDeque<byte[]>(window);
+        free.add(buf);
+        for (byte[] buffer : buffers) {
+            free.add(buffer);
+        }
+        return free;
+    }
+
+    /**
+     * Reads from the stream until the buffer is full or the end of the
+     * stream is reached.
+     * @return the number of bytes read or <code>-1</code> if the end of
+     * the stream had already been reached
+     */
+    private static int readFully(FileInputStream stream, byte[] buf)
+            throws IOException {
+        int total = 0;
+        while (total < buf.length) {
+            final int rlen = stream.read(buf, total, buf.length - total);
+            if (rlen == -1) {
+                break;
+            }
+            total += rlen;
+        }
+        return total == 0 && buf.length > 0 ? -1 : total;
+    }
+
     /**
      * Since the {@link RawFileStorePrx} instances are cleaned up after each
      * transfer, there's no need to cleanup per {@link File}.
@@ -95,4 +219,24 @@ public class UploadFileTransfer extends AbstractFileTransfer {
     public void afterTransfer(int errors, List<String> srcFiles) throws CleanupFailure {
         // no-op
     }
+
+    /**
+     * A write in flight.
+     */
+    private static class Write {
+
+        final AsyncResult result;
+
+        /** The buffer which must not be reused until the write completes. */
+        final byte[] buffer;
+
+        /** The number of bytes uploaded once the write completes. */
+        final long offset;
+
+        Write(AsyncResult result, byte[] buffer, long offset) {
+            this.result = result;
+            this.buffer = buffer;
+            this.offset = offset;
+        }
+    }
 }
@@ -10,7 +10,22 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
 import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
@@ -30,6 +45,7 @@ import loci.formats.tiff.IFD;
 import ome.api.RawPixelsStore;
 import ome.conditions.ApiUsageException;
 import ome.conditions.InternalException;
+import ome.io.nio.PixelBuffer;
 import ome.io.nio.PixelsService;
 import ome.io.nio.RomioPixelBuffer;
 import ome.services.blitz.util.BlitzExecutor;
@@ -80,6 +96,17 @@ public class ExporterI extends AbstractCloseableAmdServant implements
 
     private final static int MAX_SIZE = 1024 * 1024;
 
+    /**
+     * The size of the tiles of the TIFF written for images which require a
+     * pyramid, a multiple of 16 as required by TIFF.
+     */
+    private final static int TILE_SIZE = 512;
+
+    /**
+     * Default maximum number of bytes of pixels read ahead of the writer.
+     */
+    public final static long DEFAULT_PREFETCH_BYTES = 64L * 1024 * 1024;
+
     /**
      * The size above which a big tiff should be written as opposed to
      * a normal tiff. This value is checked against the data size PLUS
@@ -122,6 +149,11 @@ public class ExporterI extends AbstractCloseableAmdServant implements
      */
     private volatile File file;
 
+    /**
+     * Shared by the reads of {@link #file}, opened on first read.
+     */
+    private FileChannel channel;
+
     /**
      * Encapsulates the logic for creating new LSIDs and comparing existing ones
      * to the internal value for this DB.
@@ -131,14 +163,18 @@ public class ExporterI extends AbstractCloseableAmdServant implements
     /** LOCI OME-XML service for working with OME-XML. */
     private final OMEXMLService service;
 
-    /** Access to information about big images to prevent exporting large
-     * files since there is currently no generally readable tiff support
-     * for our tiles.
-     *
-     * @see ticket:6713
+    /** Access to the pixels of the exported image, read through one pixel
+     * buffer per reader thread, and to information about big images which
+     * are written as tiled TIFF.
      */
     private final PixelsService pixelsService;
 
+    /** Number of threads reading the pixels while a TIFF is written. */
+    private int readerThreads = 1;
+
+    /** Maximum number of bytes of pixels read ahead of the writer. */
+    private long prefetchBytes = DEFAULT_PREFETCH_BYTES;
+
     public ExporterI(BlitzExecutor be, DatabaseIdentity databaseIdentity,
             PixelsService pixelsService)
         throws DependencyException {
@@ -155,6 +191,23 @@ public class ExporterI extends AbstractCloseableAmdServant implements
         this.factory = sf;
     }
 
+    /**
+     * Sets the number of threads reading the pixels while a TIFF is
+     * written. Each thread opens its own pixel buffer. Values lower than 1
+     * are treated as 1.
+     */
+    public void setReaderThreads(int readerThreads) {
+        this.readerThreads = Math.max(1, readerThreads);
+    }
+
+    /**
+     * Sets the maximum number of bytes of pixels read ahead of the writer.
+     * A single block is always read, however large.
+     */
+    public void setPrefetchBytes(long prefetchBytes) {
+        this.prefetchBytes = prefetchBytes;
+    }
+
     // Interface methods
     // =========================================================================
 
@@ -258,6 +311,7 @@ public class ExporterI extends AbstractCloseableAmdServant implements
      * Transition from waiting to config
      */
     private void startConfig() {
+        closeChannel();
         if (file != null) {
             file.delete();
             file = null;
@@ -353,19 +407,16 @@ public class ExporterI extends AbstractCloseableAmdServant implements
                             RawPixelsStore raw = null;
                             OmeroReader reader = null;
                             OMETiffWriter writer = null;
+                            final List<PixelBuffer> sources =
+                                new ArrayList<PixelBuffer>();
                             try {
 
                                 Image image = retrieve.getImage(0);
                                 Pixels pix = image.getPixels(0);
-                                if (requiresPyramid(sf, pix.getId().getValue())) {
-                                    long id = image.getId().getValue();
-                                    int x = pix.getSizeX().getValue();
-                                    int y = pix.getSizeY().getValue();
-                                    throw new omero.ApiUsageException(
-                                            null, null, String.format(
-                                            "Image:%s is too large for export (sizeX=%s, sizeY=%s)",
-                                            id, x, y));
-                                }
+                                ome.model.core.Pixels _p = sf.getQueryService().get(
+                                        ome.model.core.Pixels.class, pix.getId().getValue());
+                                final boolean tiled =
+                                    pixelsService.requiresPixelsPyramid(_p);
 
                                 file = TempFileManager.create_path("__omero_export__",
                                         ".ome.tiff");
@@ -386,33 +437,49 @@ public class ExporterI extends AbstractCloseableAmdServant implements
                                 if (bigtiff) {
                                     writer.setBigTiff(true);
                                 }
+                                int tileWidth = reader.sizeX;
+                                int tileHeight = reader.sizeY;
+                                if (tiled) {
+                                    // Images too large to be read as planes
+                                    // are written as tiled TIFF.
+                                    tileWidth = writer.setTileSizeX(TILE_SIZE);
+                                    tileHeight = writer.setTileSizeY(TILE_SIZE);
+                                }
                                 writer.setId(file.getAbsolutePath());
 
                                 int planeCount = reader.planes;
-                                int planeSize = RomioPixelBuffer.safeLongToInteger(
-                                        raw.getPlaneSize());
+                                int readers = readerThreads;
                                 log.info(String.format(
                                             "Using big TIFF? %s mSize=%d " +
                                             "dSize=%d planeCount=%d " +
-                                            "planeSize=%d",
+                                            "tileWidth=%d tileHeight=%d " +
+                                            "readers=%d",
                                             bigtiff, mSize, dSize,
-                                            planeCount, planeSize));
-                                byte[] plane = new byte[planeSize];
+                                            planeCount, tileWidth, tileHeight,
+                                            readers));
+                                for (int i = 0; i < readers; i++) {
+                                    sources.add(pixelsService.getPixelBuffer(
+                                            _p, false));
+                                }
+
+                                // {plane index, z, c, t, x, y, w, h} in the
+                                // order the writer requires.
+                                final List<int[]> blocks = new ArrayList<int[]>();
                                 for (int i = 0; i < planeCount; i++) {
                                     int[] zct = FormatTools.getZCTCoords(
                                         retrieve.getPixelsDimensionOrder(0).getValue(),
                                         reader.getSizeZ(), reader.getSizeC(), reader.getSizeT(),
                                         planeCount, i);
-                                    int readerIndex = reader.getIndex(zct[0], zct[1], zct[2]);
-                                    reader.openBytes(readerIndex, plane);
-
-
-                                    IFD ifd = new IFD();
-                                    ifd.put(IFD.TILE_WIDTH, 128);
-                                    ifd.put(IFD.TILE_LENGTH, 128);
-
-                                    writer.saveBytes(i, plane, ifd);
+                                    for (int y = 0; y < reader.sizeY; y += tileHeight) {
+                                        for (int x = 0; x < reader.sizeX; x += tileWidth) {
+                                            blocks.add(new int[] { i, zct[0],
+                                                    zct[1], zct[2], x, y,
+                                                    Math.min(tileWidth, reader.sizeX - x),
+                                                    Math.min(tileHeight, reader.sizeY - y) });
+                                        }
+                                    }
                                 }
+                                writeBlocks(writer, sources, blocks, tiled);
                                 retrieve = null;
 
                                 try {
@@ -431,6 +498,13 @@ public class ExporterI extends AbstractCloseableAmdServant implements
                                     __cb.ice_exception(ie);
                                 } finally {
                                     cleanup(raw, reader, writer);
+                                    for (PixelBuffer source : sources) {
+                                        try {
+                                            source.close();
+                                        } catch (Exception e) {
+                                            log.error("Error closing pixel buffer", e);
+                                        }
+                                    }
                                 }
 
                             return null; // see calls to __cb above
@@ -468,6 +542,146 @@ public class ExporterI extends AbstractCloseableAmdServant implements
         }
     }
 
+    /**
+     * Reads the blocks of pixels, planes or tiles, on a pool of threads, at
+     * most two blocks per thread and {@link #prefetchBytes} ahead of the
+     * writer, and writes them in the calling thread in the given order since
+     * the writer is not thread safe and writes sequentially.
+     * @param sources The pixel buffers to read from. Each buffer is used by
+     * one thread at a time.
+     * @param blocks {plane index, z, c, t, x, y, w, h} of each block.
+     * @param tiled If the blocks are tiles rather than planes.
+     */
+    private void writeBlocks(OMETiffWriter writer, List<PixelBuffer> sources,
+            List<int[]> blocks, boolean tiled) throws Exception {
+        final BlockingQueue<PixelBuffer> idle =
+            new ArrayBlockingQueue<PixelBuffer>(sources.size(), false, sources);
+        final int window = 2 * sources.size();
+        final int byteWidth = sources.get(0).getByteWidth();
+        ExecutorService readers = Executors.newFixedThreadPool(
+                sources.size(), new ThreadFactory() {
+                    private final AtomicInteger count = new AtomicInteger();
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, String.format(
+                                "ExportReader-%d", count.incrementAndGet()));
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        Deque<Future<byte[]>> pending = new ArrayDeque<Future<byte[]>>(window);
+        int submitted = 0;
+        long prefetched = 0;
+        try {
+            for (int[] block : blocks) {
+                while (submitted < blocks.size()
+                       && (pending.isEmpty()
+                           || (pending.size() < window
+                               && prefetched + getBlockBytes(
+                                   blocks.get(submitted), byteWidth)
+                                  <= prefetchBytes))) {
+                    prefetched += getBlockBytes(blocks.get(submitted),
+                            byteWidth);
+                    pending.add(readers.submit(
+                            new BlockReader(idle, blocks.get(submitted))));
+                    submitted++;
+                }
+                byte[] bytes;
+                try {
+                    bytes = pending.remove().get();
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof Exception) {
+                        throw (Exception) cause;
+                    }
+                    throw e;
+                }
+                prefetched -= getBlockBytes(block, byteWidth);
+                if (tiled) {
+                    writer.saveBytes(block[0], bytes, block[4], block[5],
+                            block[6], block[7]);
+                } else {
+                    IFD ifd = new IFD();
+                    ifd.put(IFD.TILE_WIDTH, 128);
+                    ifd.put(IFD.TILE_LENGTH, 128);
+                    writer.saveBytes(block[0], bytes, ifd);
+                }
+            }
+        } finally {
+            for (Future<byte[]> future : pending) {
+                future.cancel(true);
+            }
+            readers.shutdownNow();
+            try {
+                // The sources are closed by the caller.
+                readers.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Reads a block of pixels using any of the idle pixel buffers.
+     */
+    private static class BlockReader implements Callable<byte[]> {
+
+        private final BlockingQueue<PixelBuffer> idle;
+
+        private final int[] block;
+
+        BlockReader(BlockingQueue<PixelBuffer> idle, int[] block) {
+            this.idle = idle;
+            this.block = block;
+        }
+
+        public byte[] call() throws Exception {
+            PixelBuffer source = idle.take();
+            try {
+                byte[] buffer = new byte[RomioPixelBuffer.safeLongToInteger(
+                        (long) block[6] * block[7] * source.getByteWidth())];
+                if (block[6] == source.getSizeX()
+                        && block[7] == source.getSizeY()) {
+                    return source.getPlaneDirect(block[1], block[2],
+                            block[3], buffer);
+                }
+                return source.getTileDirect(block[1], block[2], block[3],
+                        block[4], block[5], block[6], block[7], buffer);
+            } finally {
+                idle.put(source);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of bytes of the given block,
+     * {plane index, z, c, t, x, y, w, h}.
+     */
+    private static long getBlockBytes(int[] block, int byteWidth) {
+        return (long) block[6] * block[7] * byteWidth;
+    }
+
+    /**
+     * Returns the channel of the file being output, opening it on first use
+     * so that the reads of the same file share it.
+     */
+    private synchronized FileChannel getChannel() throws IOException {
+        if (channel == null) {
+            channel = new RandomAccessFile(file, "r").getChannel();
+        }
+        return channel;
+    }
+
+    private synchronized void closeChannel() {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                log.warn("IOException on file close");
+            }
+            channel = null;
+        }
+    }
+
     /**
      * Read size bytes, and transition to "waiting" If any exception is thrown,
      * the offset for the current file will not be updated.
@@ -477,44 +691,38 @@ public class ExporterI extends AbstractCloseableAmdServant implements
             throw new ApiUsageException("Max read size is: " + MAX_SIZE);
         }
 
-        byte[] buf = new byte[size];
-
-        RandomAccessFile ra = null;
         try {
-            ra = new RandomAccessFile(file, "r");
+            FileChannel ch = getChannel();
 
-            long l = ra.length();
+            long l = ch.size();
+            if (pos >= l) {
+                return new byte[0];
+            }
             if (pos + size > l) {
                 size  = (int) (l - pos);
             }
 
-            ra.seek(pos);
-            int read = ra.read(buf);
+            // Positional reads do not move the position of the channel so
+            // that concurrent reads can share it.
+            ByteBuffer buf = ByteBuffer.allocate(size);
+            while (buf.hasRemaining()) {
+                int read = ch.read(buf, pos + buf.position());
+                if (read < 0) {
+                    break;
+                }
+            }
 
             // Handle end of file
-            if (read < 0) {
-                buf = new byte[0];
-            } else if (read < size) {
-                byte[] newBuf = new byte[read];
-                System.arraycopy(buf, 0, newBuf, 0, read);
-                buf = newBuf;
+            if (buf.hasRemaining()) {
+                byte[] newBuf = new byte[buf.position()];
+                System.arraycopy(buf.array(), 0, newBuf, 0, newBuf.length);
+                return newBuf;
             }
+            return buf.array();
 
         } catch (IOException io) {
             throw new RuntimeException(io);
-        } finally {
-
-            if (ra != null) {
-                try {
-                    ra.close();
-                } catch (IOException e) {
-                    log.warn("IOException on file close");
-                }
-            }
-
         }
-
-        return buf;
     }
 
     // XML Generation (public for testing)
@@ -540,6 +748,7 @@ public class ExporterI extends AbstractCloseableAmdServant implements
     @Override
     protected void preClose(Ice.Current current) {
         retrieve = null;
+        closeChannel();
         if (file != null) {
             file.delete();
             file = null;
@@ -574,11 +783,5 @@ public class ExporterI extends AbstractCloseableAmdServant implements
             FormatTools.getBytesPerPixel(reader.getPixelType());
     }
 
-    private boolean requiresPyramid(ServiceFactory sf, long id) {
-        ome.model.core.Pixels _p =
-            sf.getQueryService().get(ome.model.core.Pixels.class, id);
-        return pixelsService.requiresPixelsPyramid(_p);
-    }
-
 
 }
@@ -44,6 +44,7 @@ import ome.services.blitz.util.ServiceFactoryAware;
 import ome.services.util.Executor;
 import ome.system.Login;
 import omero.RString;
+import omero.RType;
 import omero.ServerError;
 import omero.api.IQueryPrx;
 import omero.api.RawFileStorePrx;
@@ -58,7 +59,6 @@ import omero.grid._ImportProcessOperations;
 import omero.grid._ImportProcessTie;
 import omero.model.Fileset;
 import omero.model.FilesetJobLink;
-import omero.sys.Parameters;
 import omero.sys.ParametersI;
 
 /**
@@ -337,25 +337,31 @@ public class ManagedImportProcessI extends AbstractCloseableAmdServant
             Map<Integer, String> failingChecksums = new HashMap<Integer, String>();
             final Map<String, String> allGroupsContext = ImmutableMap.of(Login.OMERO_GROUP, "-1");
             final IQueryPrx iQuery = sf.getQueryService(__current);
-            final String hql = "SELECT originalFile.hash FROM FilesetEntry "
-                    + "WHERE fileset.id = :id AND originalFile.path || originalFile.name = :usedfile";
+            final String hql = "SELECT originalFile.path || originalFile.name, originalFile.hash "
+                    + "FROM FilesetEntry WHERE fileset.id = :id";
+            StopWatch sw1 = new Slf4JStopWatch();
+            final Map<String, String> serverHashes = new HashMap<String, String>(size);
+            for (final List<RType> row : iQuery.projection(hql, new ParametersI().addId(fs.getId()),
+                    allGroupsContext)) {
+                final RString usedFile = (RString) row.get(0);
+                final RString hash = (RString) row.get(1);
+                if (usedFile != null && hash != null && !serverHashes.containsKey(usedFile.getValue())) {
+                    serverHashes.put(usedFile.getValue(), hash.getValue());
+                }
+            }
             for (int i = 0; i < size; i++) {
-                StopWatch sw1 = new Slf4JStopWatch();
                 String usedFile = location.sharedPath + FsFile.separatorChar + location.usedFiles.get(i);
-                final Parameters params = new ParametersI().addId(fs.getId()).add("usedfile", omero.rtypes.rstring(usedFile));
                 final String clientHash = hashes.get(i);
-                String serverHash = "";
-                try {
-                    final RString result = (RString) iQuery.projection(hql, params, allGroupsContext).get(0).get(0);
-                    serverHash = result.getValue();
-                } catch (IndexOutOfBoundsException | NullPointerException e) {
-                    log.error("no server checksum on uploaded file {}", usedFile, e);
+                String serverHash = serverHashes.get(usedFile);
+                if (serverHash == null) {
+                    log.error("no server checksum on uploaded file {}", usedFile);
+                    serverHash = "";
                 }
                 if (serverHash.isEmpty() || !clientHash.equals(serverHash)) {
                     failingChecksums.put(i, serverHash);
                 }
-                sw1.stop("omero.import.process.checksum");
             }
+            sw1.stop("omero.import.process.checksum");
 
             if (!failingChecksums.isEmpty()) {
                 throw new omero.ChecksumValidationException(null,
@@ -5,18 +5,28 @@
 
 package ome.services.blitz.util;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
 import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import ome.api.ServiceInterface;
+import ome.api.StatefulServiceInterface;
 import ome.system.OmeroContext;
+import ome.system.metrics.Counter;
+import ome.system.metrics.Metrics;
+import ome.system.metrics.NullMetrics;
+import ome.system.metrics.Timer;
 import omero.ServerError;
 import omero.util.IceMapper;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.util.Assert;
+import org.springframework.util.ClassUtils;
 
 /**
  * {@link Method}-cache primed either with an {@link ServiceInterface} instance
@@ -39,6 +49,12 @@ import org.springframework.util.Assert;
  * It is also possible to have this class not handle mapping arguments and
  * return values by passing a return value mapper.
  * 
+ * Each method is invoked through a {@link MethodHandle} and its arguments
+ * are mapped by the {@link IceMapper.InputConverter converters} of its
+ * parameter types, both looked up once per service class. The invocations
+ * are timed and their failures counted per method via the "metrics" bean of
+ * the context, if any.
+ * 
  * Future:
  * <ul>
  * <li>Currently ignoring
@@ -56,17 +72,36 @@ public class IceMethodInvoker {
     static class Info {
         Method method;
 
+        /**
+         * Takes the target and the array of arguments, or null if the method
+         * is not accessible and must be invoked via {@link #method}.
+         */
+        MethodHandle handle;
+
         Class<?>[] params;
 
+        IceMapper.InputConverter[] converters;
+
         Class<?> retType;
+    }
 
-        int[] switches;
+    /**
+     * The timer and failure count of the invocations of a method.
+     */
+    static class Stats {
+        Timer timer;
+
+        Counter errors;
     }
 
-    private final static Map<Class<?>, Map<String, Info>> staticmap = new HashMap<Class<?>, Map<String, Info>>();
+    private final static Map<Class<?>, Map<String, Info>> staticmap = new ConcurrentHashMap<Class<?>, Map<String, Info>>();
 
     private final Class<?> serviceClass;
 
+    private final Map<String, Info> infos;
+
+    private final Map<String, Stats> stats;
+
     private OmeroContext ctx;
 
     /**
@@ -99,28 +134,70 @@ public class IceMethodInvoker {
 
         this.serviceClass = k;
         this.ctx = context;
+        this.infos = staticmap.computeIfAbsent(k, IceMethodInvoker::infos);
 
-        if (!staticmap.containsKey(this.serviceClass)) {
-            synchronized (staticmap) {
-                // Re-check in case already added
-                if (!staticmap.containsKey(this.serviceClass)) {
-                    Map<String, Info> map = new HashMap<String, Info>();
-                    Method[] ms = this.serviceClass.getMethods();
-                    for (Method m : ms) {
-                        Info i = new Info();
-                        i.method = m;
-                        i.params = m.getParameterTypes();
-                        i.retType = m.getReturnType();
-                        map.put(m.getName(), i);
-                    }
-                    staticmap.put(this.serviceClass, map);
+        Metrics metrics = new NullMetrics();
+        if (context != null && context.containsBean("metrics")) {
+            metrics = context.getBean("metrics", Metrics.class);
+        }
+        final String prefix = serviceName(k) + ".";
+        this.stats = new HashMap<String, Stats>();
+        for (String name : infos.keySet()) {
+            Stats st = new Stats();
+            st.timer = metrics.timer(this, prefix + name);
+            st.errors = metrics.counter(this, prefix + name + ".errors");
+            stats.put(name, st);
+        }
+    }
+
+    private static Map<String, Info> infos(Class<?> k) {
+        Map<String, Info> map = new HashMap<String, Info>();
+        MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+        Method[] ms = k.getMethods();
+        for (Method m : ms) {
+            Info i = new Info();
+            i.method = m;
+            i.params = m.getParameterTypes();
+            i.retType = m.getReturnType();
+            i.converters = new IceMapper.InputConverter[i.params.length];
+            for (int p = 0; p < i.params.length; p++) {
+                i.converters[p] = IceMapper.inputConverter(i.params[p]);
+            }
+            try {
+                MethodHandle mh = lookup.unreflect(m).asFixedArity();
+                if (Modifier.isStatic(m.getModifiers())) {
+                    mh = MethodHandles.dropArguments(mh, 0, Object.class);
                 }
+                i.handle = mh.asType(mh.type().generic()).asSpreader(
+                        Object[].class, i.params.length);
+            } catch (IllegalAccessException iae) {
+                log.debug("Invoking {} via reflection", m);
+            }
+            map.put(m.getName(), i);
+        }
+        return map;
+    }
+
+    /**
+     * Names the metrics of the methods of a service after its
+     * {@link ServiceInterface} rather than after a proxy class.
+     */
+    private static String serviceName(Class<?> k) {
+        if (k.isInterface()) {
+            return k.getSimpleName();
+        }
+        for (Class<?> i : ClassUtils.getAllInterfacesForClass(k)) {
+            if (ServiceInterface.class.isAssignableFrom(i)
+                    && i != ServiceInterface.class
+                    && i != StatefulServiceInterface.class) {
+                return i.getSimpleName();
             }
         }
+        return k.getSimpleName();
     }
 
     Map<String, Info> map() {
-        return staticmap.get(serviceClass);
+        return infos;
     }
 
     /**
@@ -165,28 +242,46 @@ public class IceMethodInvoker {
                     + current.operation);
         }
 
-        final Object[] objs = arguments(current, mapper, info, args);
-
-        Object retVal = null;
+        final Stats st = stats.get(current.operation);
+        final Timer.Context timer = st.timer.time();
+        boolean failed = true;
         try {
-            retVal = info.method.invoke(obj, objs);
-        } catch (Throwable t) {
-            throw mapper.handleException(t, ctx);
-        }
+            final Object[] objs = arguments(current, mapper, info, args);
+
+            Object retVal = null;
+            try {
+                if (info.handle != null) {
+                    retVal = (Object) info.handle.invokeExact(obj, objs);
+                } else {
+                    retVal = info.method.invoke(obj, objs);
+                }
+            } catch (Throwable t) {
+                throw mapper.handleException(t, ctx);
+            }
 
-        // Handling case of generics (e.g. Search.next())
-        // in which case we cannot properly handle the mapping.
-        Class<?> retType = info.retType;
-        if (retType == Object.class && retVal != null) {
-            retType = retVal.getClass();
-        }
+            // Handling case of generics (e.g. Search.next())
+            // in which case we cannot properly handle the mapping.
+            Class<?> retType = info.retType;
+            if (retType == Object.class && retVal != null) {
+                retType = retVal.getClass();
+            }
 
-        // If we have a returnValueMapper then it's that objects responsibility
-        // to convert the return value, otherwise this class must do it.
-        if (mapper.canMapReturnValue()) {
-            return mapper.mapReturnValue(retVal);
-        } else {
-            return mapper.handleOutput(retType, retVal);
+            // If we have a returnValueMapper then it's that objects
+            // responsibility to convert the return value, otherwise this
+            // class must do it.
+            final Object rv;
+            if (mapper.canMapReturnValue()) {
+                rv = mapper.mapReturnValue(retVal);
+            } else {
+                rv = mapper.handleOutput(retType, retVal);
+            }
+            failed = false;
+            return rv;
+        } finally {
+            timer.stop();
+            if (failed) {
+                st.errors.inc();
+            }
         }
     }
 
@@ -217,9 +312,7 @@ public class IceMethodInvoker {
 
         // be sure to use our own types
         for (int i = 0; i < params.length; i++) {
-            Class<?> p = params[i];
-            Object arg = args[i];
-            objs[i] = mapper.handleInput(p, arg);
+            objs[i] = info.converters[i].convert(mapper, args[i]);
             // This check duplicates what should be in handleInput
             // if (null != objs[i] && !isPrimitive(p) && // FIXME need way
             // to check autoboxing.
@@ -432,6 +432,7 @@ public class DiskUsage2I extends DiskUsage2 implements IRequest, ReadOnlyStatus.
                         usage.bumpTotals().add(ownerId, groupId, className, getFileSize(pixelsPath + PixelsService.PYRAMID_SUFFIX));
                         usage.bumpTotals().add(ownerId, groupId, className, getFileSize(pixelsPath + PixelsService.PYRAMID_SUFFIX +
                                 BfPyramidPixelBuffer.PYR_LOCK_EXT));
+                        usage.bumpTotals().add(ownerId, groupId, className, getFileSize(pixelsPath + PixelsService.HISTOGRAM_SUFFIX));
                     }
                 }
             } else if ("Thumbnail".equals(className)) {
@@ -548,6 +548,7 @@ public class DiskUsageI extends DiskUsage implements IRequest, ReadOnlyStatus.Is
                         usage.bumpTotals().add(ownerId, groupId, className, getFileSize(pixelsPath + PixelsService.PYRAMID_SUFFIX));
                         usage.bumpTotals().add(ownerId, groupId, className, getFileSize(pixelsPath + PixelsService.PYRAMID_SUFFIX +
                                 BfPyramidPixelBuffer.PYR_LOCK_EXT));
+                        usage.bumpTotals().add(ownerId, groupId, className, getFileSize(pixelsPath + PixelsService.HISTOGRAM_SUFFIX));
                     }
                 }
             } else if ("Thumbnail".equals(className)) {
@@ -31,6 +31,7 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.Supplier;
 
 import ome.conditions.InternalException;
 import ome.model.IObject;
@@ -1040,16 +1041,14 @@ public class IceMapper extends ome.util.ModelMapper implements
 
             return null;
 
-        } else if (target2model.containsKey(source)) {
-
-            return (Filterable) target2model.get(source);
+        }
 
-        } else {
-            Filterable object = source.fillObject(this);
+        Filterable object = (Filterable) target2model.get(source);
+        if (object == null) {
+            object = source.fillObject(this);
             target2model.put(source, object);
-            return object;
-
         }
+        return object;
     }
 
     /**
@@ -1102,6 +1101,17 @@ public class IceMapper extends ome.util.ModelMapper implements
         return IceMap.OMEtoOMERO;
     }
 
+    /**
+     * Uses the generated constructors of {@link IceMap#OMEtoOMERONew} rather
+     * than reflection. Proxies and other unmapped types fall back to
+     * {@link ModelMapper#findClass(Class)}.
+     */
+    @Override
+    protected Object newTarget(Class sourceType) {
+        final Supplier<?> constructor = IceMap.OMEtoOMERONew.get(sourceType);
+        return constructor == null ? null : constructor.get();
+    }
+
     private void fillTarget(Filterable source, ModelBased target) {
         if (source != null && target != null) {
             target.copyObject(source, this);
@@ -1138,7 +1148,7 @@ public class IceMapper extends ome.util.ModelMapper implements
     // ~ Methods from IceMethodInvoker
     // =========================================================================
 
-    protected boolean isPrimitive(Class<?> p) {
+    protected static boolean isPrimitive(Class<?> p) {
         if (p.equals(byte.class) || p.equals(byte[].class)
                 || p.equals(int.class) || p.equals(int[].class)
                 || p.equals(long.class) || p.equals(long[].class)
@@ -1172,55 +1182,93 @@ public class IceMapper extends ome.util.ModelMapper implements
         return false;
     }
 
-    public Object handleInput(Class<?> p, Object arg) throws ServerError {
-        if (arg instanceof RType) {
-            RType rt = (RType) arg;
-            return fromRType(rt);
-        } else if (isPrimitive(p) || isNullablePrimitive(p)) {
+    /**
+     * Converts arguments passed for a parameter of a given type from omero.*
+     * to ome.* types. The conversion is chosen once per parameter type by
+     * {@link IceMapper#inputConverter(Class)}.
+     */
+    public interface InputConverter {
+
+        public Object convert(IceMapper mapper, Object arg) throws ServerError;
+
+    }
+
+    private final static ClassValue<InputConverter> INPUT_CONVERTERS = new ClassValue<InputConverter>() {
+
+        @Override
+        protected InputConverter computeValue(Class<?> p) {
+            final InputConverter converter = typeConverter(p);
+            return (mapper, arg) -> {
+                if (arg instanceof RType) {
+                    return mapper.fromRType((RType) arg);
+                }
+                return converter.convert(mapper, arg);
+            };
+        }
+
+    };
+
+    /**
+     * Returns the converter used by {@link #handleInput(Class, Object)} for
+     * the arguments of the given parameter type.
+     * @param p the type of the parameter
+     * @return the converter, shared by all mappers
+     */
+    public static InputConverter inputConverter(Class<?> p) {
+        return INPUT_CONVERTERS.get(p);
+    }
+
+    private static InputConverter typeConverter(final Class<?> p) {
+        if (isPrimitive(p) || isNullablePrimitive(p)) {
             // FIXME use findTarget for Immutable.
-            return arg;
+            return (mapper, arg) -> arg;
         } else if (isWrapperArray(p)) {
-            return reverseArray((List) arg, p);
+            return (mapper, arg) -> mapper.reverseArray((List) arg, p);
         } else if (p.equals(Class.class)) {
-            return omeroClass((String) arg, true);
+            return (mapper, arg) -> omeroClass((String) arg, true);
         } else if (ome.model.internal.Details.class.isAssignableFrom(p)) {
-            return reverse((ModelBased) arg);
+            return (mapper, arg) -> mapper.reverse((ModelBased) arg);
         } else if (ome.model.IObject.class.isAssignableFrom(p)) {
-            return reverse((ModelBased) arg);
+            return (mapper, arg) -> mapper.reverse((ModelBased) arg);
         } else if (p.equals(ome.parameters.Filter.class)) {
-            return convert((omero.sys.Filter) arg);
+            return (mapper, arg) -> convert((omero.sys.Filter) arg);
         } else if (p.equals(ome.system.Principal.class)) {
-            return convert((omero.sys.Principal) arg);
+            return (mapper, arg) -> convert((omero.sys.Principal) arg);
         } else if (p.equals(ome.parameters.Parameters.class)) {
-            return convert((omero.sys.Parameters) arg);
+            return (mapper, arg) -> mapper.convert((omero.sys.Parameters) arg);
         } else if (List.class.isAssignableFrom(p)) {
-            return reverse((Collection) arg);
+            return (mapper, arg) -> mapper.reverse((Collection) arg);
         } else if (Set.class.isAssignableFrom(p)) {
-            return reverse(new HashSet((Collection) arg)); // Necessary
-            // since Ice
-            // doesn't
-            // support
-            // Sets.
+            // Necessary since Ice doesn't support Sets.
+            return (mapper, arg) -> mapper.reverse(new HashSet((Collection) arg));
         } else if (Collection.class.isAssignableFrom(p)) {
-            return reverse((Collection) arg);
+            return (mapper, arg) -> mapper.reverse((Collection) arg);
         } else if (Timestamp.class.isAssignableFrom(p)) {
-            if (arg != null) {
-                throw new RuntimeException("This must be null here");
-            }
-            return null;
+            return (mapper, arg) -> {
+                if (arg != null) {
+                    throw new RuntimeException("This must be null here");
+                }
+                return null;
+            };
         } else if (Map.class.isAssignableFrom(p)) {
-            return reverse((Map) arg);
+            return (mapper, arg) -> mapper.reverse((Map) arg);
         } else if (PlaneDef.class.isAssignableFrom(p)) {
-            return convert((omero.romio.PlaneDef) arg);
+            return (mapper, arg) -> convert((omero.romio.PlaneDef) arg);
         } else if (Object[].class.isAssignableFrom(p)) {
-            return reverseArray((List) arg, p);
+            return (mapper, arg) -> mapper.reverseArray((List) arg, p);
         } else if (CodomainMapContext.class.isAssignableFrom(p)) {
-            return convert((omero.romio.CodomainMapContext) arg);
+            return (mapper, arg) -> mapper.convert((omero.romio.CodomainMapContext) arg);
         } else {
-            throw new ApiUsageException(null, null, "Can't handle input " + p);
+            return (mapper, arg) -> {
+                throw new ApiUsageException(null, null, "Can't handle input " + p);
+            };
         }
     }
 
+    public Object handleInput(Class<?> p, Object arg) throws ServerError {
+        return inputConverter(p).convert(this, arg);
+    }
+
     public Object handleOutput(Class type, Object o) throws ServerError {
         if (o == null) {
             return null;
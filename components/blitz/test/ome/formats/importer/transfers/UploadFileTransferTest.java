@@ -0,0 +1,202 @@
+/*
+ * Copyright (C) 2018 University of Dundee & Open Microscopy Environment.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package ome.formats.importer.transfers;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.Random;
+
+import ome.formats.importer.util.ProportionalTimeEstimatorImpl;
+import ome.util.checksum.ChecksumProvider;
+import ome.util.checksum.ChecksumProviderFactoryImpl;
+import ome.util.checksum.ChecksumType;
+import omero.api.RawFileStorePrx;
+import omero.util.TempFileManager;
+
+import org.apache.commons.io.FileUtils;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+/**
+ * Tests that {@link UploadFileTransfer} writes every block of a file once and
+ * in full, whatever the number of writes it keeps in flight.
+ *
+ * @since 5.5.0
+ */
+public class UploadFileTransferTest {
+
+    private static final int BLOCK = 1024;
+
+    private File file;
+
+    private byte[] content;
+
+    @BeforeClass
+    public void createFile() throws Exception {
+        file = TempFileManager.create_path("UploadFileTransferTest", ".bin");
+        // Ten full blocks and a short final one.
+        content = new byte[10 * BLOCK + 100];
+        new Random(0).nextBytes(content);
+        FileUtils.writeByteArrayToFile(file, content);
+    }
+
+    @AfterClass
+    public void deleteFile() {
+        FileUtils.deleteQuietly(file);
+    }
+
+    @Test
+    public void testDefaultWindowIsOne() {
+        Assert.assertEquals(new UploadFileTransfer().getWindow(), 1);
+    }
+
+    @Test
+    public void testUploadWithWindowOfOne() throws Exception {
+        final Store store = upload(1);
+        Assert.assertEquals(store.maxInFlight, 1);
+    }
+
+    @Test
+    public void testUploadWithLargerWindow() throws Exception {
+        final Store store = upload(3);
+        Assert.assertEquals(store.maxInFlight, 3);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testWindowMustBePositive() {
+        new UploadFileTransfer(0);
+    }
+
+    /**
+     * Uploads {@link #file} with the given window and checks that the
+     * store received the whole content and that the client checksum matches.
+     */
+    private Store upload(int window) throws Exception {
+        final Store store = new Store();
+        final ChecksumProvider cp = new ChecksumProviderFactoryImpl()
+                .getProvider(ChecksumType.SHA1);
+        final State state = new State(file, cp, new byte[BLOCK], store.proxy());
+        final String checksum = new UploadFileTransfer(window).transfer(state);
+
+        Assert.assertEquals(store.inFlight, 0);
+        Assert.assertTrue(store.closed);
+        Assert.assertTrue(Arrays.equals(store.data.toByteArray(), content));
+        Assert.assertEquals(checksum, new ChecksumProviderFactoryImpl()
+                .getProvider(ChecksumType.SHA1).putBytes(content)
+                .checksumAsString());
+        return store;
+    }
+
+    /**
+     * {@link TransferState} which talks to the given store instead of an
+     * import process and notifies no observers.
+     */
+    private static class State extends TransferState {
+
+        private final RawFileStorePrx prx;
+
+        State(File file, ChecksumProvider cp, byte[] buf, RawFileStorePrx prx)
+                throws Exception {
+            super(file, 0, 1, null, null,
+                    new ProportionalTimeEstimatorImpl(file.length()), cp, buf);
+            this.prx = prx;
+        }
+
+        @Override
+        public RawFileStorePrx getUploader(String mode) {
+            return prx;
+        }
+
+        @Override
+        public void save() {
+            // no-op
+        }
+
+        @Override
+        public String getChecksum() {
+            return getChecksumProvider().checksumAsString();
+        }
+
+        @Override
+        public void uploadStarted() {
+            // no-op
+        }
+
+        @Override
+        public void uploadBytes(long offset) {
+            // no-op
+        }
+
+        @Override
+        public void uploadComplete(long offset) {
+            // no-op
+        }
+    }
+
+    /**
+     * Minimal {@link RawFileStorePrx} which appends positional writes in
+     * order and counts the writes in flight.
+     */
+    private static class Store implements InvocationHandler {
+
+        final ByteArrayOutputStream data = new ByteArrayOutputStream();
+
+        int inFlight;
+
+        int maxInFlight;
+
+        boolean closed;
+
+        RawFileStorePrx proxy() {
+            return (RawFileStorePrx) Proxy.newProxyInstance(
+                    RawFileStorePrx.class.getClassLoader(),
+                    new Class<?>[] { RawFileStorePrx.class }, this);
+        }
+
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            final String name = method.getName();
+            if ("write".equals(name) || "begin_write".equals(name)) {
+                final byte[] buf = (byte[]) args[0];
+                final long offset = (Long) args[1];
+                final int length = (Integer) args[2];
+                Assert.assertEquals(offset, data.size());
+                // Ice marshals the buffer when the call begins.
+                data.write(buf, 0, length);
+                if ("begin_write".equals(name)) {
+                    inFlight++;
+                    maxInFlight = Math.max(maxInFlight, inFlight);
+                }
+            } else if ("end_write".equals(name)) {
+                inFlight--;
+            } else if ("close".equals(name)) {
+                closed = true;
+            } else {
+                throw new UnsupportedOperationException(name);
+            }
+            return null;
+        }
+    }
+}
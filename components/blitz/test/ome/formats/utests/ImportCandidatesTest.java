@@ -7,6 +7,7 @@ package ome.formats.utests;
 import java.io.File;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import ome.formats.OMEROMetadataStoreClient;
@@ -20,6 +21,9 @@ import ome.formats.importer.ImportFixture;
 import ome.formats.importer.ImportLibrary;
 import ome.formats.importer.OMEROWrapper;
 import ome.formats.importer.ImportCandidates.SCANNING;
+import omero.util.TempFileManager;
+
+import org.apache.commons.io.FileUtils;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -114,4 +118,49 @@ public class ImportCandidatesTest {
         };
     }
 
+    /**
+     * Files named <code>n</code> use the files named <code>n + 1</code> and,
+     * if <code>n</code> is even, <code>n + 2</code>.
+     */
+    private List<String> scan(File dir, int threads) {
+        ImportConfig config = new ImportConfig();
+        config.parallelScan.set(threads);
+        final File root = dir;
+        c = new ImportCandidates(new OMEROWrapper(config),
+                new String[] { dir.getAbsolutePath() }, o) {
+            @Override
+            protected ImportContainer singleFile(File file, ImportConfig config) {
+                int n = Integer.parseInt(file.getName());
+                List<String> used = new ArrayList<String>();
+                used.add(file.getAbsolutePath());
+                used.add(new File(root, String.valueOf(n + 1)).getAbsolutePath());
+                if (n % 2 == 0) {
+                    used.add(new File(root, String.valueOf(n + 2)).getAbsolutePath());
+                }
+                return new ImportContainer(file, null, null, "",
+                        used.toArray(new String[used.size()]), false);
+            }
+        };
+        List<String> groups = new ArrayList<String>();
+        for (ImportContainer container : c.getContainers()) {
+            groups.add(Arrays.toString(container.getUsedFiles()));
+        }
+        return groups;
+    }
+
+    @Test
+    public void testParallelScanMatchesSequentialScan() throws Exception {
+        File dir = TempFileManager.create_path("candidates", "", true);
+        try {
+            for (int i = 0; i < 50; i++) {
+                new File(dir, String.valueOf(i)).createNewFile();
+            }
+            List<String> sequential = scan(dir, 1);
+            Assert.assertFalse(sequential.isEmpty());
+            Assert.assertEquals(scan(dir, 4), sequential);
+        } finally {
+            FileUtils.deleteDirectory(dir);
+        }
+    }
+
 }
@@ -7,6 +7,11 @@ package ome.services.blitz.test;
 
 import static omero.rtypes.rstring;
 
+import java.io.File;
+import java.util.Arrays;
+
+import loci.formats.in.OMETiffReader;
+import ome.io.nio.PixelsService;
 import ome.services.blitz.impl.ExporterI;
 import ome.services.blitz.impl.OmeroMetadata;
 import ome.services.db.DatabaseIdentity;
@@ -20,6 +25,9 @@ import omero.model.Image;
 import omero.model.ImageI;
 import omero.model.TagAnnotationI;
 import omero.model.TermAnnotationI;
+import omero.util.TempFileManager;
+
+import org.apache.commons.io.FileUtils;
 
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
@@ -28,6 +36,7 @@ import org.testng.annotations.Test;
 public class ExporterITest extends AbstractServantTest {
 
     DatabaseIdentity db = new DatabaseIdentity("test", "test");
+    PixelsService pixelsService;
     ExporterI user_e, root_e;
 
     @Override
@@ -35,10 +44,12 @@ public class ExporterITest extends AbstractServantTest {
     protected void setUp() throws Exception {
         super.setUp();
 
-        user_e = new ExporterI(user.be, db, null);
+        pixelsService = (PixelsService) ctx.getBean("/OMERO/Pixels");
+
+        user_e = new ExporterI(user.be, db, pixelsService);
         user_e.setServiceFactory(user.sf);
 
-        root_e = new ExporterI(root.be, db, null);
+        root_e = new ExporterI(root.be, db, pixelsService);
         root_e.setServiceFactory(root.sf);
     }
 
@@ -111,6 +122,46 @@ public class ExporterITest extends AbstractServantTest {
         assertEquals(size, buf.length);
         
     }
+
+    /**
+     * The TIFF written with several reader threads must hold the same pixels
+     * as the one written reading one block at a time.
+     */
+    @Test
+    public void testParallelTiffGenerationMatchesSerial() throws Exception {
+        Image i = assertNewImage();
+        long id = i.getId().getValue();
+
+        user_e.setReaderThreads(1);
+        user_e.setPrefetchBytes(0);
+        assertAddImage(user_e, id);
+        long size = assertGenerateTiff(user_e);
+        File serial = assertReadTiff(user_e, size);
+
+        ExporterI parallel_e = new ExporterI(user.be, db, pixelsService);
+        parallel_e.setServiceFactory(user.sf);
+        parallel_e.setReaderThreads(3);
+        assertAddImage(parallel_e, id);
+        assertEquals(size, assertGenerateTiff(parallel_e));
+        File parallel = assertReadTiff(parallel_e, size);
+
+        OMETiffReader expected = new OMETiffReader();
+        OMETiffReader actual = new OMETiffReader();
+        try {
+            expected.setId(serial.getAbsolutePath());
+            actual.setId(parallel.getAbsolutePath());
+            assertEquals(expected.getImageCount(), actual.getImageCount());
+            for (int p = 0; p < expected.getImageCount(); p++) {
+                assertTrue("plane " + p, Arrays.equals(
+                        expected.openBytes(p), actual.openBytes(p)));
+            }
+        } finally {
+            expected.close();
+            actual.close();
+            FileUtils.deleteQuietly(serial);
+            FileUtils.deleteQuietly(parallel);
+        }
+    }
     // Helpers
     // =========================================================================
 
@@ -202,10 +253,23 @@ public class ExporterITest extends AbstractServantTest {
         rv.assertPassed();
     }
 
+    /**
+     * Reads the whole TIFF generated by the given exporter into a local file.
+     */
+    private File assertReadTiff(ExporterI e, long size) throws Exception {
+        File file = TempFileManager.create_path("ExporterITest", ".ome.tiff");
+        FileUtils.writeByteArrayToFile(file, assertRead(e, 0, (int) size));
+        return file;
+    }
+
     private byte[] assertRead(long pos, int size) throws Exception {
+        return assertRead(user_e, pos, size);
+    }
+
+    private byte[] assertRead(ExporterI e, long pos, int size) throws Exception {
 
         final RV rv = new RV();
-        user_e.read_async(new AMD_Exporter_read() {
+        e.read_async(new AMD_Exporter_read() {
 
             public void ice_exception(Exception ex) {
                 rv.ex = ex;
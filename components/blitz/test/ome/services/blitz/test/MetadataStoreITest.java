@@ -6,10 +6,16 @@
 package ome.services.blitz.test;
 
 import java.io.File;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
+import ome.formats.MockedOMEROImportFixture;
 import ome.services.blitz.impl.MetadataStoreI;
 import ome.services.roi.PopulateRoiJob;
 import ome.services.util.Executor;
+import omero.model.Channel;
+import omero.model.Pixels;
 import omero.sys.ParametersI;
 
 import org.testng.annotations.Test;
@@ -31,6 +37,48 @@ public class MetadataStoreITest extends AbstractServantTest {
         }
     }
 
+    /**
+     * saveToDB returns the Pixels of the saved graph itself rather than
+     * reloading them, so their ids and links must match the database.
+     */
+    @Test
+    public void testSavedPixelsMatchDatabase() throws Exception {
+        MockedOMEROImportFixture fixture = new MockedOMEROImportFixture(
+                user.managedSf, "");
+        List<Pixels> saved = fixture.fullImport(getTinyFileName(), "tinyTest");
+        assertFalse(saved.isEmpty());
+        for (Pixels pixels : saved) {
+            assertNotNull(pixels.getId());
+            Pixels db = (Pixels) assertFindByQuery(
+                    "select p from Pixels p join fetch p.image "
+                    + "join fetch p.pixelsType "
+                    + "left outer join fetch p.channels "
+                    + "where p.id = :id",
+                    new ParametersI().addId(pixels.getId())).get(0);
+            assertEquals(db.getImage().getId().getValue(),
+                    pixels.getImage().getId().getValue());
+            assertEquals(db.getPixelsType().getId().getValue(),
+                    pixels.getPixelsType().getId().getValue());
+            assertEquals(db.getSizeX().getValue(), pixels.getSizeX().getValue());
+            assertEquals(db.getSizeY().getValue(), pixels.getSizeY().getValue());
+            assertEquals(db.getSizeZ().getValue(), pixels.getSizeZ().getValue());
+            assertEquals(db.getSizeC().getValue(), pixels.getSizeC().getValue());
+            assertEquals(db.getSizeT().getValue(), pixels.getSizeT().getValue());
+            if (pixels.sizeOfChannels() >= 0) {
+                assertEquals(channelIds(db), channelIds(pixels));
+            }
+        }
+    }
+
+    private Set<Long> channelIds(Pixels pixels) {
+        Set<Long> ids = new HashSet<Long>();
+        for (Channel channel : pixels.copyChannels()) {
+            assertNotNull(channel.getId());
+            ids.add(channel.getId().getValue());
+        }
+        return ids;
+    }
+
     /*
     BROKEN BY r5316
     @Test(groups = "ticket:1193")
@@ -62,6 +62,7 @@ import omero.model.ProjectDatasetLinkI;
 import omero.model.ProjectI;
 import omero.model.ReverseIntensityContextI;
 import omero.sys.ParametersI;
+import omero.util.IceMap;
 import omero.util.IceMapper;
 
 import org.testng.annotations.BeforeMethod;
@@ -325,4 +326,14 @@ public class AdapterTest extends TestCase {
         EventI ei = (EventI) mapper.map(e);
         assertNotNull(ei.getTime());
     }
+
+    @Test
+    public void testGeneratedConstructorsMatchClassMap() throws Exception {
+        assertEquals(IceMap.OMEtoOMERO.keySet(),
+                IceMap.OMEtoOMERONew.keySet());
+        for (Map.Entry<Class, Class> entry : IceMap.OMEtoOMERO.entrySet()) {
+            assertEquals(entry.getKey().getName(), entry.getValue(),
+                    IceMap.OMEtoOMERONew.get(entry.getKey()).get().getClass());
+        }
+    }
 }
@@ -57,6 +57,7 @@ import ome.services.messages.GlobalMulticaster;
 import ome.system.EventContext;
 import ome.system.OmeroContext;
 import ome.system.Roles;
+import ome.system.metrics.DefaultMetrics;
 import omeis.providers.re.RGBBuffer;
 import omeis.providers.re.RenderingEngine;
 import omero.RMap;
@@ -1148,6 +1149,36 @@ public class IceMethodInvokerUnitTest extends MockObjectTestCase {
         
     }
     
+    @Test
+    public void testInvocationsAreTimedPerMethod() throws Exception {
+        DefaultMetrics metrics = new DefaultMetrics();
+        ctx.getBeanFactory().registerSingleton("metrics", metrics);
+        c = IAdmin.class;
+
+        Mock mockA = mock(c);
+        mockA.expects(once()).method("changePassword");
+        mockA.expects(once()).method("createUser").will(
+                throwException(new SecurityViolation("foo")));
+        IAdmin prx = (IAdmin) mockA.proxy();
+
+        IceMethodInvoker imi = new IceMethodInvoker(c, ctx);
+        current.operation = "changePassword";
+        imi.invoke(prx, current, new IceMapper(), "foo");
+        current.operation = "createUser";
+        try {
+            imi.invoke(prx, current, new IceMapper(), new ExperimenterI(),
+                    "default");
+            fail("Should have thrown");
+        } catch (omero.SecurityViolation sv) {
+            // ok
+        }
+
+        assertEquals(1, metrics.timer(imi, "IAdmin.changePassword").getCount());
+        assertEquals(0, metrics.counter(imi, "IAdmin.changePassword.errors").getCount());
+        assertEquals(1, metrics.timer(imi, "IAdmin.createUser").getCount());
+        assertEquals(1, metrics.counter(imi, "IAdmin.createUser.errors").getCount());
+    }
+
     // ~ Helpers
     // =========================================================================
 
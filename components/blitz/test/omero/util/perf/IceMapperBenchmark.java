@@ -0,0 +1,124 @@
+/*
+ *   Copyright 2018 University of Dundee. All rights reserved.
+ *   Use is subject to license terms supplied in LICENSE.txt
+ */
+package omero.util.perf;
+
+import java.util.concurrent.TimeUnit;
+
+import ome.model.annotations.CommentAnnotation;
+import ome.model.containers.Dataset;
+import ome.model.core.Image;
+import ome.model.meta.Experimenter;
+import ome.model.meta.ExperimenterGroup;
+import ome.model.roi.Rectangle;
+import ome.model.roi.Roi;
+import omero.util.IceMap;
+import omero.util.IceMapper;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the throughput of {@link IceMapper#map(ome.util.Filterable)} for
+ * a dataset of images, each with an annotation and a region of interest,
+ * and of {@link IceMapper#reverse(ome.model.ModelBased)} for the mapped
+ * dataset. Run with <code>ant benchmark</code> from
+ * <code>components/blitz</code>, which also reports the allocation rates.
+ * <p>
+ * The <code>mapper</code> parameter selects how the targets are created:
+ * <ul>
+ * <li><code>generated</code>: through the constructors of
+ * {@link IceMap#OMEtoOMERONew}.</li>
+ * <li><code>reflection</code>: through {@link Class#newInstance()} of the
+ * classes of {@link IceMap#OMEtoOMERO}, as before.</li>
+ * </ul>
+ * </p>
+ *
+ * @since 5.5.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IceMapperBenchmark {
+
+    /**
+     * Always creates the targets by reflection.
+     */
+    private static class ReflectionIceMapper extends IceMapper {
+
+        @Override
+        protected Object newTarget(Class sourceType) {
+            return null;
+        }
+    }
+
+    @Param({"generated", "reflection"})
+    public String mapper;
+
+    @Param({"10", "1000"})
+    public int images;
+
+    private Dataset dataset;
+
+    private omero.model.Dataset mapped;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Experimenter owner = new Experimenter(1L, false);
+        ExperimenterGroup group = new ExperimenterGroup(2L, false);
+        dataset = new Dataset(1L, true);
+        dataset.setName("dataset");
+        setDetails(dataset, owner, group);
+        for (long i = 1; i <= images; i++) {
+            Image image = new Image(i, true);
+            image.setName("image " + i);
+            setDetails(image, owner, group);
+            CommentAnnotation comment = new CommentAnnotation(i, true);
+            comment.setTextValue("comment " + i);
+            setDetails(comment, owner, group);
+            image.linkAnnotation(comment);
+            Roi roi = new Roi(i, true);
+            Rectangle rectangle = new Rectangle(i, true);
+            rectangle.setTextValue("rectangle " + i);
+            roi.addShape(rectangle);
+            image.addRoi(roi);
+            dataset.linkImage(image);
+        }
+        mapped = (omero.model.Dataset) newMapper().map(dataset);
+    }
+
+    private void setDetails(ome.model.IObject object, Experimenter owner,
+            ExperimenterGroup group) {
+        object.getDetails().setOwner(owner);
+        object.getDetails().setGroup(group);
+    }
+
+    private IceMapper newMapper() {
+        return "reflection".equals(mapper) ? new ReflectionIceMapper()
+                : new IceMapper();
+    }
+
+    @Benchmark
+    public Object map() {
+        return newMapper().map(dataset);
+    }
+
+    @Benchmark
+    public Object reverse() {
+        return newMapper().reverse(mapped);
+    }
+}
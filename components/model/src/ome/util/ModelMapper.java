@@ -146,6 +146,10 @@ public abstract class ModelMapper extends ContextFilter {
                 }
 
             } else {
+                target = newTarget(currentType);
+            }
+
+            if (null == target) {
                 targetType = findClass(currentType);
 
                 if (null == targetType) {
@@ -166,6 +170,20 @@ public abstract class ModelMapper extends ContextFilter {
         return target;
     }
 
+    /**
+     * extension point which subclasses can override to create the targets
+     * of the given type without reflection. If <code>null</code> is returned,
+     * the target is instantiated from the class returned by
+     * {@link #findClass(Class)}.
+     * 
+     * @param sourceType
+     *            the class of the object being mapped, possibly a proxy.
+     * @return a new uninitialized target or <code>null</code>.
+     */
+    protected Object newTarget(Class sourceType) {
+        return null;
+    }
+
     public Collection findCollection(Collection source) {
         if (source == null) {
             return null;
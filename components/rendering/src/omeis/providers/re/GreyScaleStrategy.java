@@ -69,10 +69,15 @@ class GreyScaleStrategy extends RenderingStrategy {
         CodomainChain cc = renderer.getCodomainChain(channel);
         
         // Retrieve the planar data to render
-        performanceStats.startIO(channel);
-        Plane2D plane =
-        	PlaneFactory.createPlane(planeDef, channel, metadata, pixels);
-        performanceStats.endIO(channel);
+        Plane2D plane;
+        synchronized (pixels)
+        {
+            renderer.initResolutionLevel();
+            performanceStats.startIO(channel);
+            plane = PlaneFactory.createPlane(planeDef, channel, metadata,
+                    pixels);
+            performanceStats.endIO(channel);
+        }
 
         RGBBuffer buf = getRgbBuffer();
         
@@ -148,23 +153,30 @@ class GreyScaleStrategy extends RenderingStrategy {
         // Retrieve the planar data to render
         
         Plane2D plane;
-        try {
-        	performanceStats.startIO(channel);
-        	plane = PlaneFactory.createPlane(planeDef, channel, metadata, pixels);
-        	performanceStats.endIO(channel);
-		} finally
-		{
-			try
+        synchronized (pixels)
+        {
+            renderer.initResolutionLevel();
+            try
             {
-                pixels.close();
-            } 
-            catch (IOException e)
+                performanceStats.startIO(channel);
+                plane = PlaneFactory.createPlane(planeDef, channel, metadata,
+                        pixels);
+                performanceStats.endIO(channel);
+            }
+            finally
             {
-                log.error("Pixels could not be closed successfully.", e);
-    			throw new ResourceError(
-    					e.getMessage() + " Please check server log.");
+                try
+                {
+                    pixels.close();
+                }
+                catch (IOException e)
+                {
+                    log.error("Pixels could not be closed successfully.", e);
+                    throw new ResourceError(
+                            e.getMessage() + " Please check server log.");
+                }
             }
-		}
+        }
        
 	    RGBIntBuffer dataBuf = getIntBuffer();
 	    
@@ -227,10 +239,15 @@ class GreyScaleStrategy extends RenderingStrategy {
         CodomainChain cc = renderer.getCodomainChain(channel);
         
         // Retrieve the planar data to render
-        performanceStats.startIO(channel);
-        Plane2D plane =
-        	PlaneFactory.createPlane(planeDef, channel, metadata, pixels);
-        performanceStats.endIO(channel);
+        Plane2D plane;
+        synchronized (pixels)
+        {
+            renderer.initResolutionLevel();
+            performanceStats.startIO(channel);
+            plane = PlaneFactory.createPlane(planeDef, channel, metadata,
+                    pixels);
+            performanceStats.endIO(channel);
+        }
 	
 	    RGBAIntBuffer dataBuf = getRGBAIntBuffer();
 	    
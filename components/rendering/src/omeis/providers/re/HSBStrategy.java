@@ -10,9 +10,6 @@ import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -40,8 +37,9 @@ import omeis.providers.re.quantum.QuantumStrategy;
  * rendering context.
  * <p>
  * This strategy renders the in "regions", dividing the planar data up based
- * on {@link #maxTasks} and assigning each task to its own thread. This should
- * result in parallel rendering on multi-processor machines.
+ * on {@link #maxTasks} and handing the tasks to the {@link RenderingScheduler}
+ * shared by all renderers. This should result in parallel rendering on
+ * multi-processor machines without creating threads for each plane.
  * </p>
  * <p>
  * Thread-safety relies on the fact that the rendering context is not going to
@@ -228,7 +226,13 @@ class HSBStrategy extends RenderingStrategy {
         List<RenderHSBRegionTask> tasks = new ArrayList<RenderHSBRegionTask>();
 
         //RenderingStats performanceStats = renderer.getStats();
-        List<Plane2D> wData = getWavelengthData(def);
+        // The pixel buffer is shared by the concurrent renderings and closed
+        // once the planes are read.
+        List<Plane2D> wData;
+        synchronized (renderer.getPixels()) {
+            renderer.initResolutionLevel();
+            wData = getWavelengthData(def);
+        }
         List<int[]> colors = getColors();
         List<LutReader> readers = renderer.getLutProvider().getLutReaders(
                 renderer.getChannelBindings());
@@ -322,38 +326,12 @@ class HSBStrategy extends RenderingStrategy {
     private void render(RGBBuffer buf, PlaneDef planeDef) throws IOException,
             QuantizationException {
         RenderingStats performanceStats = renderer.getStats();
-        // Process each active wavelength. If their number N > 1, then
-        // process N-1 async and one in the current thread. If N = 1,
+        // Process each region. If their number N > 1, then hand N-1 to the
+        // shared worker pool and process one in the current thread. If N = 1,
         // just use the current thread.
         RenderingTask[] tasks = makeRenderingTasks(planeDef, buf);
         performanceStats.startRendering();
-        int n = tasks.length;
-        Future[] rndTskFutures = new Future[n]; // [0] unused.
-        ExecutorService processor = Executors.newCachedThreadPool();
-
-        while (0 < --n) {
-            rndTskFutures[n] = processor.submit(tasks[n]);
-        }
-
-        // Call the task in the current thread.
-        if (n == 0) {
-            tasks[0].call();
-        }
-
-        // Wait for all forked tasks (if any) to complete.
-        for (n = 1; n < rndTskFutures.length; ++n) {
-            try {
-                rndTskFutures[n].get();
-            } catch (Exception e) {
-                if (e instanceof QuantizationException) {
-                    throw (QuantizationException) e;
-                }
-                throw new RuntimeException(e);
-            }
-        }
-
-        // Shutdown the task processor
-        processor.shutdown();
+        renderer.getScheduler().execute(tasks);
 
         // End the performance metrics for this rendering event.
         performanceStats.endRendering();
@@ -229,6 +229,7 @@ class RenderHSBRegionTask implements RenderingTask {
         int width = x1End - x1Start;
         int i = 0;
         int[] buf = ((RGBIntBuffer) dataBuffer).getDataBuffer();
+        int[] row = new int[width];
         boolean isPrimaryColor = optimizations.isPrimaryColorEnabled();
         boolean isAlphaless = optimizations.isAlphalessRendering();
         LutReader reader;
@@ -249,7 +250,6 @@ class RenderHSBRegionTask implements RenderingTask {
                      color[ColorsFactory.BLUE_INDEX] / 255.0 : 0.0;
             boolean isXYPlanar = plane.isXYPlanar();
             PixelData data = plane.getData();
-            int bytesPerPixel = data.bytesPerPixel();
 
             // Get our color offset if we've got the primary color optimization
             // enabled.
@@ -259,12 +259,14 @@ class RenderHSBRegionTask implements RenderingTask {
             float alpha = new Integer(
                     color[ColorsFactory.ALPHA_INDEX]).floatValue() / 255;
             for (int x2 = x2Start; x2 < x2End; ++x2) {
+                // Quantize the whole row at once when reading directly from
+                // the buffer.
+                if (isXYPlanar)
+                    qs.quantize(data, width * x2 + x1Start, width, row, 0);
                 for (int x1 = x1Start; x1 < x1End; ++x1) {
                     pix = width * x2 + x1;
                     if (isXYPlanar)
-                        discreteValue =
-                        qs.quantize(
-                                data.getPixelValueDirect(pix * bytesPerPixel));
+                        discreteValue = row[x1 - x1Start];
                     else
                         discreteValue =
                             qs.quantize(plane.getPixelValue(x1, x2));
@@ -376,6 +378,7 @@ class RenderHSBRegionTask implements RenderingTask {
         int width = x1End - x1Start;
         int i = 0;
         int[] buf = ((RGBAIntBuffer) dataBuffer).getDataBuffer();
+        int[] row = new int[width];
         boolean isPrimaryColor = optimizations.isPrimaryColorEnabled();
         boolean isAlphaless = optimizations.isAlphalessRendering();
         LutReader reader;
@@ -394,7 +397,6 @@ class RenderHSBRegionTask implements RenderingTask {
                     color[ColorsFactory.BLUE_INDEX] / 255.0 : 0.0;
             boolean isXYPlanar = plane.isXYPlanar();
             PixelData data = plane.getData();
-            int bytesPerPixel = data.bytesPerPixel();
 
             // Get our color offset if we've got the primary color optimization
             // enabled.
@@ -403,12 +405,14 @@ class RenderHSBRegionTask implements RenderingTask {
 
             float alpha = new Integer(color[ColorsFactory.ALPHA_INDEX]).floatValue() / 255;
             for (int x2 = x2Start; x2 < x2End; ++x2) {
+                // Quantize the whole row at once when reading directly from
+                // the buffer.
+                if (isXYPlanar)
+                    qs.quantize(data, width * x2 + x1Start, width, row, 0);
                 for (int x1 = x1Start; x1 < x1End; ++x1) {
                     pix = width * x2 + x1;
                     if (isXYPlanar)
-                        discreteValue =
-                        qs.quantize(
-                                data.getPixelValueDirect(pix * bytesPerPixel));
+                        discreteValue = row[x1 - x1Start];
                     else
                         discreteValue =
                             qs.quantize(plane.getPixelValue(x1, x2));
@@ -140,6 +140,16 @@ public class Renderer {
     /** Lookup table provider. */
     private LutProvider lutProvider;
 
+    /** Executes the rendering tasks the strategy splits a plane into. */
+    private RenderingScheduler scheduler = RenderingScheduler.getDefault();
+
+    /**
+     * The resolution level to read the pixels at, <code>null</code> to read
+     * them at the current resolution level of the pixel buffer. Only set for
+     * the renderers created by {@link #newRenderContext(Map, Integer)}.
+     */
+    private Integer resolutionLevel;
+
     /**
      * Returns a copy of a list of channel bindings with one element removed;
      * the so called "other" channel bindings for the image.
@@ -402,6 +412,69 @@ public class Renderer {
         checkOptimizations();
     }
 
+    /**
+     * Creates a renderer for a single rendering, sharing the settings and the
+     * pixel buffer of the given renderer.
+     *
+     * @param renderer The renderer to share the settings of.
+     * @param overlays The overlays to render.
+     * @param resolutionLevel The resolution level to read the pixels at or
+     *                        <code>null</code>.
+     */
+    private Renderer(Renderer renderer, Map<byte[], Integer> overlays,
+            Integer resolutionLevel) {
+        metadata = renderer.metadata;
+        rndDef = renderer.rndDef;
+        buffer = renderer.buffer;
+        lutProvider = renderer.lutProvider;
+        scheduler = renderer.scheduler;
+        quantumManager = renderer.quantumManager;
+        codomainChains = renderer.codomainChains;
+        this.overlays = overlays;
+        this.resolutionLevel = resolutionLevel;
+        renderingStrategy = RenderingStrategy.makeNew(rndDef.getModel());
+        if (overlays == renderer.overlays) {
+            optimizations = renderer.optimizations;
+        } else {
+            checkOptimizations();
+        }
+    }
+
+    /**
+     * Returns a renderer for a single rendering which shares the settings
+     * and the pixel buffer of this renderer but has its own rendering
+     * strategy, statistics and overlays. The renderers returned for
+     * concurrent renderings can render in parallel as long as the settings
+     * of this renderer are not modified meanwhile; their reads of the pixel
+     * buffer are serialized.
+     *
+     * @param overlays The overlays to render, <code>null</code> or empty for
+     *                 the overlays of this renderer.
+     * @param resolutionLevel The resolution level to read the pixels at or
+     *                        <code>null</code> for the current resolution
+     *                        level of the pixel buffer.
+     * @return See above.
+     */
+    public Renderer newRenderContext(Map<byte[], Integer> overlays,
+            Integer resolutionLevel) {
+        if (overlays == null || overlays.isEmpty()) {
+            overlays = this.overlays;
+        }
+        return new Renderer(this, overlays, resolutionLevel);
+    }
+
+    /**
+     * Sets the resolution level of the rendering on the pixel buffer, if any.
+     * Must be called while holding the lock of the pixel buffer, before
+     * reading from it, since the other renderers sharing the buffer may have
+     * changed or reset the resolution level.
+     */
+    void initResolutionLevel() {
+        if (resolutionLevel != null) {
+            buffer.setResolutionLevel(resolutionLevel);
+        }
+    }
+
     /**
      * Returns the current lookup table provider.
      *
@@ -412,6 +485,31 @@ public class Renderer {
         return lutProvider;
     }
 
+    /**
+     * Returns the scheduler used to execute the rendering tasks.
+     *
+     * @return See above.
+     */
+    RenderingScheduler getScheduler()
+    {
+        return scheduler;
+    }
+
+    /**
+     * Sets the scheduler used to execute the rendering tasks. Renderers
+     * share the {@link RenderingScheduler#getDefault() default scheduler}
+     * unless configured otherwise.
+     *
+     * @param scheduler The scheduler to use. Mustn't be <code>null</code>.
+     */
+    public void setScheduler(RenderingScheduler scheduler)
+    {
+        if (scheduler == null) {
+            throw new NullPointerException("Expecting not null scheduler");
+        }
+        this.scheduler = scheduler;
+    }
+
     /**
      * Specifies the model that dictates how transformed raw data has to be
      * mapped onto a color space. This class delegates the actual rendering to a
@@ -503,7 +601,10 @@ public class Renderer {
         if (pd == null) {
             throw new NullPointerException("No plane definition.");
         }
-        checkRegionDef(pd.getRegion());
+        synchronized (buffer) {
+            initResolutionLevel();
+            checkRegionDef(pd.getRegion());
+        }
         stats = new RenderingStats(this, pd);
         log.info("Using: '" + renderingStrategy.getClass().getName()
                 + "' rendering strategy.");
@@ -544,7 +645,10 @@ public class Renderer {
         if (pd == null) {
             throw new NullPointerException("No plane definition.");
         }
-        checkRegionDef(pd.getRegion());
+        synchronized (buffer) {
+            initResolutionLevel();
+            checkRegionDef(pd.getRegion());
+        }
         stats = new RenderingStats(this, pd);
         log.info("Using: '" + renderingStrategy.getClass().getName()
                 + "' rendering strategy.");
@@ -967,6 +1071,10 @@ public class Renderer {
      **/
     public int getResolutionLevel()
     {
+        if (resolutionLevel != null)
+        {
+            return resolutionLevel;
+        }
         return buffer.getResolutionLevel();
     }
 
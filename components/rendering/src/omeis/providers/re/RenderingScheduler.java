@@ -0,0 +1,276 @@
+/*
+ * Copyright (C) 2018 University of Dundee & Open Microscopy Environment.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package omeis.providers.re;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ome.system.metrics.Counter;
+import ome.system.metrics.Metrics;
+import ome.system.metrics.NullMetrics;
+import ome.system.metrics.Timer;
+import omeis.providers.re.quantum.QuantizationException;
+
+/**
+ * Long-lived, bounded pool of worker threads shared by all {@link Renderer}
+ * instances for executing the {@link RenderingTask}s which a
+ * {@link RenderingStrategy} splits a plane into.
+ * <p>
+ * The calling thread always takes part in the rendering: the first task is
+ * run in the current thread and, once it completes, any task which has not
+ * yet been picked up by a worker is run in the current thread as well. If the
+ * queue is full the task is run in the current thread immediately so that a
+ * saturated pool degrades to serial rendering rather than blocking.
+ * </p>
+ *
+ * @since 5.5.0
+ */
+public class RenderingScheduler {
+
+    /** The logger for this particular class */
+    private static final Logger log =
+            LoggerFactory.getLogger(RenderingScheduler.class);
+
+    /** Instance used by renderers which have not been given a scheduler. */
+    private static volatile RenderingScheduler defaultScheduler;
+
+    /** The executor running the forked tasks. */
+    private final ThreadPoolExecutor executor;
+
+    /** Number of tasks waiting in the queue for a worker. */
+    private final Counter queueDepth;
+
+    /** Number of tasks which have been run in the calling thread. */
+    private final Counter inlineCount;
+
+    /** Number of tasks rejected by the saturated pool. */
+    private final Counter saturatedCount;
+
+    /** Time spent by the forked tasks waiting for a worker. */
+    private final Timer waitTimes;
+
+    /** Time spent executing the tasks. */
+    private final Timer taskTimes;
+
+    /**
+     * Returns the scheduler shared by all renderers which have not been
+     * explicitly configured with one. It is created on first use with one
+     * thread per available processor.
+     *
+     * @return See above.
+     */
+    public static RenderingScheduler getDefault() {
+        RenderingScheduler scheduler = defaultScheduler;
+        if (scheduler == null) {
+            synchronized (RenderingScheduler.class) {
+                scheduler = defaultScheduler;
+                if (scheduler == null) {
+                    scheduler = new RenderingScheduler(new NullMetrics(), 0, 0);
+                    defaultScheduler = scheduler;
+                }
+            }
+        }
+        return scheduler;
+    }
+
+    /**
+     * Creates a new instance.
+     *
+     * @param metrics Used to expose queue-depth and task-latency metrics.
+     * @param threads The number of worker threads. If not positive, the
+     *                number of available processors is used.
+     * @param queueSize The maximum number of tasks waiting for a worker
+     *                  before tasks are run in the calling thread. If not
+     *                  positive, four times the number of threads is used.
+     */
+    public RenderingScheduler(Metrics metrics, int threads, int queueSize) {
+        if (threads <= 0) {
+            threads = Runtime.getRuntime().availableProcessors();
+        }
+        if (queueSize <= 0) {
+            queueSize = 4 * threads;
+        }
+        executor = new ThreadPoolExecutor(threads, threads, 60L,
+                TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(queueSize),
+                new RenderingThreadFactory());
+        executor.allowCoreThreadTimeOut(true);
+        queueDepth = metrics.counter(this, "queueDepth");
+        inlineCount = metrics.counter(this, "inlineCount");
+        saturatedCount = metrics.counter(this, "saturatedCount");
+        waitTimes = metrics.timer(this, "waitTimes");
+        taskTimes = metrics.timer(this, "taskTimes");
+        log.info("RenderingScheduler: threads={}, queue={}", threads,
+                queueSize);
+    }
+
+    /**
+     * Returns the maximum number of tasks which can be executed in parallel.
+     *
+     * @return See above.
+     */
+    public int getThreadCount() {
+        return executor.getMaximumPoolSize();
+    }
+
+    /**
+     * Executes all the passed tasks and waits for their completion. The first
+     * task is executed in the calling thread, the others are handed to the
+     * worker threads when possible.
+     *
+     * @param tasks The tasks to execute.
+     * @throws QuantizationException If a task failed to quantize a value.
+     */
+    public void execute(RenderingTask[] tasks) throws QuantizationException {
+        int n = tasks.length;
+        if (n == 0) {
+            return;
+        }
+        ScheduledTask[] forked = new ScheduledTask[n]; // [0] unused.
+        for (int i = 1; i < n; i++) {
+            forked[i] = new ScheduledTask(tasks[i]);
+            try {
+                executor.execute(forked[i]);
+            } catch (RejectedExecutionException e) {
+                forked[i].dequeued();
+                saturatedCount.inc();
+                forked[i].runInline();
+            }
+        }
+
+        // Call the first task in the current thread.
+        Timer.Context ctx = taskTimes.time();
+        try {
+            tasks[0].call();
+        } finally {
+            ctx.stop();
+        }
+
+        // Steal back whatever has not been picked up yet and then wait for
+        // the remaining ones to complete.
+        for (int i = n - 1; i > 0; i--) {
+            if (executor.remove(forked[i])) {
+                forked[i].runInline();
+            }
+        }
+        for (int i = 1; i < n; i++) {
+            try {
+                forked[i].get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            } catch (ExecutionException e) {
+                Throwable t = e.getCause();
+                if (t instanceof QuantizationException) {
+                    throw (QuantizationException) t;
+                } else if (t instanceof RuntimeException) {
+                    throw (RuntimeException) t;
+                } else if (t instanceof Error) {
+                    throw (Error) t;
+                }
+                throw new RuntimeException(t);
+            }
+        }
+    }
+
+    /**
+     * Stops the worker threads. Tasks already submitted are completed.
+     */
+    public void destroy() {
+        executor.shutdown();
+    }
+
+    /**
+     * Wraps a {@link RenderingTask} in order to record how long it waited in
+     * the queue and how long it took to execute. The task is counted in
+     * {@link #queueDepth} from its creation until it is taken off the queue,
+     * whichever thread takes it.
+     */
+    private class ScheduledTask extends FutureTask<Object> {
+
+        private final Timer.Context waiting = waitTimes.time();
+
+        /** Whether the task is still counted in {@link #queueDepth}. */
+        private final AtomicBoolean queued = new AtomicBoolean(true);
+
+        ScheduledTask(final RenderingTask task) {
+            super(new Callable<Object>() {
+                public Object call() throws Exception {
+                    Timer.Context ctx = taskTimes.time();
+                    try {
+                        return task.call();
+                    } finally {
+                        ctx.stop();
+                    }
+                }
+            });
+            queueDepth.inc();
+        }
+
+        /** Stops counting the task in {@link #queueDepth}, at most once. */
+        void dequeued() {
+            if (queued.compareAndSet(true, false)) {
+                queueDepth.dec();
+            }
+        }
+
+        @Override
+        public void run() {
+            dequeued();
+            waiting.stop();
+            super.run();
+        }
+
+        /** Runs the task in the calling thread. */
+        void runInline() {
+            inlineCount.inc();
+            run();
+        }
+    }
+
+    /** Marker class for the worker threads. */
+    private static class RenderingThread extends Thread {
+        RenderingThread(Runnable r, String name) {
+            super(r, name);
+            setDaemon(true);
+        }
+    }
+
+    /** Creates named daemon worker threads. */
+    private static class RenderingThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger count = new AtomicInteger();
+
+        public Thread newThread(Runnable r) {
+            return new RenderingThread(r,
+                    "RenderingScheduler-" + count.incrementAndGet());
+        }
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2018 University of Dundee & Open Microscopy Environment.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package omeis.providers.re.quantum;
+
+import java.util.concurrent.ExecutionException;
+
+import com.google.common.cache.LoadingCache;
+
+/**
+ * Look-up table used by the strategies which quantize the values by
+ * sub-interval of the input window (see
+ * {@link QuantumStrategy#getMiddleRange(double)}) rather than by value.
+ * The table holds the quantized value of each sub-interval so that a value
+ * can be quantized without boxing it.
+ *
+ * @since 5.5.0
+ */
+final class MiddleRangeTable {
+
+    /** Index of the values lower than the window start. */
+    private static final int BELOW = 0;
+
+    /** Index of the values greater than the window end. */
+    private static final int ABOVE = 1;
+
+    /** Index of the window start. */
+    private static final int START = 2;
+
+    /** Index of the first sub-interval. */
+    private static final int FIRST = 3;
+
+    /** The lower bound of the input window. */
+    private final double min;
+
+    /** The upper bound of the input window. */
+    private final double max;
+
+    /** The size of a sub-interval. */
+    private final double step;
+
+    /** The quantized values. */
+    private final int[] table;
+
+    /**
+     * Creates a new instance.
+     *
+     * @param min The lower bound of the input window.
+     * @param max The upper bound of the input window.
+     * @param cdStart The lower bound of the codomain interval.
+     * @param cdEnd The upper bound of the codomain interval.
+     * @param values The cache used to quantize the middle of the
+     *               sub-intervals.
+     * @throws ExecutionException If a value could not be quantized.
+     */
+    MiddleRangeTable(double min, double max, int cdStart, int cdEnd,
+            LoadingCache<Double, Integer> values) throws ExecutionException
+    {
+        this.min = min;
+        this.max = max;
+        int n = cdEnd - cdStart + 1;
+        step = Math.abs(max - min) / n;
+        table = new int[FIRST + n + 1];
+        table[BELOW] = values.get(min);
+        table[ABOVE] = values.get(max);
+        table[START] = values.get(min + step / 2);
+        for (int v = 0; v <= n; v++) {
+            table[FIRST + v] = values.get((min + (v - 1) * step + min
+                    + v * step) / 2);
+        }
+    }
+
+    /**
+     * Returns the quantized value or <code>-1</code> if the value is not
+     * covered by the table.
+     *
+     * @param value The value to quantize.
+     * @return See above.
+     */
+    int get(double value)
+    {
+        if (value < min) return table[BELOW];
+        if (value > max) return table[ABOVE];
+        if (value == min) return table[START];
+        int v = (int) ((value - min) / step);
+        if (v < 0 || FIRST + v >= table.length) return -1;
+        return table[FIRST + v];
+    }
+}
@@ -23,6 +23,7 @@
 
 package omeis.providers.re.quantum;
 
+import java.nio.ByteBuffer;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 
@@ -32,6 +33,7 @@ import com.google.common.cache.LoadingCache;
 
 import ome.model.core.Pixels;
 import ome.model.display.QuantumDef;
+import ome.util.PixelData;
 
 /**
  * Quantization process. In charge of building a look-up table for each active
@@ -85,6 +87,9 @@ public class Quantization_32_bit extends QuantumStrategy {
     /** The mapped values.*/
     private LoadingCache<Double, Integer> values;
 
+    /** The mapped values by sub-interval, built on first bulk quantization. */
+    private volatile MiddleRangeTable ranges;
+
     /**
      * Initializes the coefficient of the normalize mapping operation.
      *
@@ -161,6 +166,7 @@ public class Quantization_32_bit extends QuantumStrategy {
     @Override
     protected void onWindowChange() {
         values.invalidateAll();
+        ranges = null;
     }
 
     /**
@@ -234,4 +240,44 @@ public class Quantization_32_bit extends QuantumStrategy {
         }
     }
 
+    /**
+     * Implemented as specified in {@link QuantumStrategy}. Reads the values
+     * directly from the buffer and maps them using the quantized value of
+     * the sub-interval they belong to.
+     *
+     * @see QuantumStrategy#quantize(PixelData, int, int, int[], int)
+     */
+    @Override
+    public void quantize(PixelData data, int offset, int length, int[] dst,
+            int dstOffset) throws QuantizationException {
+        if (data.javaType() != PixelData.INT) {
+            super.quantize(data, offset, length, dst, dstOffset);
+            return;
+        }
+        MiddleRangeTable table = ranges;
+        if (table == null) {
+            try {
+                table = new MiddleRangeTable(getWindowStart(), getWindowEnd(),
+                        qDef.getCdStart(), qDef.getCdEnd(), values);
+            } catch (ExecutionException e) {
+                throw new QuantizationException(e);
+            }
+            ranges = table;
+        }
+        ByteBuffer buf = data.getData();
+        boolean signed = data.isSigned();
+        int end = offset + length;
+        double value;
+        int v;
+        for (int i = offset; i < end; i++) {
+            if (signed) {
+                value = buf.getInt(i * 4);
+            } else {
+                value = buf.getInt(i * 4) & 0xFFFFFFFFL;
+            }
+            v = table.get(value);
+            dst[dstOffset++] = v < 0 ? quantize(value) : v;
+        }
+    }
+
 }
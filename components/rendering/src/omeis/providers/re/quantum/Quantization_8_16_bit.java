@@ -7,8 +7,11 @@
 
 package omeis.providers.re.quantum;
 
+import java.nio.ByteBuffer;
+
 import ome.model.core.Pixels;
 import ome.model.display.QuantumDef;
+import ome.util.PixelData;
 
 /**
  * Quantization process. In charge of building a look-up table for each active
@@ -321,4 +324,40 @@ public class Quantization_8_16_bit extends QuantumStrategy {
         return i & 0xFF;
     }
 
+    /**
+     * Implemented as specified in {@link QuantumStrategy}. Reads the 8 or 16
+     * bit values directly from the buffer and indexes the look-up table
+     * without converting them to <code>double</code>.
+     *
+     * @see QuantumStrategy#quantize(PixelData, int, int, int[], int)
+     */
+    @Override
+    public void quantize(PixelData data, int offset, int length, int[] dst,
+            int dstOffset) throws QuantizationException {
+        int type = data.javaType();
+        if (type != PixelData.BYTE && type != PixelData.SHORT) {
+            super.quantize(data, offset, length, dst, dstOffset);
+            return;
+        }
+        ByteBuffer buf = data.getData();
+        boolean signed = data.isSigned();
+        byte[] lut = LUT;
+        int lo = lutMin;
+        int hi = lutMax;
+        int end = offset + length;
+        int x;
+        for (int i = offset; i < end; i++) {
+            if (type == PixelData.BYTE) {
+                x = signed ? buf.get(i) : buf.get(i) & 0xFF;
+            } else {
+                x = signed ? buf.getShort(2 * i) : buf.getShort(2 * i) & 0xFFFF;
+            }
+            if (x < lo || x > hi) {
+                dst[dstOffset++] = quantize(x);
+            } else {
+                dst[dstOffset++] = lut[x - lo] & 0xFF;
+            }
+        }
+    }
+
 }
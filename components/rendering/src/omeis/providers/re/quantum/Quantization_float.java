@@ -23,11 +23,13 @@
 
 package omeis.providers.re.quantum;
 
+import java.nio.ByteBuffer;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 
 import ome.model.core.Pixels;
 import ome.model.display.QuantumDef;
+import ome.util.PixelData;
 
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
@@ -85,6 +87,9 @@ public class Quantization_float extends QuantumStrategy {
     /** The mapped values.*/
     private LoadingCache<Double, Integer> values;
 
+    /** The mapped values by sub-interval, built on first bulk quantization. */
+    private volatile MiddleRangeTable ranges;
+
     /**
      * Initializes the coefficient of the normalize mapping operation.
      *
@@ -161,6 +166,7 @@ public class Quantization_float extends QuantumStrategy {
     @Override
     protected void onWindowChange() {
         values.invalidateAll();
+        ranges = null;
     }
 
     /**
@@ -234,4 +240,45 @@ public class Quantization_float extends QuantumStrategy {
         }
     }
 
+    /**
+     * Implemented as specified in {@link QuantumStrategy}. Reads the values
+     * directly from the buffer and maps them using the quantized value of
+     * the sub-interval they belong to.
+     *
+     * @see QuantumStrategy#quantize(PixelData, int, int, int[], int)
+     */
+    @Override
+    public void quantize(PixelData data, int offset, int length, int[] dst,
+            int dstOffset) throws QuantizationException {
+        if (data.javaType() != PixelData.FLOAT
+                && data.javaType() != PixelData.DOUBLE) {
+            super.quantize(data, offset, length, dst, dstOffset);
+            return;
+        }
+        MiddleRangeTable table = ranges;
+        if (table == null) {
+            try {
+                table = new MiddleRangeTable(getWindowStart(), getWindowEnd(),
+                        qDef.getCdStart(), qDef.getCdEnd(), values);
+            } catch (ExecutionException e) {
+                throw new QuantizationException(e);
+            }
+            ranges = table;
+        }
+        ByteBuffer buf = data.getData();
+        boolean isDouble = data.javaType() == PixelData.DOUBLE;
+        int end = offset + length;
+        double value;
+        int v;
+        for (int i = offset; i < end; i++) {
+            if (isDouble) {
+                value = buf.getDouble(i * 8);
+            } else {
+                value = buf.getFloat(i * 4);
+            }
+            v = table.get(value);
+            dst[dstOffset++] = v < 0 ? quantize(value) : v;
+        }
+    }
+
 }
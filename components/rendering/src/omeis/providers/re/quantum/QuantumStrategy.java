@@ -11,6 +11,7 @@ import ome.model.core.Pixels;
 import ome.model.display.QuantumDef;
 import ome.model.enums.Family;
 import ome.model.enums.PixelsType;
+import ome.util.PixelData;
 import omeis.providers.re.data.PlaneFactory;
 import omeis.providers.re.metadata.StatsFactory;
 
@@ -460,4 +461,34 @@ public abstract class QuantumStrategy {
      */
     public abstract int quantize(double value) throws QuantizationException;
 
+    /**
+     * Maps a run of contiguous pixel intensity values to values in the
+     * codomain interval. This is equivalent to calling
+     * {@link #quantize(double)} for each pixel but allows subclasses to read
+     * the raw data directly from the backing buffer without converting each
+     * value to a <code>double</code>.
+     *
+     * @param data
+     *            The raw pixel data.
+     * @param offset
+     *            The offset, in pixels, of the first value to quantize.
+     * @param length
+     *            The number of values to quantize.
+     * @param dst
+     *            The array into which the quantized values are written.
+     * @param dstOffset
+     *            The index in <code>dst</code> of the first quantized value.
+     * @throws QuantizationException
+     *             If one of the values cannot be quantized.
+     */
+    public void quantize(PixelData data, int offset, int length, int[] dst,
+            int dstOffset) throws QuantizationException {
+        int bytesPerPixel = data.bytesPerPixel();
+        int end = offset + length;
+        for (int i = offset; i < end; i++) {
+            dst[dstOffset++] = quantize(
+                    data.getPixelValueDirect(i * bytesPerPixel));
+        }
+    }
+
 }
@@ -0,0 +1,252 @@
+/*
+ *   Copyright 2018 University of Dundee. All rights reserved.
+ *   Use is subject to license terms supplied in LICENSE.txt
+ */
+
+package ome.io.nio;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import ome.system.metrics.Counter;
+import ome.system.metrics.Metrics;
+import ome.system.metrics.NullMetrics;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Cache of read-only memory mappings of whole ROMIO pixels files shared by
+ * the read-only {@link RomioPixelBuffer} instances. Each buffer acquires the
+ * mapping of its file on first read and releases it when closed; mappings
+ * which are not in use by any buffer are evicted in least recently used
+ * order once the total size of the mappings exceeds the configured budget.
+ * Mappings in use are never evicted so that the budget may be temporarily
+ * exceeded.
+ * <p>
+ * Evicted mappings are not explicitly unmapped since the regions sliced
+ * from them may still be referenced: the address space is released once
+ * they have been garbage collected. Files larger than
+ * {@link Integer#MAX_VALUE} bytes cannot be mapped as a single buffer and
+ * are not cached.
+ * </p>
+ *
+ * @since 5.5.0
+ */
+public class MappedPixelsCache {
+
+    private final static Logger log = LoggerFactory.getLogger(MappedPixelsCache.class);
+
+    /** Maximum number of bytes mapped by the unused mappings. */
+    private final long budget;
+
+    /** The mappings by path, in access order. */
+    private final LinkedHashMap<String, Mapping> mappings =
+            new LinkedHashMap<String, Mapping>(16, 0.75f, true);
+
+    /** Total number of bytes mapped by the cached mappings. */
+    private long mapped = 0;
+
+    private final Counter hits;
+
+    private final Counter misses;
+
+    private final Counter evictions;
+
+    /**
+     * Creates a cache without metrics.
+     * @param budget the number of bytes which may be mapped, 0 or lower
+     * disables the cache
+     */
+    public MappedPixelsCache(long budget) {
+        this(new NullMetrics(), budget);
+    }
+
+    /**
+     * Creates a cache.
+     * @param metrics used to count the hits, misses and evictions
+     * @param budget the number of bytes which may be mapped, 0 or lower
+     * disables the cache
+     */
+    public MappedPixelsCache(Metrics metrics, long budget) {
+        this.budget = budget;
+        this.hits = metrics.counter(this, "hits");
+        this.misses = metrics.counter(this, "misses");
+        this.evictions = metrics.counter(this, "evictions");
+        log.info("MappedPixelsCache(budget={})", budget);
+    }
+
+    /**
+     * Returns whether any file may be mapped.
+     * @return See above.
+     */
+    public boolean isEnabled() {
+        return budget > 0;
+    }
+
+    /**
+     * Returns the mapping of the given file, mapping it if not cached, and
+     * increments its reference count. Each successful call must be matched by
+     * a call to {@link #release(Mapping)}.
+     * @param path the path of the pixels file
+     * @return the mapping or <code>null</code> if the file cannot be mapped
+     * @throws IOException if the file cannot be read
+     */
+    public Mapping acquire(String path) throws IOException {
+        if (!isEnabled()) {
+            return null;
+        }
+        final long length = new File(path).length();
+        synchronized (mappings) {
+            Mapping mapping = mappings.get(path);
+            if (mapping != null && mapping.buffer.capacity() >= length) {
+                mapping.references++;
+                hits.inc();
+                return mapping;
+            }
+            if (mapping != null) {
+                // The file has grown since it was mapped.
+                remove(path, mapping);
+            }
+        }
+        misses.inc();
+        if (length == 0 || length > Integer.MAX_VALUE) {
+            return null;
+        }
+        final MappedByteBuffer buffer;
+        final RandomAccessFile file = new RandomAccessFile(path, "r");
+        try {
+            final FileChannel channel = file.getChannel();
+            buffer = channel.map(MapMode.READ_ONLY, 0, length);
+        } finally {
+            file.close();
+        }
+        synchronized (mappings) {
+            Mapping mapping = mappings.get(path);
+            if (mapping == null || mapping.buffer.capacity() < length) {
+                if (mapping != null) {
+                    remove(path, mapping);
+                }
+                mapping = new Mapping(path, buffer);
+                mappings.put(path, mapping);
+                mapped += length;
+            }
+            mapping.references++;
+            evict();
+            return mapping;
+        }
+    }
+
+    /**
+     * Decrements the reference count of the given mapping, which may then be
+     * evicted.
+     * @param mapping the mapping returned by {@link #acquire(String)}
+     */
+    public void release(Mapping mapping) {
+        synchronized (mappings) {
+            mapping.references--;
+            evict();
+        }
+    }
+
+    /**
+     * Removes the mapping of the given file, for instance because the file
+     * has been deleted. Buffers still using the mapping keep it until they
+     * are closed.
+     * @param path the path of the pixels file
+     */
+    public void invalidate(String path) {
+        synchronized (mappings) {
+            final Mapping mapping = mappings.get(path);
+            if (mapping != null) {
+                remove(path, mapping);
+            }
+        }
+    }
+
+    /**
+     * Removes all the mappings.
+     */
+    public void close() {
+        synchronized (mappings) {
+            mappings.clear();
+            mapped = 0;
+        }
+    }
+
+    private void remove(String path, Mapping mapping) {
+        mappings.remove(path);
+        mapped -= mapping.buffer.capacity();
+    }
+
+    /**
+     * Removes the least recently used mappings which are not in use until the
+     * budget is met. Must be called while holding the lock on
+     * {@link #mappings}.
+     */
+    private void evict() {
+        final Iterator<Map.Entry<String, Mapping>> it =
+                mappings.entrySet().iterator();
+        while (mapped > budget && it.hasNext()) {
+            final Mapping mapping = it.next().getValue();
+            if (mapping.references <= 0) {
+                it.remove();
+                mapped -= mapping.buffer.capacity();
+                evictions.inc();
+                if (log.isDebugEnabled()) {
+                    log.debug("Evicted mapping of " + mapping.path);
+                }
+            }
+        }
+    }
+
+    /**
+     * Read-only mapping of a whole pixels file.
+     */
+    public static class Mapping {
+
+        private final String path;
+
+        private final MappedByteBuffer buffer;
+
+        /** Guarded by the lock on {@link MappedPixelsCache#mappings}. */
+        private int references = 0;
+
+        Mapping(String path, MappedByteBuffer buffer) {
+            this.path = path;
+            this.buffer = buffer;
+        }
+
+        /**
+         * Returns whether the given region is covered by the mapping.
+         * @param offset the offset of the region in the file
+         * @param size the size of the region
+         * @return See above.
+         */
+        public boolean contains(long offset, int size) {
+            return offset >= 0 && offset + size <= buffer.capacity();
+        }
+
+        /**
+         * Returns a view of the given region of the file. The view does not
+         * copy the data and must not be explicitly unmapped.
+         * @param offset the offset of the region in the file
+         * @param size the size of the region
+         * @return See above.
+         */
+        public ByteBuffer slice(long offset, int size) {
+            final ByteBuffer view = buffer.duplicate();
+            view.limit((int) offset + size);
+            view.position((int) offset);
+            return view.slice();
+        }
+    }
+}
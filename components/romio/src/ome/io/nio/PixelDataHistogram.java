@@ -0,0 +1,323 @@
+/*
+ *   Copyright 2018 University of Dundee. All rights reserved.
+ *   Use is subject to license terms supplied in LICENSE.txt
+ */
+
+package ome.io.nio;
+
+import java.nio.ByteBuffer;
+
+import ome.util.PixelData;
+
+/**
+ * Computes the range and the histogram of rectangular regions of blocks of
+ * {@link PixelData}, such as planes or tiles. The pixels type is checked
+ * once per region rather than once per pixel as done by
+ * {@link PixelData#getPixelValue(int)} so that the loops only read the
+ * primitive values from the backing buffer. The values are binned as
+ * <code>(value - min) / binRange</code>; if there are more bins than values
+ * (<code>binRange &lt; 1</code>) the non-zero bins are offset by one so that
+ * the maximum value goes into the last bin.
+ *
+ * @since 5.5.0
+ */
+public class PixelDataHistogram {
+
+    private PixelDataHistogram() {
+        // static methods only
+    }
+
+    /**
+     * Returns the minimum and maximum values of the given region. Floating
+     * point values which are not a number are ignored.
+     * @param px the block of pixels
+     * @param width the width of the block
+     * @param x the X coordinate of the region within the block
+     * @param y the Y coordinate of the region within the block
+     * @param w the width of the region
+     * @param h the height of the region
+     * @return <code>{min, max}</code>, <code>{+Infinity, -Infinity}</code> if
+     * the region is empty
+     */
+    public static double[] minMax(PixelData px, int width, int x, int y,
+            int w, int h) {
+        final ByteBuffer data = px.getData();
+        final int type = type(px);
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+        for (int row = y; row < y + h; row++) {
+            final int start = row * width + x;
+            final int end = start + w;
+            switch (type) {
+                case UINT8:
+                    for (int i = start; i < end; i++) {
+                        final int v = data.get(i) & 0xFF;
+                        if (v < min) min = v;
+                        if (v > max) max = v;
+                    }
+                    break;
+                case INT8:
+                    for (int i = start; i < end; i++) {
+                        final int v = data.get(i);
+                        if (v < min) min = v;
+                        if (v > max) max = v;
+                    }
+                    break;
+                case UINT16:
+                    for (int i = start; i < end; i++) {
+                        final int v = data.getShort(i << 1) & 0xFFFF;
+                        if (v < min) min = v;
+                        if (v > max) max = v;
+                    }
+                    break;
+                case INT16:
+                    for (int i = start; i < end; i++) {
+                        final int v = data.getShort(i << 1);
+                        if (v < min) min = v;
+                        if (v > max) max = v;
+                    }
+                    break;
+                case UINT32:
+                    for (int i = start; i < end; i++) {
+                        final long v = data.getInt(i << 2) & 0xFFFFFFFFL;
+                        if (v < min) min = v;
+                        if (v > max) max = v;
+                    }
+                    break;
+                case INT32:
+                    for (int i = start; i < end; i++) {
+                        final int v = data.getInt(i << 2);
+                        if (v < min) min = v;
+                        if (v > max) max = v;
+                    }
+                    break;
+                case FLOAT:
+                    for (int i = start; i < end; i++) {
+                        final float v = data.getFloat(i << 2);
+                        if (v < min) min = v;
+                        if (v > max) max = v;
+                    }
+                    break;
+                case DOUBLE:
+                    for (int i = start; i < end; i++) {
+                        final double v = data.getDouble(i << 3);
+                        if (v < min) min = v;
+                        if (v > max) max = v;
+                    }
+                    break;
+                default:
+                    for (int i = start; i < end; i++) {
+                        final double v = px.getPixelValue(i);
+                        if (v < min) min = v;
+                        if (v > max) max = v;
+                    }
+            }
+        }
+        return new double[] { min, max };
+    }
+
+    /**
+     * Adds the values of the given region to the histogram.
+     * @param px the block of pixels
+     * @param width the width of the block
+     * @param x the X coordinate of the region within the block
+     * @param y the Y coordinate of the region within the block
+     * @param w the width of the region
+     * @param h the height of the region
+     * @param min the value of the lower bound of the first bin
+     * @param binRange the range of values of each bin
+     * @param bins the histogram to add to, values outside of the bins are
+     * ignored
+     */
+    public static void fill(PixelData px, int width, int x, int y, int w,
+            int h, double min, double binRange, int[] bins) {
+        final ByteBuffer data = px.getData();
+        final int type = type(px);
+        final boolean offset = binRange < 1;
+        for (int row = y; row < y + h; row++) {
+            final int start = row * width + x;
+            final int end = start + w;
+            switch (type) {
+                case UINT8:
+                    for (int i = start; i < end; i++) {
+                        add(bins, data.get(i) & 0xFF, min, binRange, offset);
+                    }
+                    break;
+                case INT8:
+                    for (int i = start; i < end; i++) {
+                        add(bins, data.get(i), min, binRange, offset);
+                    }
+                    break;
+                case UINT16:
+                    for (int i = start; i < end; i++) {
+                        add(bins, data.getShort(i << 1) & 0xFFFF, min,
+                                binRange, offset);
+                    }
+                    break;
+                case INT16:
+                    for (int i = start; i < end; i++) {
+                        add(bins, data.getShort(i << 1), min, binRange,
+                                offset);
+                    }
+                    break;
+                case UINT32:
+                    for (int i = start; i < end; i++) {
+                        add(bins, data.getInt(i << 2) & 0xFFFFFFFFL, min,
+                                binRange, offset);
+                    }
+                    break;
+                case INT32:
+                    for (int i = start; i < end; i++) {
+                        add(bins, data.getInt(i << 2), min, binRange, offset);
+                    }
+                    break;
+                case FLOAT:
+                    for (int i = start; i < end; i++) {
+                        add(bins, data.getFloat(i << 2), min, binRange,
+                                offset);
+                    }
+                    break;
+                case DOUBLE:
+                    for (int i = start; i < end; i++) {
+                        add(bins, data.getDouble(i << 3), min, binRange,
+                                offset);
+                    }
+                    break;
+                default:
+                    for (int i = start; i < end; i++) {
+                        add(bins, px.getPixelValue(i), min, binRange, offset);
+                    }
+            }
+        }
+    }
+
+    /**
+     * Counts the pixels of each value of a block of integer pixels of at
+     * most 16 bits, see {@link PixelsHistogramFile}.
+     * @param px the block of pixels
+     * @param counts the number of pixels of each value, the value minus the
+     * minimum of the pixels type being the index
+     */
+    public static void count(PixelData px, int[] counts) {
+        final ByteBuffer data = px.getData();
+        final int size = px.size();
+        switch (type(px)) {
+            case UINT8:
+                for (int i = 0; i < size; i++) {
+                    counts[data.get(i) & 0xFF]++;
+                }
+                break;
+            case INT8:
+                for (int i = 0; i < size; i++) {
+                    counts[data.get(i) + 128]++;
+                }
+                break;
+            case UINT16:
+                for (int i = 0; i < size; i++) {
+                    counts[data.getShort(i << 1) & 0xFFFF]++;
+                }
+                break;
+            case INT16:
+                for (int i = 0; i < size; i++) {
+                    counts[data.getShort(i << 1) + 32768]++;
+                }
+                break;
+            default:
+                throw new IllegalArgumentException(
+                        "Cannot count the values of " + px);
+        }
+    }
+
+    /**
+     * Returns the minimum and maximum values counted.
+     * @param counts the number of pixels of each value
+     * @param offset the value of the first count
+     * @return <code>{min, max}</code>, <code>{+Infinity, -Infinity}</code> if
+     * no pixels are counted
+     */
+    public static double[] minMax(int[] counts, double offset) {
+        int first = 0;
+        while (first < counts.length && counts[first] == 0) {
+            first++;
+        }
+        int last = counts.length - 1;
+        while (last >= first && counts[last] == 0) {
+            last--;
+        }
+        if (first > last) {
+            return new double[] { Double.POSITIVE_INFINITY,
+                    Double.NEGATIVE_INFINITY };
+        }
+        return new double[] { first + offset, last + offset };
+    }
+
+    /**
+     * Adds the counted values to the histogram, as {@link #fill} would add
+     * the pixels they were counted from.
+     * @param counts the number of pixels of each value
+     * @param offset the value of the first count
+     * @param min the value of the lower bound of the first bin
+     * @param binRange the range of values of each bin
+     * @param bins the histogram to add to, values outside of the bins are
+     * ignored
+     */
+    public static void fill(int[] counts, double offset, double min,
+            double binRange, int[] bins) {
+        final boolean offsetBins = binRange < 1;
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] == 0) {
+                continue;
+            }
+            int bin = (int) ((i + offset - min) / binRange);
+            if (bin > 0 && offsetBins) {
+                bin++;
+            }
+            if (bin >= 0 && bin < bins.length) {
+                bins[bin] += counts[i];
+            }
+        }
+    }
+
+    /**
+     * Adds the given histogram to the other.
+     * @param from the histogram to add
+     * @param to the histogram to add to, of the same length
+     */
+    public static void merge(int[] from, int[] to) {
+        for (int i = 0; i < to.length; i++) {
+            to[i] += from[i];
+        }
+    }
+
+    private static void add(int[] bins, double value, double min,
+            double binRange, boolean offset) {
+        int bin = (int) ((value - min) / binRange);
+        if (bin > 0 && offset) {
+            bin++;
+        }
+        if (bin >= 0 && bin < bins.length) {
+            bins[bin]++;
+        }
+    }
+
+    private static final int UINT8 = 0, INT8 = 1, UINT16 = 2, INT16 = 3,
+            UINT32 = 4, INT32 = 5, FLOAT = 6, DOUBLE = 7, OTHER = 8;
+
+    private static int type(PixelData px) {
+        final boolean signed = px.isSigned();
+        switch (px.javaType()) {
+            case PixelData.BYTE:
+                return signed ? INT8 : UINT8;
+            case PixelData.SHORT:
+                return signed ? INT16 : UINT16;
+            case PixelData.INT:
+                return signed ? INT32 : UINT32;
+            case PixelData.FLOAT:
+                return FLOAT;
+            case PixelData.DOUBLE:
+                return DOUBLE;
+            default:
+                return OTHER;
+        }
+    }
+}
@@ -0,0 +1,275 @@
+/*
+ *   Copyright 2018 University of Dundee. All rights reserved.
+ *   Use is subject to license terms supplied in LICENSE.txt
+ */
+
+package ome.io.nio;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import ome.util.PixelData;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Sidecar file of a pixels set in the binary repository holding the number
+ * of pixels of each value of each plane, written while the pyramid or the
+ * statistics of the pixels set are computed. The histograms of whole planes
+ * at full resolution can then be computed for any number of bins and range
+ * without reading the pixels. Only the integer pixels types of at most 16
+ * bits are supported so that each plane needs at most 65536 counts; only
+ * the non-zero counts are stored.
+ * <p>
+ * The file starts with a header holding the pixels type, followed by one
+ * record per plane in the order the planes were written.
+ * </p>
+ *
+ * @since 5.5.0
+ */
+public class PixelsHistogramFile {
+
+    private final static Logger log = LoggerFactory.getLogger(PixelsHistogramFile.class);
+
+    private static final int MAGIC = 0x4F48494D;
+
+    private static final int VERSION = 1;
+
+    private PixelsHistogramFile() {
+        // static methods only
+    }
+
+    /**
+     * Returns whether the values of the given pixels type can be counted.
+     * @param pixelsType the OME pixels type
+     * @return See above.
+     */
+    public static boolean isSupported(String pixelsType) {
+        return "uint8".equals(pixelsType) || "int8".equals(pixelsType)
+                || "uint16".equals(pixelsType) || "int16".equals(pixelsType);
+    }
+
+    /**
+     * Returns the value of the first count of the given pixels type, i.e.
+     * its minimum.
+     * @param pixelsType a supported OME pixels type
+     * @return See above.
+     */
+    public static double getOffset(String pixelsType) {
+        if ("int8".equals(pixelsType)) {
+            return Byte.MIN_VALUE;
+        } else if ("int16".equals(pixelsType)) {
+            return Short.MIN_VALUE;
+        }
+        return 0;
+    }
+
+    private static int getValueCount(String pixelsType) {
+        return pixelsType.endsWith("8") ? 1 << 8 : 1 << 16;
+    }
+
+    /**
+     * Reads the counts of the given plane.
+     * @param file the histogram file
+     * @param pixelsType the pixels type of the pixels set
+     * @param z the Z-section of the plane
+     * @param c the channel of the plane
+     * @param t the timepoint of the plane
+     * @return the number of pixels of each value, the value minus
+     * {@link #getOffset(String)} being the index, or <code>null</code> if
+     * the file or the plane does not exist
+     * @throws IOException if the file cannot be read
+     */
+    public static int[] read(File file, String pixelsType, int z, int c,
+            int t) throws IOException {
+        if (!isSupported(pixelsType) || !file.exists()) {
+            return null;
+        }
+        final DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file)));
+        try {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION
+                    || !pixelsType.equals(in.readUTF())) {
+                log.warn("Ignoring invalid histogram file: " + file);
+                return null;
+            }
+            while (true) {
+                final int pz = in.readInt();
+                final int pc = in.readInt();
+                final int pt = in.readInt();
+                final int entries = in.readInt();
+                if (pz != z || pc != c || pt != t) {
+                    in.skipBytes(entries * 8);
+                    continue;
+                }
+                final int[] counts = new int[getValueCount(pixelsType)];
+                for (int i = 0; i < entries; i++) {
+                    counts[in.readInt()] = in.readInt();
+                }
+                return counts;
+            }
+        } catch (EOFException e) {
+            return null;
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Writes the counts of the planes of a pixels set to a temporary file
+     * which replaces the histogram file once all the planes are written.
+     * Failures to write are logged rather than thrown so that they do not
+     * interrupt the computation of the pyramid or statistics. Not thread
+     * safe.
+     */
+    public static class Writer {
+
+        private final File file;
+
+        private final File tmpFile;
+
+        private final String pixelsType;
+
+        private DataOutputStream out;
+
+        /** The counts of the current plane. */
+        private int[] counts;
+
+        /** The current plane: <code>{z, c, t}</code>. */
+        private int[] plane;
+
+        /** If the counts have been committed or discarded. */
+        private boolean closed = false;
+
+        /**
+         * Creates a writer.
+         * @param file the histogram file
+         * @param pixelsType a supported OME pixels type
+         */
+        public Writer(File file, String pixelsType) {
+            this.file = file;
+            this.tmpFile = new File(file.getParentFile(),
+                    "." + file.getName() + ".tmp");
+            this.pixelsType = pixelsType;
+        }
+
+        /**
+         * Counts the values of a block of pixels, typically a tile. The
+         * blocks of a plane must be added consecutively.
+         * @param z the Z-section of the plane
+         * @param c the channel of the plane
+         * @param t the timepoint of the plane
+         * @param px the pixels
+         */
+        public void add(int z, int c, int t, PixelData px) {
+            if (closed) {
+                return;
+            }
+            if (plane == null || plane[0] != z || plane[1] != c
+                    || plane[2] != t) {
+                flush();
+                if (closed) {
+                    return;
+                }
+                plane = new int[] { z, c, t };
+                if (counts == null) {
+                    counts = new int[getValueCount(pixelsType)];
+                }
+            }
+            PixelDataHistogram.count(px, counts);
+        }
+
+        /**
+         * Writes the counts of the current plane, if any, and resets them.
+         */
+        private void flush() {
+            if (plane == null) {
+                return;
+            }
+            try {
+                if (out == null) {
+                    tmpFile.getParentFile().mkdirs();
+                    out = new DataOutputStream(new BufferedOutputStream(
+                            new FileOutputStream(tmpFile)));
+                    out.writeInt(MAGIC);
+                    out.writeInt(VERSION);
+                    out.writeUTF(pixelsType);
+                }
+                int entries = 0;
+                for (int count : counts) {
+                    if (count != 0) {
+                        entries++;
+                    }
+                }
+                out.writeInt(plane[0]);
+                out.writeInt(plane[1]);
+                out.writeInt(plane[2]);
+                out.writeInt(entries);
+                for (int i = 0; i < counts.length; i++) {
+                    if (counts[i] != 0) {
+                        out.writeInt(i);
+                        out.writeInt(counts[i]);
+                        counts[i] = 0;
+                    }
+                }
+            } catch (IOException e) {
+                log.warn("Failed to write histograms to " + tmpFile, e);
+                close();
+            }
+        }
+
+        /**
+         * Writes the counts of the last plane and replaces the histogram
+         * file.
+         * @return if the histogram file has been written
+         */
+        public boolean commit() {
+            flush();
+            if (out == null) {
+                close();
+                return false;
+            }
+            try {
+                out.close();
+                out = null;
+                if (tmpFile.renameTo(file)) {
+                    closed = true;
+                    return true;
+                }
+                log.warn("Failed to rename " + tmpFile + " to " + file);
+            } catch (IOException e) {
+                log.warn("Failed to write histograms to " + tmpFile, e);
+            }
+            close();
+            return false;
+        }
+
+        /**
+         * Discards the counts which have not been committed.
+         */
+        public void close() {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    log.warn("Failed to close " + tmpFile, e);
+                }
+                out = null;
+            }
+            if (!closed) {
+                tmpFile.delete();
+            }
+            closed = true;
+            plane = null;
+            counts = null;
+        }
+    }
+}
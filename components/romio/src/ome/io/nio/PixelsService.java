@@ -9,10 +9,24 @@ import java.awt.Dimension;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Deque;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import loci.formats.ChannelFiller;
 import loci.formats.ChannelSeparator;
@@ -67,6 +81,9 @@ public class PixelsService extends AbstractFileSystemService
 	/** Suffix for an the image pyramid of a given pixels set. */
 	public static final String PYRAMID_SUFFIX = "_pyramid";
 
+	/** Suffix for the histograms of the planes of a given pixels set. */
+	public static final String HISTOGRAM_SUFFIX = "_histogram";
+
 	/** Null plane size constant. */
 	public static final int NULL_PLANE_SIZE = 64;
 
@@ -103,6 +120,16 @@ public class PixelsService extends AbstractFileSystemService
 	private Timer tileTimes;
 
 	private Timer minmaxTimes;
+
+	private Timer tileReadTimes;
+
+	private Timer tileWriteTimes;
+
+	/** Number of threads reading tiles while a pyramid is written. */
+	private int pyramidThreads = 1;
+
+	/** Memory mappings shared by the read-only ROMIO pixel buffers. */
+	private MappedPixelsCache mappedPixelsCache;
 	
 	private IQuery iQuery;
 
@@ -220,6 +247,30 @@ public class PixelsService extends AbstractFileSystemService
     public void setMetrics(Metrics metrics) {
         this.tileTimes = metrics.timer(this, "tileTimes");
         this.minmaxTimes = metrics.timer(this, "minmaxTimes");
+        this.tileReadTimes = metrics.timer(this, "tileReadTimes");
+        this.tileWriteTimes = metrics.timer(this, "tileWriteTimes");
+    }
+
+    /**
+     * Sets the number of threads reading the tiles from the ROMIO pixel
+     * buffer while a pyramid is written. The tiles are always written by a
+     * single thread. If <code>1</code>, the tiles are read and written in
+     * turn by the same thread. If not positive, one thread per available
+     * processor is used.
+     * @param pyramidThreads The number of threads.
+     */
+    public void setPyramidThreads(int pyramidThreads) {
+        this.pyramidThreads = pyramidThreads;
+    }
+
+    /**
+     * Sets the cache of memory mappings shared by the read-only ROMIO pixel
+     * buffers created by this service.
+     * @param mappedPixelsCache The cache or <code>null</code> to map the
+     * regions of the files on each read.
+     */
+    public void setMappedPixelsCache(MappedPixelsCache mappedPixelsCache) {
+        this.mappedPixelsCache = mappedPixelsCache;
     }
 
     public long getMemoizerWait() {
@@ -298,6 +349,8 @@ public class PixelsService extends AbstractFileSystemService
                 new PixelsPyramidMinMaxStore(pixels.getSizeC());
             BfPixelBuffer bfPixelBuffer = createMinMaxBfPixelBuffer(
                     originalFilePath, series, minMaxStore);
+            final PixelsHistogramFile.Writer histograms =
+                createHistogramWriter(pixels);
 
             try
             {
@@ -310,7 +363,11 @@ public class PixelsService extends AbstractFileSystemService
                             Timer.Context ctx = minmaxTimes == null ?
                                 null : minmaxTimes.time();
                             try {
-                                bfPixelBuffer.getPlane(z, c, t);
+                                PixelData plane =
+                                    bfPixelBuffer.getPlane(z, c, t);
+                                if (histograms != null) {
+                                    histograms.add(z, c, t, plane);
+                                }
                             } finally {
                                 if (ctx != null) {
                                     ctx.stop();
@@ -319,6 +376,9 @@ public class PixelsService extends AbstractFileSystemService
                         }
                     }
                 }
+                if (histograms != null) {
+                    histograms.commit();
+                }
                 return minMaxStore.createStatsInfo();
             }
             catch (IOException e)
@@ -326,6 +386,12 @@ public class PixelsService extends AbstractFileSystemService
                 log.error("I/O exception while calculating min/max.", e);
                 return null;
             }
+            finally
+            {
+                if (histograms != null) {
+                    histograms.close();
+                }
+            }
         }
 
         final BfPyramidPixelBuffer pixelsPyramid = createPyramidPixelBuffer(
@@ -380,11 +446,13 @@ public class PixelsService extends AbstractFileSystemService
         final PixelBuffer source;
         final Dimension tileSize;
         final PixelsPyramidMinMaxStore minMaxStore;
+        final ByteOrder byteOrder;
 
         if (pixelsFile.exists())
         {
             minMaxStore = null;
             source = createRomioPixelBuffer(pixelsFilePath, pixels, false);
+            byteOrder = ByteOrder.BIG_ENDIAN;
             // FIXME: This should be configuration or service driven
             // FIXME: Also implemented in RenderingBean.getTileSize()
             tileSize = new Dimension(Math.min(pixels.getSizeX(), sizes.getTileWidth()),
@@ -396,9 +464,9 @@ public class PixelsService extends AbstractFileSystemService
             int series = getSeries(pixels);
             BfPixelBuffer bfPixelBuffer = createMinMaxBfPixelBuffer(
                     originalFilePath, series, minMaxStore);
-            pixelsPyramid.setByteOrder(
-                    bfPixelBuffer.isLittleEndian()? ByteOrder.LITTLE_ENDIAN
-                            : ByteOrder.BIG_ENDIAN);
+            byteOrder = bfPixelBuffer.isLittleEndian()?
+                    ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN;
+            pixelsPyramid.setByteOrder(byteOrder);
             source = bfPixelBuffer;
             // If the tile sizes we've been given are completely ridiculous
             // then reset them to WIDTHxHEIGHT. Currently these conditions are:
@@ -435,6 +503,10 @@ public class PixelsService extends AbstractFileSystemService
         }
         log.info("Destination pyramid tile size: " + tileSize);
 
+        final List<PixelBuffer> sources = new ArrayList<PixelBuffer>();
+        sources.add(source);
+        final PixelsHistogramFile.Writer histograms =
+            createHistogramWriter(pixels);
         try
         {
             final double totalTiles =
@@ -442,18 +514,141 @@ public class PixelsService extends AbstractFileSystemService
                 (Math.ceil(source.getSizeX() / tileSize.getWidth())) *
                 (Math.ceil(source.getSizeY() / tileSize.getHeight()));
             final int tenPercent = Math.max((int) totalTiles / 10, 1);
-            Utils.forEachTile(new TileLoopIteration() {
-                public void run(int z, int c, int t, int x, int y, int w,
-                            int h, int tileCount) throws FailedTileLoopException
+            final int readers = getPyramidReaders(minMaxStore);
+            if (pyramidThreads != 1)
             {
-                if (log.isInfoEnabled()
-                    && tileCount % tenPercent == 0)
+                // ROMIO pixel buffers are cheap to open so that each reader
+                // gets its own. The Bio-Formats reader is used by a single
+                // thread since it is computing the min/max as it goes.
+                for (int i = 1; i < readers; i++)
+                {
+                    sources.add(createRomioPixelBuffer(
+                            pixelsFilePath, pixels, false));
+                }
+                performPipelinedWrite(pixels, pixelsPyramidFile,
+                        pixelsPyramid, sources, tileSize, totalTiles,
+                        tenPercent, histograms, byteOrder);
+            }
+            else
+            {
+                performSerialWrite(pixels, pixelsPyramidFile, pixelsPyramid,
+                        source, tileSize, totalTiles, tenPercent, histograms);
+            }
+            log.info("SUCCESS -- Pyramid created for pixels id:" + pixels.getId());
+            if (histograms != null)
+            {
+                histograms.commit();
+            }
+
+        } catch (FailedTileLoopException ftle) {
+            log.error("Failed: completed tile count = " + ftle.getTileCount());
+        }
+
+        finally
+        {
+            if (histograms != null)
+            {
+                histograms.close();
+            }
+            for (PixelBuffer buffer : sources)
+            {
+                try
+                {
+                    buffer.close();
+                }
+                catch (IOException e)
                 {
-                    log.info(String.format(
-                            "Pyramid creation for Pixels:%d %d/%d (%d%%).",
-                            pixels.getId(), tileCount + 1, (int) totalTiles,
-                            (int) (tileCount / totalTiles * 100)));
+                    log.error("Error closing pixel pyramid.", e);
                 }
+            }
+        }
+        return minMaxStore;
+    }
+
+    /**
+     * Returns the number of threads reading tiles from the source while a
+     * pyramid is being written.
+     * @param minMaxStore The store of the min/max values computed while
+     * reading the original file or <code>null</code> if reading from a
+     * ROMIO pixel buffer.
+     * @return See above.
+     */
+    private int getPyramidReaders(PixelsPyramidMinMaxStore minMaxStore)
+    {
+        if (minMaxStore != null)
+        {
+            return 1;
+        }
+        if (pyramidThreads <= 0)
+        {
+            return Runtime.getRuntime().availableProcessors();
+        }
+        return pyramidThreads;
+    }
+
+    /**
+     * Returns the writer of the histograms of the planes of the given pixels
+     * set or <code>null</code> if the values of its pixels type cannot be
+     * counted.
+     */
+    private PixelsHistogramFile.Writer createHistogramWriter(Pixels pixels)
+    {
+        final String pixelsType = pixels.getPixelsType().getValue();
+        if (!PixelsHistogramFile.isSupported(pixelsType))
+        {
+            return null;
+        }
+        return new PixelsHistogramFile.Writer(new File(
+                getPixelsPath(pixels.getId()) + HISTOGRAM_SUFFIX), pixelsType);
+    }
+
+    /**
+     * Returns the number of pixels of each value of the given plane, as
+     * counted while its pyramid or statistics were computed.
+     * @param pixels Pixels set to retrieve the histogram of.
+     * @param z The Z-section of the plane.
+     * @param c The channel of the plane.
+     * @param t The timepoint of the plane.
+     * @return The counts indexed by the value minus
+     * {@link PixelsHistogramFile#getOffset(String)} or <code>null</code> if
+     * they have not been counted.
+     * @since 5.5.0
+     */
+    public int[] getPlaneHistogram(Pixels pixels, int z, int c, int t)
+    {
+        final File file = new File(
+                getPixelsPath(pixels.getId()) + HISTOGRAM_SUFFIX);
+        try
+        {
+            return PixelsHistogramFile.read(file,
+                    pixels.getPixelsType().getValue(), z, c, t);
+        }
+        catch (IOException e)
+        {
+            log.warn("Failed to read histograms from " + file, e);
+            return null;
+        }
+    }
+
+    /**
+     * Reads each tile from the source and writes it to the pyramid in the
+     * calling thread.
+     * @param histograms Counts the values of the tiles, may be
+     * <code>null</code>.
+     */
+    private void performSerialWrite(final Pixels pixels,
+            final File pixelsPyramidFile,
+            final BfPyramidPixelBuffer pixelsPyramid, final PixelBuffer source,
+            final Dimension tileSize, final double totalTiles,
+            final int tenPercent,
+            final PixelsHistogramFile.Writer histograms)
+        throws FailedTileLoopException
+    {
+        Utils.forEachTile(new TileLoopIteration() {
+            public void run(int z, int c, int t, int x, int y, int w,
+                        int h, int tileCount) throws FailedTileLoopException
+            {
+                logProgress(pixels, tileCount, totalTiles, tenPercent);
                 try
                 {
                     Timer.Context ctx = tileTimes == null ? null : tileTimes.time();
@@ -461,6 +656,9 @@ public class PixelsService extends AbstractFileSystemService
                         PixelData tile = source.getTile(z, c, t, x, y, w, h);
                         pixelsPyramid.setTile(
                             tile.getData().array(), z, c, t, x, y, w, h);
+                        if (histograms != null) {
+                            histograms.add(z, c, t, tile);
+                        }
                         tile.dispose();
                     } finally {
                         if (ctx != null) {
@@ -470,43 +668,231 @@ public class PixelsService extends AbstractFileSystemService
                 }
                 catch (IOException e1)
                 {
-                    log.error("FAIL -- Error during tile population", e1);
-                    try
-                    {
-                        pixelsPyramidFile.delete();
-                        FileUtils.touch(pixelsPyramidFile); // ticket:5189
+                    failPyramid(pixelsPyramidFile, e1);
+                }
+            }
+        }, source, (int) tileSize.getWidth(), (int) tileSize.getHeight());
+    }
+
+    /**
+     * Reads the tiles from the sources on a pool of threads, at most two
+     * tiles per thread ahead of the writer, and writes them to the pyramid
+     * in the calling thread in the order of {@link Utils#forEachTile}.
+     * The pyramid writer, which also compresses the tiles, is not thread
+     * safe and requires the tiles of a plane to be written sequentially.
+     * @param sources The pixel buffers to read from. Each buffer is used by
+     * one thread at a time.
+     * @param histograms Counts the values of the tiles in the calling
+     * thread, may be <code>null</code>.
+     * @param byteOrder The byte order of the tiles read from the sources.
+     */
+    private void performPipelinedWrite(final Pixels pixels,
+            final File pixelsPyramidFile,
+            final BfPyramidPixelBuffer pixelsPyramid,
+            final List<PixelBuffer> sources, final Dimension tileSize,
+            final double totalTiles, final int tenPercent,
+            final PixelsHistogramFile.Writer histograms,
+            final ByteOrder byteOrder)
+        throws FailedTileLoopException
+    {
+        final List<int[]> tiles = new ArrayList<int[]>();
+        Utils.forEachTile(new TileLoopIteration() {
+            public void run(int z, int c, int t, int x, int y, int w,
+                    int h, int tileCount)
+            {
+                tiles.add(new int[] { z, c, t, x, y, w, h });
+            }
+        }, sources.get(0), (int) tileSize.getWidth(),
+           (int) tileSize.getHeight());
+
+        final BlockingQueue<PixelBuffer> idle =
+            new ArrayBlockingQueue<PixelBuffer>(sources.size(), false, sources);
+        final int window = 2 * sources.size();
+        ExecutorService readers = Executors.newFixedThreadPool(
+                sources.size(), new ThreadFactory() {
+                    private final AtomicInteger count = new AtomicInteger();
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, String.format(
+                                "PyramidReader-%d-%d", pixels.getId(),
+                                count.incrementAndGet()));
+                        thread.setDaemon(true);
+                        return thread;
                     }
-                    catch (Exception e2)
-                    {
-                        log.warn("Error clearing empty or incomplete pixel " +
-                                 "buffer.", e2);
+                });
+        log.info(String.format("Reading %d tiles of Pixels:%d with %d " +
+                "thread(s).", tiles.size(), pixels.getId(), sources.size()));
+        Deque<Future<byte[]>> pending = new ArrayDeque<Future<byte[]>>(window);
+        int submitted = 0;
+        int tileCount = 0;
+        try
+        {
+            for (; tileCount < tiles.size(); tileCount++)
+            {
+                while (submitted < tiles.size()
+                       && submitted - tileCount < window)
+                {
+                    pending.add(readers.submit(
+                            new TileReader(idle, tiles.get(submitted))));
+                    submitted++;
+                }
+                logProgress(pixels, tileCount, totalTiles, tenPercent);
+                int[] tile = tiles.get(tileCount);
+                Timer.Context ctx = tileTimes == null ? null : tileTimes.time();
+                try {
+                    byte[] buffer = pending.remove().get();
+                    Timer.Context writeCtx = tileWriteTimes == null ?
+                        null : tileWriteTimes.time();
+                    try {
+                        pixelsPyramid.setTile(buffer, tile[0], tile[1],
+                                tile[2], tile[3], tile[4], tile[5], tile[6]);
+                    } finally {
+                        if (writeCtx != null) {
+                            writeCtx.stop();
+                        }
+                    }
+                    if (histograms != null) {
+                        PixelData data = new PixelData(
+                                pixels.getPixelsType().getValue(),
+                                ByteBuffer.wrap(buffer));
+                        data.setOrder(byteOrder);
+                        histograms.add(tile[0], tile[1], tile[2], data);
+                    }
+                } finally {
+                    if (ctx != null) {
+                        ctx.stop();
                     }
-                    throw new FailedTileLoopException();
                 }
             }
-            }, source, (int) tileSize.getWidth(), (int) tileSize.getHeight());
-
-            log.info("SUCCESS -- Pyramid created for pixels id:" + pixels.getId());
-
-        } catch (FailedTileLoopException ftle) {
-            log.error("Failed: completed tile count = " + ftle.getTileCount());
         }
-
+        catch (ExecutionException e)
+        {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException)
+            {
+                throw (RuntimeException) cause;
+            }
+            else if (cause instanceof Error)
+            {
+                throw (Error) cause;
+            }
+            failPyramid(pixelsPyramidFile, cause, tileCount);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            failPyramid(pixelsPyramidFile, e, tileCount);
+        }
+        catch (IOException e)
+        {
+            failPyramid(pixelsPyramidFile, e, tileCount);
+        }
         finally
         {
-            if (source != null)
+            for (Future<byte[]> future : pending)
             {
-                try
-                {
-                    source.close();
-                }
-                catch (IOException e)
-                {
-                    log.error("Error closing pixel pyramid.", e);
+                future.cancel(true);
+            }
+            readers.shutdownNow();
+            try
+            {
+                // The sources are closed by the caller.
+                readers.awaitTermination(1, TimeUnit.MINUTES);
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Logs the progress of the pyramid creation every ten percent.
+     */
+    private void logProgress(Pixels pixels, int tileCount, double totalTiles,
+            int tenPercent)
+    {
+        if (log.isInfoEnabled()
+            && tileCount % tenPercent == 0)
+        {
+            log.info(String.format(
+                    "Pyramid creation for Pixels:%d %d/%d (%d%%).",
+                    pixels.getId(), tileCount + 1, (int) totalTiles,
+                    (int) (tileCount / totalTiles * 100)));
+        }
+    }
+
+    /**
+     * Replaces the incomplete pyramid by an empty file (see ticket:5189)
+     * and aborts the tile loop.
+     * @param pixelsPyramidFile The pyramid file.
+     * @param cause The error which occurred while populating the tiles.
+     * @throws FailedTileLoopException Always thrown.
+     */
+    private void failPyramid(File pixelsPyramidFile, Throwable cause)
+        throws FailedTileLoopException
+    {
+        failPyramid(pixelsPyramidFile, cause, null);
+    }
+
+    /**
+     * Replaces the incomplete pyramid by an empty file (see ticket:5189)
+     * and aborts the tile loop.
+     * @param pixelsPyramidFile The pyramid file.
+     * @param cause The error which occurred while populating the tiles.
+     * @param tileCount The number of tiles written or <code>null</code> if
+     * set by {@link Utils#forEachTile}.
+     * @throws FailedTileLoopException Always thrown.
+     */
+    private void failPyramid(File pixelsPyramidFile, Throwable cause,
+            Integer tileCount) throws FailedTileLoopException
+    {
+        log.error("FAIL -- Error during tile population", cause);
+        try
+        {
+            pixelsPyramidFile.delete();
+            FileUtils.touch(pixelsPyramidFile); // ticket:5189
+        }
+        catch (Exception e2)
+        {
+            log.warn("Error clearing empty or incomplete pixel " +
+                     "buffer.", e2);
+        }
+        FailedTileLoopException ftle = new FailedTileLoopException();
+        ftle.setTileCount(tileCount);
+        throw ftle;
+    }
+
+    /**
+     * Reads a tile using any of the idle pixel buffers.
+     */
+    private class TileReader implements Callable<byte[]> {
+
+        private final BlockingQueue<PixelBuffer> idle;
+
+        private final int[] tile;
+
+        TileReader(BlockingQueue<PixelBuffer> idle, int[] tile) {
+            this.idle = idle;
+            this.tile = tile;
+        }
+
+        public byte[] call() throws Exception {
+            PixelBuffer source = idle.take();
+            Timer.Context ctx = tileReadTimes == null ?
+                null : tileReadTimes.time();
+            try {
+                PixelData data = source.getTile(tile[0], tile[1], tile[2],
+                        tile[3], tile[4], tile[5], tile[6]);
+                byte[] buffer = data.getData().array();
+                data.dispose();
+                return buffer;
+            } finally {
+                if (ctx != null) {
+                    ctx.stop();
                 }
+                idle.put(source);
             }
         }
-        return minMaxStore;
     }
 
     /**
@@ -907,7 +1293,12 @@ public class PixelsService extends AbstractFileSystemService
      */
     protected PixelBuffer createRomioPixelBuffer(String pixelsFilePath,
         Pixels pixels, boolean allowModification) {
-        return new RomioPixelBuffer(pixelsFilePath, pixels, allowModification);
+        RomioPixelBuffer buffer =
+            new RomioPixelBuffer(pixelsFilePath, pixels, allowModification);
+        if (!allowModification && mappedPixelsCache != null) {
+            buffer.setMappedPixelsCache(mappedPixelsCache);
+        }
+        return buffer;
     }
 
     /**
@@ -926,6 +1317,9 @@ public class PixelsService extends AbstractFileSystemService
 			Long id = iter.next();
 
 			String pixelPath = getPixelsPath(id);
+			if (mappedPixelsCache != null) {
+				mappedPixelsCache.invalidate(pixelPath);
+			}
 			file = new File(pixelPath);
 			fileName = file.getName();
 			if (file.exists()) {
@@ -939,6 +1333,7 @@ public class PixelsService extends AbstractFileSystemService
 					}
 				}
 			}
+			new File(pixelPath + HISTOGRAM_SUFFIX).delete();
 		}
 	}
 
@@ -55,6 +55,15 @@ public class RomioPixelBuffer extends AbstractBuffer implements PixelBuffer {
 
     private FileChannel channel;
 
+    /** Shared mappings used by read-only buffers, may be <code>null</code>. */
+    private MappedPixelsCache mappedPixelsCache;
+
+    /** The mapping of the file acquired from {@link #mappedPixelsCache}. */
+    private MappedPixelsCache.Mapping mapping;
+
+    /** Whether the file could not be mapped by {@link #mappedPixelsCache}. */
+    private boolean mappingUnavailable;
+
     /** The size of a row. */
     private Integer rowSize;
     
@@ -106,6 +115,16 @@ public class RomioPixelBuffer extends AbstractBuffer implements PixelBuffer {
         this.permitModification = permitModification;
     }
 
+    /**
+     * Sets the cache of memory mappings used to read the file if the buffer
+     * is read-only. Has no effect on buffers which permit modification.
+     *
+     * @param mappedPixelsCache The cache to use.
+     */
+    public void setMappedPixelsCache(MappedPixelsCache mappedPixelsCache) {
+        this.mappedPixelsCache = mappedPixelsCache;
+    }
+
     private void throwIfReadOnly() {
         if (!permitModification) {
             throw new ApiUsageException("Write-method not permitted.");
@@ -164,7 +183,8 @@ public class RomioPixelBuffer extends AbstractBuffer implements PixelBuffer {
 
     private FileChannel getFileChannel() throws FileNotFoundException {
         if (channel == null) {
-            file = new RandomAccessFile(getPath(), "rw");
+            file = new RandomAccessFile(getPath(),
+                    permitModification ? "rw" : "r");
             channel = file.getChannel();
         }
 
@@ -178,6 +198,12 @@ public class RomioPixelBuffer extends AbstractBuffer implements PixelBuffer {
      *             if an I/O error occurs.
      */
     public void close() throws IOException {
+        if (mapping != null) {
+            mappedPixelsCache.release(mapping);
+            mapping = null;
+        }
+        mappingUnavailable = false;
+
         if (channel != null) {
             try {
                 channel.close();
@@ -335,6 +361,12 @@ public class RomioPixelBuffer extends AbstractBuffer implements PixelBuffer {
 	 */
     public PixelData getRegion(Integer size, Long offset)
             throws IOException {
+        MappedPixelsCache.Mapping m = getMapping();
+        if (m != null && m.contains(offset, size)) {
+            return new PixelData(pixels.getPixelsType().getValue(),
+                    m.slice(offset, size));
+        }
+
         FileChannel fileChannel = getFileChannel();
 
         /*
@@ -346,6 +378,22 @@ public class RomioPixelBuffer extends AbstractBuffer implements PixelBuffer {
         return new PixelData(pixels.getPixelsType().getValue(), b);
     }
     
+    /**
+     * Returns the shared mapping of the file if the buffer is read-only and
+     * the file can be mapped.
+     *
+     * @return See above.
+     * @throws IOException If the file cannot be mapped.
+     */
+    private MappedPixelsCache.Mapping getMapping() throws IOException {
+        if (mapping == null && !mappingUnavailable && !permitModification
+                && mappedPixelsCache != null) {
+            mapping = mappedPixelsCache.acquire(getPath());
+            mappingUnavailable = mapping == null;
+        }
+        return mapping;
+    }
+
     /**
      * Implemented as specified by {@link PixelBuffer} I/F.
      * @see PixelBuffer#getRegionDirect(Integer, Long, byte[])
@@ -515,22 +563,38 @@ public class RomioPixelBuffer extends AbstractBuffer implements PixelBuffer {
     	checkBounds(x, y, z, c, t);
     	checkBounds(x+width-1, y+height-1, null, null, null);
     	
-    	PixelData plane = getPlane(z, c, t);
     	Integer size;
     	ByteBuffer buf;
     	PixelData region = null;
     	int offset;
-    	
+
+    	if (stride == 0 && x == 0 && width == getSizeX()
+    	        && getMapping() != null) {
+    	    // Full rows are contiguous in the shared mapping and are copied
+    	    // in one go. Callers may use the backing array of the region so
+    	    // a read-only slice of the mapping cannot be returned as is.
+    	    PixelData rows = getRegion(height*getRowSize(),
+    	            getRowOffset(y, z, c, t));
+    	    byte[] bytes = new byte[height*getRowSize()];
+    	    rows.getData().duplicate().get(bytes);
+    	    return new PixelData(pixels.getPixelsType().getValue(),
+    	            ByteBuffer.wrap(bytes));
+    	}
+
+    	PixelData plane = getPlane(z, c, t);
     	if (stride == 0) {
-    		size =  width*height*getByteWidth();
-            buf = ByteBuffer.wrap(new byte[size]);
-            region = new PixelData(pixels.getPixelsType().getValue(), buf);
+    		int bytesPerPixel = getByteWidth();
+    		size =  width*height*bytesPerPixel;
+    		byte[] bytes = new byte[size];
+            ByteBuffer src = plane.getData().duplicate();
             for (int i = 0; i < height; i++) {
-            	for (int j = 0; j < width; j++) {
-            		offset = (i+y)*getSizeX()+x+j;
-            		region.setPixelValue(i*width+j, plane.getPixelValue(offset));
-            	}
+            	offset = ((i+y)*getSizeX()+x)*bytesPerPixel;
+            	src.limit(offset + width*bytesPerPixel);
+            	src.position(offset);
+            	src.get(bytes, i*width*bytesPerPixel, width*bytesPerPixel);
             }
+            region = new PixelData(pixels.getPixelsType().getValue(),
+                    ByteBuffer.wrap(bytes));
             plane.dispose();
             return region;
     	}
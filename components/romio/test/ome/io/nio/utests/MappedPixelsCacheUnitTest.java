@@ -0,0 +1,201 @@
+/*
+ *   Copyright 2018 University of Dundee. All rights reserved.
+ *   Use is subject to license terms supplied in LICENSE.txt
+ */
+package ome.io.nio.utests;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.commons.io.FileUtils;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import ome.io.nio.MappedPixelsCache;
+import ome.io.nio.PixelBuffer;
+import ome.io.nio.PixelsService;
+import ome.io.nio.RomioPixelBuffer;
+import ome.model.core.Pixels;
+import ome.model.enums.PixelsType;
+import ome.util.PixelData;
+
+/**
+ * Tests the reads of {@link RomioPixelBuffer} through the shared mappings of
+ * {@link MappedPixelsCache}.
+ * @since 5.5.0
+ */
+public class MappedPixelsCacheUnitTest {
+
+    private static final int sizeX = 64;
+
+    private static final int sizeY = 48;
+
+    private static final String ROOT =
+        PathUtil.getInstance().getTemporaryDataFilePath();
+
+    private Pixels pixels;
+
+    private String path;
+
+    private byte[] plane;
+
+    @AfterClass
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(new File(ROOT));
+    }
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        pixels = new Pixels();
+        pixels.setId(1L);
+        pixels.setSizeX(sizeX);
+        pixels.setSizeY(sizeY);
+        pixels.setSizeZ(2);
+        pixels.setSizeC(1);
+        pixels.setSizeT(1);
+        PixelsType type = new PixelsType();
+        type.setValue("uint16");
+        pixels.setPixelsType(type);
+
+        new File(ROOT).mkdirs();
+        path = new File(ROOT, "mapped").getAbsolutePath();
+        plane = new byte[sizeX * sizeY * 2];
+        for (int i = 0; i < plane.length; i++) {
+            plane[i] = (byte) i;
+        }
+        RomioPixelBuffer writer = new RomioPixelBuffer(path, pixels, true);
+        writer.setPlane(plane, 0, 0, 0);
+        writer.setPlane(plane, 1, 0, 0);
+        writer.close();
+    }
+
+    private RomioPixelBuffer reader(MappedPixelsCache cache) {
+        RomioPixelBuffer buffer = new RomioPixelBuffer(path, pixels);
+        buffer.setMappedPixelsCache(cache);
+        return buffer;
+    }
+
+    private byte[] bytes(PixelData data) {
+        byte[] bytes = new byte[data.getData().remaining()];
+        data.getData().duplicate().get(bytes);
+        return bytes;
+    }
+
+    private byte[] expectedTile(int x, int y, int w, int h) {
+        byte[] tile = new byte[w * h * 2];
+        for (int i = 0; i < h; i++) {
+            System.arraycopy(plane, ((y + i) * sizeX + x) * 2,
+                    tile, i * w * 2, w * 2);
+        }
+        return tile;
+    }
+
+    @Test
+    public void testTilesMatchUnmappedReads() throws Exception {
+        MappedPixelsCache cache = new MappedPixelsCache(1L << 20);
+        RomioPixelBuffer mapped = reader(cache);
+        RomioPixelBuffer unmapped = reader(null);
+        int[][] tiles = {{0, 0, sizeX, 10}, {5, 7, 13, 11}, {0, 40, 16, 8}};
+        for (int[] t : tiles) {
+            byte[] expected = expectedTile(t[0], t[1], t[2], t[3]);
+            Assert.assertEquals(bytes(mapped.getTile(1, 0, 0,
+                    t[0], t[1], t[2], t[3])), expected);
+            Assert.assertEquals(bytes(unmapped.getTile(1, 0, 0,
+                    t[0], t[1], t[2], t[3])), expected);
+        }
+        mapped.close();
+        unmapped.close();
+    }
+
+    @Test
+    public void testMappingIsShared() throws Exception {
+        MappedPixelsCache cache = new MappedPixelsCache(1L << 20);
+        RomioPixelBuffer first = reader(cache);
+        RomioPixelBuffer second = reader(cache);
+        MappedPixelsCache.Mapping mapping = cache.acquire(path);
+        first.getPlane(0, 0, 0);
+        second.getPlane(1, 0, 0);
+        Assert.assertSame(cache.acquire(path), mapping);
+        cache.release(mapping);
+        cache.release(mapping);
+        first.close();
+        second.close();
+    }
+
+    @Test
+    public void testUnusedMappingIsEvicted() throws Exception {
+        MappedPixelsCache cache = new MappedPixelsCache(1);
+        MappedPixelsCache.Mapping mapping = cache.acquire(path);
+        // In use so kept despite the budget.
+        Assert.assertSame(cache.acquire(path), mapping);
+        cache.release(mapping);
+        cache.release(mapping);
+        Assert.assertNotSame(cache.acquire(path), mapping);
+    }
+
+    @Test
+    public void testDisabledCache() throws Exception {
+        MappedPixelsCache cache = new MappedPixelsCache(0);
+        Assert.assertNull(cache.acquire(path));
+        RomioPixelBuffer buffer = reader(cache);
+        Assert.assertEquals(bytes(buffer.getTile(0, 0, 0, 0, 0, sizeX, sizeY)),
+                plane);
+        buffer.close();
+    }
+
+    @DataProvider(name = "pyramidThreads")
+    public Object[][] pyramidThreads() {
+        return new Object[][] {{1}, {2}};
+    }
+
+    /**
+     * Images narrower than the pyramid tiles are read as full-width tiles
+     * whose backing array is written to the pyramid.
+     */
+    @Test(dataProvider = "pyramidThreads")
+    public void testFullWidthTilesWrittenToPyramid(int threads)
+            throws Exception {
+        final int width = 200;
+        final int height = 300;
+        Pixels narrow = new Pixels();
+        narrow.setId(2L + threads);
+        narrow.setSizeX(width);
+        narrow.setSizeY(height);
+        narrow.setSizeZ(1);
+        narrow.setSizeC(1);
+        narrow.setSizeT(1);
+        narrow.setPixelsType(pixels.getPixelsType());
+
+        PixelsService service = new PixelsService(ROOT) {
+            public boolean requiresPixelsPyramid(Pixels pixels) {
+                return true;
+            }
+        };
+        service.setPyramidThreads(threads);
+        service.setMappedPixelsCache(new MappedPixelsCache(1L << 20));
+
+        byte[] data = new byte[width * height * 2];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (i / 3);
+        }
+        PixelBuffer writer = service.createPixelBuffer(narrow);
+        writer.setPlane(data, 0, 0, 0);
+        writer.close();
+
+        service.makePyramid(narrow);
+        Assert.assertTrue(new File(service.getPixelsPath(narrow.getId())
+                + PixelsService.PYRAMID_SUFFIX).exists());
+
+        PixelBuffer pyramid = service.getPixelBuffer(narrow, false);
+        try {
+            Assert.assertEquals(
+                    bytes(pyramid.getTile(0, 0, 0, 0, 0, width, height)),
+                    data);
+        } finally {
+            pyramid.close();
+        }
+    }
+}
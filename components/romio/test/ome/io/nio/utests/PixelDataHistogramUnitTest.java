@@ -0,0 +1,124 @@
+/*
+ *   Copyright 2018 University of Dundee. All rights reserved.
+ *   Use is subject to license terms supplied in LICENSE.txt
+ */
+package ome.io.nio.utests;
+
+import java.nio.ByteBuffer;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import ome.io.nio.PixelDataHistogram;
+import ome.util.PixelData;
+
+/**
+ * Tests that the typed loops of {@link PixelDataHistogram} match the values
+ * read through {@link PixelData#getPixelValue(int)}.
+ * @since 5.5.0
+ */
+public class PixelDataHistogramUnitTest {
+
+    private static final int sizeX = 16;
+
+    private static final int sizeY = 8;
+
+    private PixelData pixelData(String type, int bytesPerPixel) {
+        byte[] bytes = new byte[sizeX * sizeY * bytesPerPixel];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) (i * 37);
+        }
+        return new PixelData(type, ByteBuffer.wrap(bytes));
+    }
+
+    private int[] expectedHistogram(PixelData px, int x, int y, int w, int h,
+            double min, double binRange, int binCount) {
+        int[] bins = new int[binCount];
+        for (int row = y; row < y + h; row++) {
+            for (int col = x; col < x + w; col++) {
+                double v = px.getPixelValue(row * sizeX + col);
+                int bin = (int) ((v - min) / binRange);
+                if (bin > 0 && binRange < 1) {
+                    bin++;
+                }
+                if (bin >= 0 && bin < binCount) {
+                    bins[bin]++;
+                }
+            }
+        }
+        return bins;
+    }
+
+    private void assertRegion(PixelData px, int x, int y, int w, int h) {
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+        for (int row = y; row < y + h; row++) {
+            for (int col = x; col < x + w; col++) {
+                double v = px.getPixelValue(row * sizeX + col);
+                min = Math.min(min, v);
+                max = Math.max(max, v);
+            }
+        }
+        double[] minmax = PixelDataHistogram.minMax(px, sizeX, x, y, w, h);
+        Assert.assertEquals(minmax[0], min);
+        Assert.assertEquals(minmax[1], max);
+
+        for (int binCount : new int[] { 16, 256, 1024 }) {
+            double binRange = (max - min + 1) / binCount;
+            int[] bins = new int[binCount];
+            PixelDataHistogram.fill(px, sizeX, x, y, w, h, min, binRange, bins);
+            Assert.assertEquals(bins, expectedHistogram(px, x, y, w, h, min,
+                    binRange, binCount));
+        }
+    }
+
+    @Test
+    public void testIntegerTypes() {
+        String[] types = { "uint8", "int8", "uint16", "int16", "uint32",
+                "int32" };
+        int[] sizes = { 1, 1, 2, 2, 4, 4 };
+        for (int i = 0; i < types.length; i++) {
+            PixelData px = pixelData(types[i], sizes[i]);
+            assertRegion(px, 0, 0, sizeX, sizeY);
+            assertRegion(px, 3, 2, 7, 5);
+        }
+    }
+
+    @Test
+    public void testFloatingPointTypes() {
+        PixelData px = new PixelData("float",
+                ByteBuffer.allocate(sizeX * sizeY * 4));
+        PixelData dx = new PixelData("double",
+                ByteBuffer.allocate(sizeX * sizeY * 8));
+        for (int i = 0; i < sizeX * sizeY; i++) {
+            px.setPixelValue(i, i * 0.5 - 10);
+            dx.setPixelValue(i, i * 0.25 - 3);
+        }
+        assertRegion(px, 0, 0, sizeX, sizeY);
+        assertRegion(px, 5, 1, 4, 6);
+        assertRegion(dx, 0, 0, sizeX, sizeY);
+        assertRegion(dx, 5, 1, 4, 6);
+    }
+
+    @Test
+    public void testMergedTilesMatchWholeRegion() {
+        PixelData px = pixelData("uint16", 2);
+        int[] whole = new int[64];
+        PixelDataHistogram.fill(px, sizeX, 0, 0, sizeX, sizeY, 0, 1024, whole);
+        int[] merged = new int[64];
+        for (int y = 0; y < sizeY; y += 4) {
+            int[] tile = new int[64];
+            PixelDataHistogram.fill(px, sizeX, 0, y, sizeX, 4, 0, 1024, tile);
+            PixelDataHistogram.merge(tile, merged);
+        }
+        Assert.assertEquals(merged, whole);
+    }
+
+    @Test
+    public void testEmptyRegion() {
+        double[] minmax = PixelDataHistogram.minMax(pixelData("uint8", 1),
+                sizeX, 0, 0, 0, 0);
+        Assert.assertEquals(minmax[0], Double.POSITIVE_INFINITY);
+        Assert.assertEquals(minmax[1], Double.NEGATIVE_INFINITY);
+    }
+}
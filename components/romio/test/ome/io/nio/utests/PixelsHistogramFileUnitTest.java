@@ -0,0 +1,128 @@
+/*
+ *   Copyright 2018 University of Dundee. All rights reserved.
+ *   Use is subject to license terms supplied in LICENSE.txt
+ */
+package ome.io.nio.utests;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.apache.commons.io.FileUtils;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import ome.io.nio.PixelDataHistogram;
+import ome.io.nio.PixelsHistogramFile;
+import ome.util.PixelData;
+
+/**
+ * Tests the histograms of {@link PixelsHistogramFile} against the ones
+ * computed from the pixels.
+ * @since 5.5.0
+ */
+public class PixelsHistogramFileUnitTest {
+
+    private static final int sizeX = 32;
+
+    private static final int sizeY = 16;
+
+    private static final String ROOT =
+        PathUtil.getInstance().getTemporaryDataFilePath();
+
+    private File file;
+
+    @AfterClass
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(new File(ROOT));
+    }
+
+    @BeforeMethod
+    public void setUp() {
+        new File(ROOT).mkdirs();
+        file = new File(ROOT, "1_histogram");
+        file.delete();
+    }
+
+    private PixelData plane(String type, int bytesPerPixel, int seed) {
+        byte[] bytes = new byte[sizeX * sizeY * bytesPerPixel];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) (i * seed);
+        }
+        return new PixelData(type, ByteBuffer.wrap(bytes));
+    }
+
+    private PixelData tile(String type, PixelData plane, int bytesPerPixel,
+            int y, int h) {
+        byte[] bytes = new byte[sizeX * h * bytesPerPixel];
+        ByteBuffer data = plane.getData().duplicate();
+        data.position(sizeX * y * bytesPerPixel);
+        data.get(bytes);
+        return new PixelData(type, ByteBuffer.wrap(bytes));
+    }
+
+    private void assertHistograms(String type, int bytesPerPixel)
+            throws IOException {
+        PixelData[] planes = { plane(type, bytesPerPixel, 7),
+                plane(type, bytesPerPixel, 13) };
+        PixelsHistogramFile.Writer writer =
+                new PixelsHistogramFile.Writer(file, type);
+        for (int c = 0; c < planes.length; c++) {
+            // Two tiles per plane.
+            writer.add(0, c, 0, tile(type, planes[c], bytesPerPixel, 0,
+                    sizeY / 2));
+            writer.add(0, c, 0, tile(type, planes[c], bytesPerPixel,
+                    sizeY / 2, sizeY / 2));
+        }
+        Assert.assertTrue(writer.commit());
+        writer.close();
+        Assert.assertTrue(file.exists());
+
+        double offset = PixelsHistogramFile.getOffset(type);
+        for (int c = 0; c < planes.length; c++) {
+            int[] counts = PixelsHistogramFile.read(file, type, 0, c, 0);
+            Assert.assertNotNull(counts);
+            double[] minmax = PixelDataHistogram.minMax(planes[c], sizeX, 0,
+                    0, sizeX, sizeY);
+            Assert.assertEquals(PixelDataHistogram.minMax(counts, offset),
+                    minmax);
+            double binRange = (minmax[1] - minmax[0] + 1) / 256;
+            int[] expected = new int[256];
+            PixelDataHistogram.fill(planes[c], sizeX, 0, 0, sizeX, sizeY,
+                    minmax[0], binRange, expected);
+            int[] actual = new int[256];
+            PixelDataHistogram.fill(counts, offset, minmax[0], binRange,
+                    actual);
+            Assert.assertEquals(actual, expected);
+        }
+        Assert.assertNull(PixelsHistogramFile.read(file, type, 1, 0, 0));
+    }
+
+    @Test
+    public void testSupportedTypes() throws IOException {
+        assertHistograms("uint8", 1);
+        assertHistograms("int8", 1);
+        assertHistograms("uint16", 2);
+        assertHistograms("int16", 2);
+    }
+
+    @Test
+    public void testUnsupportedTypes() throws IOException {
+        Assert.assertFalse(PixelsHistogramFile.isSupported("float"));
+        Assert.assertFalse(PixelsHistogramFile.isSupported("uint32"));
+        Assert.assertNull(PixelsHistogramFile.read(file, "float", 0, 0, 0));
+    }
+
+    @Test
+    public void testUncommittedCountsAreDiscarded() throws IOException {
+        PixelsHistogramFile.Writer writer =
+                new PixelsHistogramFile.Writer(file, "uint8");
+        writer.add(0, 0, 0, plane("uint8", 1, 3));
+        writer.add(1, 0, 0, plane("uint8", 1, 5));
+        writer.close();
+        Assert.assertFalse(file.exists());
+        Assert.assertNull(PixelsHistogramFile.read(file, "uint8", 0, 0, 0));
+    }
+}
@@ -63,6 +63,8 @@ import ome.model.stats.StatsInfo;
 import ome.system.ServiceFactory;
 import ome.conditions.ApiUsageException;
 import ome.conditions.ValidationException;
+import ome.util.ContextFilter;
+import ome.util.Filterable;
 import ome.util.LSID;
 import ome.util.SqlAction;
 
@@ -2271,25 +2273,28 @@ public class OMEROMetadataStore
     	linkFileset(link);
     	
     	// Save the entire Image rooted graph using the "insert only"
-    	// saveAndReturnIds(). DISABLED until we can find out what is causing
-    	// the extreme memory usage on the graph reload.
+    	// saveAndReturnIds() rather than merging it: the saved objects are
+    	// not copied and the graph is not reloaded since saving assigns the
+    	// ids to the objects of the graph itself.
     	StopWatch s1 = new Slf4JStopWatch("omero.saveImportGraph");
     	Image[] imageArray = 
     		imageList.values().toArray(new Image[imageList.size()]);
-    	IObject[] saved = sf.getUpdateService().saveAndReturnArray(imageArray);
+    	ExistingObjectsFilter existing = new ExistingObjectsFilter();
+    	for (Image image : imageArray)
+    	{
+    		existing.filter(null, image);
+    	}
+    	sf.getUpdateService().saveAndReturnIds(imageArray);
     	s1.stop();
     	
     	List<Pixels> toReturn = new ArrayList<Pixels>();
-    	Image image;
     	Pixels pixels;
-    	for (int i = 0; i < saved.length; i++)
+    	for (int i = 0; i < imageArray.length; i++)
     	{
-    		image = (Image) saved[i];
-    		pixels = image.getPrimaryPixels();
+    		pixels = imageArray[i].getPrimaryPixels();
     		pixelsList.put(i, pixels);
     		toReturn.add(pixels);
     	}
-    	//s2.stop();
    		return toReturn;
     }
 
@@ -2364,4 +2369,30 @@ public class OMEROMetadataStore
             return a.toString().compareTo(b.toString());
         }
     }
+
+    /**
+     * Unloads the objects of the graph which already exist in the database,
+     * for instance the annotations or containers the imported objects are
+     * linked to, so that they are saved as references. The import never
+     * modifies such objects and
+     * {@link ome.api.IUpdate#saveAndReturnIds(IObject[])} only accepts new
+     * objects, enumerations and unloaded references.
+     */
+    private static class ExistingObjectsFilter extends ContextFilter
+    {
+        @Override
+        public Filterable filter(String fieldId, Filterable f)
+        {
+            if (f instanceof IObject && !(f instanceof IEnum))
+            {
+                IObject object = (IObject) f;
+                if (object.getId() != null && object.isLoaded())
+                {
+                    object.unload();
+                    return object;
+                }
+            }
+            return super.filter(fieldId, f);
+        }
+    }
 }
@@ -64,6 +64,8 @@ public class AllGroupsSecurityFilter extends AbstractSecurityFilter {
 
     final SqlAction sql;
 
+    private GroupPermissionsCache groupPermissions;
+
     /**
      * Default constructor which calls all the necessary setters for this
      * {@link FactoryBean}. Also calls {@link #setDefaultFilterCondition(String)}.
@@ -86,6 +88,17 @@ public class AllGroupsSecurityFilter extends AbstractSecurityFilter {
         this.sql = sql;
     }
 
+    /**
+     * Sets the cache of the permissions of the groups. If set, the
+     * permissions of the group of each object are looked up in the cache
+     * rather than by loading the group.
+     *
+     * @param groupPermissions the cache
+     */
+    public void setGroupPermissionsCache(GroupPermissionsCache groupPermissions) {
+        this.groupPermissions = groupPermissions;
+    }
+
     protected String myFilterCondition() {
         return String.format(
                 "\n( "
@@ -138,18 +151,7 @@ public class AllGroupsSecurityFilter extends AbstractSecurityFilter {
         final Long o = d.getOwner().getId();
         final Long g = d.getGroup().getId();
 
-        // ticket:8798 - load permissions for group of object regardless.
-        final ExperimenterGroup group = (ExperimenterGroup) session.get(ExperimenterGroup.class, g);
-        Permissions p = group.getDetails().getPermissions();
-
-        if (p == null) {
-            // Don't know why this is happening, but must do something to
-            // force reloading.
-            p = ome.util.Utils.toPermissions(sql.getGroupPermissions(g));
-            group.getDetails().setPermissions(p);
-            log.warn(String.format(
-                "Forced to reload permissions for group %s: %s", g, p));
-        }
+        final Permissions p = getPermissions(session, g);
 
         if (share || admin) {
             return true;
@@ -199,6 +201,29 @@ public class AllGroupsSecurityFilter extends AbstractSecurityFilter {
     // ~ Helpers
     // =========================================================================
 
+    /**
+     * Returns the permissions of the given group, from the cache if set.
+     */
+    protected Permissions getPermissions(Session session, Long g) {
+        if (groupPermissions != null) {
+            return groupPermissions.getPermissions(g);
+        }
+
+        // ticket:8798 - load permissions for group of object regardless.
+        final ExperimenterGroup group = (ExperimenterGroup) session.get(ExperimenterGroup.class, g);
+        Permissions p = group.getDetails().getPermissions();
+
+        if (p == null) {
+            // Don't know why this is happening, but must do something to
+            // force reloading.
+            p = ome.util.Utils.toPermissions(sql.getGroupPermissions(g));
+            group.getDetails().setPermissions(p);
+            log.warn(String.format(
+                "Forced to reload permissions for group %s: %s", g, p));
+        }
+        return p;
+    }
+
     protected Collection<Long> configGroup(EventContext ec, List<Long> list) {
         Collection<Long> rv = null;
 
@@ -107,6 +107,9 @@ public class BasicACLVoter implements ACLVoter {
 
     private final String fileRepoSecretKey;
 
+    /* optional, the permissions of the groups for omero.group=-1 loads */
+    private GroupPermissionsCache groupPermissions;
+
     public BasicACLVoter(CurrentDetails cd, SystemTypes sysTypes,
             TokenHolder tokenHolder, SecurityFilter securityFilter) {
             this(cd, sysTypes, tokenHolder, securityFilter,
@@ -282,7 +285,15 @@ public class BasicACLVoter implements ACLVoter {
             }
             if (g != null) { // Null for system types
                 Long gid = g.getId();
-                Permissions p = g.getDetails().getPermissions();
+                Permissions p;
+                if (groupPermissions != null) {
+                    p = ec.getPermissionsForGroup(gid);
+                    if (p == null) {
+                        p = new Permissions(groupPermissions.getPermissions(gid));
+                    }
+                } else {
+                    p = g.getDetails().getPermissions();
+                }
                 if (p == null) {
                     log.warn(String.format("Permissions null for group %s " +
                             "while loading %s:%s", gid, klass.getName(), id));
@@ -619,6 +630,16 @@ public class BasicACLVoter implements ACLVoter {
 
     }
 
+    /**
+     * Sets the cache of the permissions of the groups, used to record the
+     * permissions of the groups of the objects loaded across all groups
+     * without loading the groups.
+     * @param groupPermissions the cache
+     */
+    public void setGroupPermissionsCache(GroupPermissionsCache groupPermissions) {
+        this.groupPermissions = groupPermissions;
+    }
+
     @Override
     public Set<String> restrictions(IObject object) {
         return policyService.listActiveRestrictions(object);
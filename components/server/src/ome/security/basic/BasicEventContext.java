@@ -61,6 +61,8 @@ public class BasicEventContext extends SimpleEventContext {
 
     private List<EventLog> logs;
 
+    private Map<Long, Long> membershipChanges;
+
     private Event event;
 
     private Experimenter owner;
@@ -328,6 +330,14 @@ public class BasicEventContext extends SimpleEventContext {
         this.logs = logs;
     }
 
+    public Map<Long, Long> getMembershipChanges() {
+        return membershipChanges;
+    }
+
+    public void setMembershipChanges(Map<Long, Long> membershipChanges) {
+        this.membershipChanges = membershipChanges;
+    }
+
     // ~ Special logic for groups
     // =========================================================================
 
@@ -10,6 +10,7 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import ome.api.local.LocalAdmin;
@@ -525,14 +526,29 @@ public class BasicSecuritySystem implements SecuritySystem,
         if (!logs.isEmpty()) {
 
             boolean foundAdminType = false;
+            boolean targeted = true;
+            final Set<Long> userIds = new HashSet<Long>();
+            final Set<Long> groupIds = new HashSet<Long>();
+            final Map<Long, Long> memberships = cd.getMembershipChanges();
             final Multimap<String, EventLog> map = ArrayListMultimap.create();
 
             for (EventLog el : getLogs()) {
                 String t = el.getEntityType();
-                if (Experimenter.class.getName().equals(t)
-                        || ExperimenterGroup.class.getName().equals(t)
-                        || GroupExperimenterMap.class.getName().equals(t)) {
+                if (Experimenter.class.getName().equals(t)) {
                     foundAdminType = true;
+                    userIds.add(el.getEntityId());
+                } else if (ExperimenterGroup.class.getName().equals(t)) {
+                    foundAdminType = true;
+                    groupIds.add(el.getEntityId());
+                } else if (GroupExperimenterMap.class.getName().equals(t)) {
+                    foundAdminType = true;
+                    Long userId = memberships.get(el.getEntityId());
+                    if (userId == null) {
+                        // Logged without the entity, e.g. via EventLogMessage
+                        targeted = false;
+                    } else {
+                        userIds.add(userId);
+                    }
                 }
                 map.put(t, el);
             }
@@ -542,7 +558,9 @@ public class BasicSecuritySystem implements SecuritySystem,
             } else {
                 // publish message if administrative type is modified
                 if (foundAdminType) {
-                    this.ctx.publishEvent(new UserGroupUpdateEvent(this));
+                    this.ctx.publishEvent(targeted ?
+                            new UserGroupUpdateEvent(this, userIds, groupIds) :
+                            new UserGroupUpdateEvent(this));
                 }
                 this.ctx.publishEvent(new EventLogsMessage(this, map));
             }
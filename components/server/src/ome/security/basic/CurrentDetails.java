@@ -9,6 +9,7 @@ package ome.security.basic;
 import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
@@ -415,8 +416,36 @@ public class CurrentDetails implements PrincipalHolder {
         return logs == null ? new ArrayList<EventLog>() : logs;
     }
 
+    /**
+     * Records the experimenter whose group membership is modified by the
+     * logged {@link GroupExperimenterMap} so that only the sessions of that
+     * experimenter need to be reloaded.
+     *
+     * @param mapId the id of the {@link GroupExperimenterMap}
+     * @param experimenterId the id of its child
+     */
+    public void addMembershipChange(Long mapId, Long experimenterId) {
+        BasicEventContext c = current();
+        Map<Long, Long> changes = c.getMembershipChanges();
+        if (changes == null) {
+            changes = new HashMap<Long, Long>();
+            c.setMembershipChanges(changes);
+        }
+        changes.put(mapId, experimenterId);
+    }
+
+    /**
+     * Returns the experimenters recorded by
+     * {@link #addMembershipChange(Long, Long)} by map id.
+     */
+    public Map<Long, Long> getMembershipChanges() {
+        Map<Long, Long> changes = current().getMembershipChanges();
+        return changes == null ? Collections.<Long, Long>emptyMap() : changes;
+    }
+
     public void clearLogs() {
         current().setLogs(null);
+        current().setMembershipChanges(null);
     }
 
     /**
@@ -11,6 +11,7 @@ package ome.security.basic;
 
 // Third-party imports
 import ome.model.IObject;
+import ome.model.meta.GroupExperimenterMap;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -69,6 +70,12 @@ public class EventLogListener implements PostUpdateEventListener,
             Class klass = entity.getClass();
             Long id = ((IObject) entity).getId();
             cd.addLog(action, klass, id);
+            if (entity instanceof GroupExperimenterMap) {
+                IObject child = ((GroupExperimenterMap) entity).getChild();
+                if (child != null && child.getId() != null) {
+                    cd.addMembershipChange(id, child.getId());
+                }
+            }
         }
     }
 
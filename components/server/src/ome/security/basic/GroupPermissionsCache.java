@@ -0,0 +1,207 @@
+/*
+ * Copyright (C) 2018 University of Dundee & Open Microscopy Environment.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package ome.security.basic;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+import ome.model.internal.Permissions;
+import ome.model.meta.ExperimenterGroup;
+import ome.services.messages.EventLogMessage;
+import ome.system.metrics.Counter;
+import ome.system.metrics.Metrics;
+import ome.system.metrics.NullMetrics;
+import ome.util.SqlAction;
+import ome.util.Utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.ApplicationListener;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * Server-wide cache of the permissions of the groups, used when checking
+ * whether objects loaded across all groups (<code>omero.group=-1</code>) may
+ * be read. The permissions are held in an immutable snapshot which is read
+ * without locking and replaced as a whole when the permissions of a group
+ * are missing or have changed.
+ * <p>
+ * The snapshot is discarded on each <code>CHMOD</code> {@link EventLogMessage}
+ * published for groups, and again once the transaction changing the
+ * permissions completes. Each snapshot has a version so that permissions
+ * read from the database before a change are not cached after it.
+ * </p>
+ *
+ * @since 5.5.0
+ */
+public class GroupPermissionsCache implements
+        ApplicationListener<EventLogMessage> {
+
+    private static final Logger log = LoggerFactory.getLogger(GroupPermissionsCache.class);
+
+    /**
+     * The permissions of the groups known at a given version.
+     */
+    private static class Snapshot {
+
+        final long version;
+
+        final Map<Long, Permissions> permissions;
+
+        Snapshot(long version, Map<Long, Permissions> permissions) {
+            this.version = version;
+            this.permissions = permissions;
+        }
+    }
+
+    private final SqlAction sql;
+
+    private final AtomicReference<Snapshot> snapshot =
+            new AtomicReference<Snapshot>(new Snapshot(0,
+                    ImmutableMap.<Long, Permissions>of()));
+
+    private final Counter hits;
+
+    private final Counter misses;
+
+    /**
+     * Creates a new cache without metrics.
+     *
+     * @param sql Used to read the permissions of the groups missing from
+     *            the cache.
+     */
+    public GroupPermissionsCache(SqlAction sql) {
+        this(sql, new NullMetrics());
+    }
+
+    /**
+     * Creates a new cache.
+     *
+     * @param sql Used to read the permissions of the groups missing from
+     *            the cache.
+     * @param metrics Used to count the hits and misses.
+     */
+    public GroupPermissionsCache(SqlAction sql, Metrics metrics) {
+        this.sql = sql;
+        hits = metrics.counter(this, "hits");
+        misses = metrics.counter(this, "misses");
+    }
+
+    /**
+     * Returns the permissions of the given group, reading them from the
+     * database if they are not cached. The returned instance is shared and
+     * must not be modified.
+     *
+     * @param groupId The id of the group.
+     * @return See above.
+     */
+    public Permissions getPermissions(long groupId) {
+        final Snapshot current = snapshot.get();
+        Permissions p = current.permissions.get(groupId);
+        if (p != null) {
+            hits.inc();
+            return p;
+        }
+        misses.inc();
+        p = Utils.toPermissions(sql.getGroupPermissions(groupId));
+        put(current.version, groupId, p);
+        return p;
+    }
+
+    /**
+     * Adds the permissions of a group to the snapshot of the given version.
+     * Nothing is cached if the snapshot has been discarded meanwhile since
+     * the permissions may have been read before they were changed.
+     */
+    private void put(long version, long groupId, Permissions p) {
+        while (true) {
+            final Snapshot current = snapshot.get();
+            if (current.version != version
+                    || current.permissions.containsKey(groupId)) {
+                return;
+            }
+            final Map<Long, Permissions> permissions =
+                    ImmutableMap.<Long, Permissions>builder()
+                    .putAll(current.permissions).put(groupId, p).build();
+            if (snapshot.compareAndSet(current,
+                    new Snapshot(version, permissions))) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Discards the cached permissions of all the groups.
+     */
+    public void invalidate() {
+        while (true) {
+            final Snapshot current = snapshot.get();
+            if (snapshot.compareAndSet(current, new Snapshot(
+                    current.version + 1, ImmutableMap.<Long, Permissions>of()))) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Returns the number of lookups answered from the cache.
+     *
+     * @return See above.
+     */
+    public long getHits() {
+        return hits.getCount();
+    }
+
+    /**
+     * Returns the number of lookups which read the database.
+     *
+     * @return See above.
+     */
+    public long getMisses() {
+        return misses.getCount();
+    }
+
+    /**
+     * Discards the cached permissions when those of a group are changed,
+     * now and once the transaction changing them completes.
+     */
+    public void onApplicationEvent(EventLogMessage elm) {
+        if (elm == null || elm.action == null
+                || !ExperimenterGroup.class.equals(elm.entityType)
+                || !elm.action.startsWith("CHMOD")) {
+            return;
+        }
+        log.debug("Discarding cached group permissions on {}", elm.action);
+        invalidate();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(
+                    new TransactionSynchronizationAdapter() {
+                        @Override
+                        public void afterCompletion(int status) {
+                            invalidate();
+                        }
+                    });
+        }
+    }
+
+}
@@ -43,6 +43,7 @@ import ome.model.core.OriginalFile;
 import ome.model.enums.ChecksumAlgorithm;
 import ome.security.policy.BinaryAccessPolicy;
 import ome.util.ShallowCopy;
+import ome.util.checksum.ChecksumProvider;
 import ome.util.checksum.ChecksumProviderFactory;
 import ome.util.checksum.ChecksumType;
 
@@ -116,6 +117,25 @@ public class RawFileBean extends AbstractStatefulBean implements RawFileStore {
     /** is file service checking for disk overflow */
     private transient boolean diskSpaceChecking;
 
+    /**
+     * Checksum of the bytes written so far, if they were all written
+     * sequentially from the start of the file. <code>null</code> if there
+     * is no such checksum.
+     */
+    private transient ChecksumProvider runningChecksum;
+
+    /** The type of {@link #runningChecksum}. */
+    private transient ChecksumType runningChecksumType;
+
+    /** The number of bytes added to {@link #runningChecksum}. */
+    private transient long runningChecksumLength;
+
+    /**
+     * If the bytes have not been written sequentially from the start of the
+     * file so that the checksum must be calculated from the file on save.
+     */
+    private transient boolean runningChecksumInvalid;
+
     /**
      * default constructor
      */
@@ -234,14 +254,24 @@ public class RawFileBean extends AbstractStatefulBean implements RawFileStore {
 
             StopWatch checksum = new Slf4JStopWatch();
             try {
+                File f = new File(path);
+                long size = f.length();
                 if (file.getHasher() != null) {
                     final ChecksumType checksumType = checksumAlgorithms.get(file.getHasher().getValue());
-                    file.setHash(this.checksumProviderFactory
-                            .getProvider(checksumType).putFile(path).checksumAsString());
+                    if (runningChecksum != null
+                            && runningChecksumType == checksumType
+                            && runningChecksumLength == size) {
+                        file.setHash(runningChecksum.checksumAsString());
+                    } else {
+                        file.setHash(this.checksumProviderFactory
+                                .getProvider(checksumType).putFile(path).checksumAsString());
+                    }
                 }
+                // The provider cannot be updated once its checksum has
+                // been calculated so that any further write is hashed by
+                // reading the file back on the next save.
+                invalidateRunningChecksum();
 
-                File f = new File(path);
-                long size = f.length();
                 file.setSize(size);
                 file.setMtime(new java.sql.Timestamp(f.lastModified()));
 
@@ -352,6 +382,7 @@ public class RawFileBean extends AbstractStatefulBean implements RawFileStore {
             this.buffer = null;
 
             modified = false;
+            resetRunningChecksum();
             file = iQuery.get(OriginalFile.class, fileId);
 
             String mode = "r";
@@ -437,12 +468,13 @@ public class RawFileBean extends AbstractStatefulBean implements RawFileStore {
     }
 
     @RolesAllowed("user")
-    public boolean truncate(long length) {
+    public synchronized boolean truncate(long length) {
         errorIfNotLoaded();
 
         try {
             if (length < buffer.size()) {
                 buffer.truncate(length);
+                invalidateRunningChecksum();
                 modified();
                 return true;
             }
@@ -473,7 +505,7 @@ public class RawFileBean extends AbstractStatefulBean implements RawFileStore {
     }
 
     @RolesAllowed("user")
-    public void write(byte[] buf, long position, int length) {
+    public synchronized void write(byte[] buf, long position, int length) {
         errorIfNotLoaded();
         ByteBuffer nioBuffer = MappedByteBuffer.wrap(buf);
         nioBuffer.limit(length);
@@ -482,12 +514,14 @@ public class RawFileBean extends AbstractStatefulBean implements RawFileStore {
             iRepositoryInfo.sanityCheckRepository();
         }
 
+        final long start = position;
         try {
             do {
                 position += buffer.write(nioBuffer, position);
             } while (nioBuffer.hasRemaining());
             // Write was successful, update state.
             modified();
+            updateRunningChecksum(buf, start, length);
         } catch (NonWritableChannelException nwce) {
             throw new SecurityViolation("File not writeable!");
         } catch (IOException e) {
@@ -498,6 +532,54 @@ public class RawFileBean extends AbstractStatefulBean implements RawFileStore {
         }
     }
 
+    /**
+     * Adds the written bytes to the running checksum if they directly follow
+     * the bytes already added, otherwise invalidates the running checksum.
+     * @param buf the written bytes
+     * @param position the position in the file at which they were written
+     * @param length the number of bytes written
+     */
+    private synchronized void updateRunningChecksum(byte[] buf, long position, int length) {
+        if (runningChecksumInvalid || length == 0) {
+            return;
+        }
+        if (position != runningChecksumLength) {
+            invalidateRunningChecksum();
+            return;
+        }
+        if (runningChecksum == null) {
+            if (file == null || file.getHasher() == null) {
+                invalidateRunningChecksum();
+                return;
+            }
+            runningChecksumType =
+                    checksumAlgorithms.get(file.getHasher().getValue());
+            runningChecksum =
+                    checksumProviderFactory.getProvider(runningChecksumType);
+        }
+        runningChecksum.putBytes(buf, 0, length);
+        runningChecksumLength += length;
+    }
+
+    /**
+     * Discards the running checksum until another file is loaded.
+     */
+    private synchronized void invalidateRunningChecksum() {
+        runningChecksum = null;
+        runningChecksumType = null;
+        runningChecksumInvalid = true;
+    }
+
+    /**
+     * Prepares a new running checksum for the file being loaded.
+     */
+    private synchronized void resetRunningChecksum() {
+        runningChecksum = null;
+        runningChecksumType = null;
+        runningChecksumLength = 0;
+        runningChecksumInvalid = false;
+    }
+
     /**
      * getter disk overflow checking
      * @return See above.
@@ -13,6 +13,7 @@ import java.io.IOException;
 import java.nio.BufferOverflowException;
 import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -29,6 +30,8 @@ import ome.conditions.RootException;
 import ome.conditions.ValidationException;
 import ome.io.nio.DimensionsOutOfBoundsException;
 import ome.io.nio.PixelBuffer;
+import ome.io.nio.PixelDataHistogram;
+import ome.io.nio.PixelsHistogramFile;
 import ome.io.nio.PixelsService;
 import ome.io.nio.RomioPixelBuffer;
 import ome.model.core.Channel;
@@ -37,6 +40,8 @@ import ome.parameters.Parameters;
 import ome.util.PixelData;
 import ome.util.ShallowCopy;
 import ome.util.SqlAction;
+import omeis.providers.re.RenderingScheduler;
+import omeis.providers.re.RenderingTask;
 import omeis.providers.re.data.PlaneDef;
 import omeis.providers.re.metadata.StatsFactory;
 
@@ -67,6 +72,9 @@ public class RawPixelsBean extends AbstractStatefulBean implements
 
     /** The default bin size used for histograms */
     private static final int DEFAULT_HISTOGRAM_BINSIZE = 256;
+
+    /** The minimum number of rows binned by each thread. */
+    private static final int HISTOGRAM_MIN_ROWS = 64;
     
     private Long id;
 
@@ -98,6 +106,9 @@ public class RawPixelsBean extends AbstractStatefulBean implements
     /** The server's OMERO data directory. */
     private transient String omeroDataDir;
 
+    /** Computes the histograms in parallel. */
+    private transient RenderingScheduler renderingScheduler;
+
     /**
      * default constructor
      */
@@ -149,6 +160,18 @@ public class RawPixelsBean extends AbstractStatefulBean implements
         this.sql = sql;
     }
 
+    /**
+     * Rendering scheduler Bean injector.
+     * @param renderingScheduler the scheduler used to compute the histograms
+     * in parallel
+     */
+    public synchronized final void setRenderingScheduler(
+            RenderingScheduler renderingScheduler) {
+        getBeanHelper().throwIfAlreadySet(this.renderingScheduler,
+                renderingScheduler);
+        this.renderingScheduler = renderingScheduler;
+    }
+
     // ~ Lifecycle methods
     // =========================================================================
 
@@ -682,14 +705,12 @@ public class RawPixelsBean extends AbstractStatefulBean implements
             int binCount, boolean globalRange, PlaneDef plane) {
         errorIfNotLoaded();
 
-        if (requiresPixelsPyramid())
-            throw new ApiUsageException(
-                    "This method can not handle tiled images yet.");
-
         if (binCount <= 0)
             binCount = DEFAULT_HISTOGRAM_BINSIZE;
 
+        // For pyramids, the size of the current resolution level.
         int imgWidth = buffer.getSizeX();
+        int imgHeight = buffer.getSizeY();
 
         int z = (plane != null && plane.getZ() >= 0) ? plane.getZ() : 0;
         int t = (plane != null && plane.getT() >= 0) ? plane.getT() : 0;
@@ -702,38 +723,39 @@ public class RawPixelsBean extends AbstractStatefulBean implements
                 : imgWidth;
         int h = (plane != null && plane.getRegion() != null && plane
                 .getRegion().getHeight() > 0) ? plane.getRegion().getHeight()
-                : buffer.getSizeY();
+                : imgHeight;
+
+        // Only the pixels within the image are counted.
+        w = Math.max(0, Math.min(x + w, imgWidth) - x);
+        h = Math.max(0, Math.min(y + h, imgHeight) - y);
 
         Map<Integer, int[]> result = new HashMap<Integer, int[]>();
 
+        // The histograms of whole planes at full resolution may have been
+        // computed with the pyramid or the statistics.
+        boolean wholePlane = x == 0 && y == 0 && w == imgWidth
+                && h == imgHeight && buffer.getResolutionLevel()
+                == buffer.getResolutionLevels() - 1;
+
         try {
+            boolean tiled = requiresPixelsPyramid();
             for (int ch : channels) {
                 Channel channel = pixelsInstance.getChannel(ch);
                 if (channel == null)
                     continue;
-                PixelData px = buffer.getPlane(z, ch, t);
                 int[] data = new int[binCount];
-
-                double[] minmax = determineHistogramMinMax(px, channel,
-                        globalRange);
-                double min = minmax[0];
-                double max = minmax[1];
-
-                double range = max - min + 1;
-                double binRange = range / binCount;
-                for (int i = 0; i < px.size(); i++) {
-                    int pxx = i % imgWidth;
-                    int pxy = i / imgWidth;
-                    if (pxx >= x && pxx < (x + w) && pxy >= y && pxy < (y + h)) {
-                        int bin = (int) ((px.getPixelValue(i) - min) / binRange);
-                        // if there are more bins than values (binRange < 1) the bin will be offset by -1.
-                        // e.g. min=0.0, max=127.0, binCount=256: a pixel with max value 127.0 would go
-                        // into bin 254 (expected: 255). Therefore increment by one for these cases.
-                        if (bin > 0 && binRange < 1)
-                            bin++;
-
-                        if (bin >= 0 && bin < binCount)
-                            data[bin]++;
+                int[] counts = wholePlane ?
+                        dataService.getPlaneHistogram(pixelsInstance, z, ch, t)
+                        : null;
+                if (counts != null) {
+                    countHistogram(counts, channel, globalRange, data);
+                } else if (w > 0 && h > 0) {
+                    if (tiled) {
+                        tileHistogram(z, ch, t, x, y, w, h, channel,
+                                globalRange, data);
+                    } else {
+                        planeHistogram(z, ch, t, x, y, w, h, channel,
+                                globalRange, data);
                     }
                 }
                 result.put(ch, data);
@@ -788,31 +810,242 @@ public class RawPixelsBean extends AbstractStatefulBean implements
      */
     private double[] determineHistogramMinMax(PixelData px, Channel channel,
             boolean useGlobal) {
-        double min, max;
+        double[] minmax = determineGlobalMinMax(channel, useGlobal);
+        if (minmax != null)
+            return minmax;
+
+        minmax = initMinMax(channel);
+        merge(minmax, PixelDataHistogram.minMax(px, px.size(), 0, 0,
+                px.size(), 1));
+        return minmax;
+    }
 
+    /**
+     * Returns the global minimum and maximum of the channel if useGlobal is
+     * <code>true</code> and the channel has stats calculated, otherwise
+     * <code>null</code>.
+     */
+    private double[] determineGlobalMinMax(Channel channel, boolean useGlobal) {
         if (useGlobal && channel != null && channel.getStatsInfo() != null) {
-            min = channel.getStatsInfo().getGlobalMin();
-            max = channel.getStatsInfo().getGlobalMax();
+            double min = channel.getStatsInfo().getGlobalMin();
+            double max = channel.getStatsInfo().getGlobalMax();
             // if max == 1.0 the global min/max probably has not been
             // calculated; fall back to plane min/max
             if (max != 1.0)
                 return new double[] { min, max };
         }
+        return null;
+    }
 
+    /**
+     * Returns the maximum and minimum values of the pixels type, which are
+     * returned if no pixels are found.
+     */
+    private double[] initMinMax(Channel channel) {
         StatsFactory sf = new StatsFactory();
         double[] pixelMinMax = sf.initPixelsRange(channel.getPixels());
+        return new double[] { pixelMinMax[1], pixelMinMax[0] };
+    }
 
-        min = pixelMinMax[1];
-        max = pixelMinMax[0];
+    private static void merge(double[] minmax, double[] other) {
+        minmax[0] = Math.min(minmax[0], other[0]);
+        minmax[1] = Math.max(minmax[1], other[1]);
+    }
 
-        for (int i = 0; i < px.size(); i++) {
-            min = Math.min(min, px.getPixelValue(i));
-            max = Math.max(max, px.getPixelValue(i));
+    /**
+     * Computes the histogram of a whole plane from the number of pixels of
+     * each value.
+     */
+    private void countHistogram(int[] counts, Channel channel,
+            boolean globalRange, int[] data) {
+        double offset = PixelsHistogramFile.getOffset(
+                pixelsInstance.getPixelsType().getValue());
+        double[] minmax = determineGlobalMinMax(channel, globalRange);
+        if (minmax == null) {
+            minmax = initMinMax(channel);
+            merge(minmax, PixelDataHistogram.minMax(counts, offset));
         }
+        double binRange = (minmax[1] - minmax[0] + 1) / data.length;
+        PixelDataHistogram.fill(counts, offset, minmax[0], binRange, data);
+    }
 
-        return new double[] { min, max };
+    /**
+     * Computes the histogram of a region of a plane which is read at once.
+     * The range is the one of the whole plane unless the global range is
+     * used. The rows of the region are binned in parallel.
+     */
+    private void planeHistogram(int z, int c, int t, int x, int y, int w,
+            int h, Channel channel, boolean globalRange, int[] data)
+            throws Exception {
+        PixelData px = buffer.getPlane(z, c, t);
+        double[] minmax = determineHistogramMinMax(px, channel, globalRange);
+        int n = Math.max(1, Math.min(getScheduler().getThreadCount(),
+                h / HISTOGRAM_MIN_ROWS));
+        int rows = (h + n - 1) / n;
+        List<HistogramTask> tasks = new ArrayList<HistogramTask>(n);
+        for (int row = y; row < y + h; row += rows) {
+            tasks.add(new HistogramTask(px, buffer.getSizeX(), x, row, w,
+                    Math.min(rows, y + h - row), minmax, data.length));
+        }
+        histogram(tasks, data);
     }
-    
+
+    /**
+     * Computes the histogram of a region of a pyramid at the current
+     * resolution level. Only the tiles intersecting the region are read. The
+     * range is the one of the region unless the global range is used, in
+     * which case each tile is read only once. The tiles are read in batches
+     * of as many tiles as there are rendering threads and binned in
+     * parallel.
+     */
+    private void tileHistogram(int z, int c, int t, int x, int y, int w,
+            int h, Channel channel, boolean globalRange, int[] data)
+            throws Exception {
+        Dimension tileSize = buffer.getTileSize();
+        int tileWidth = (int) tileSize.getWidth();
+        int tileHeight = (int) tileSize.getHeight();
+        int batchSize = getScheduler().getThreadCount();
+
+        // The tiles intersecting the region: {x, y, w, h} in the image.
+        List<int[]> tiles = new ArrayList<int[]>();
+        for (int ty = (y / tileHeight) * tileHeight; ty < y + h;
+                ty += tileHeight) {
+            for (int tx = (x / tileWidth) * tileWidth; tx < x + w;
+                    tx += tileWidth) {
+                tiles.add(new int[] { tx, ty,
+                        Math.min(tileWidth, buffer.getSizeX() - tx),
+                        Math.min(tileHeight, buffer.getSizeY() - ty) });
+            }
+        }
+
+        double[] minmax = determineGlobalMinMax(channel, globalRange);
+        if (minmax == null) {
+            minmax = initMinMax(channel);
+            for (int i = 0; i < tiles.size(); i += batchSize) {
+                List<MinMaxTask> tasks = new ArrayList<MinMaxTask>();
+                for (int[] tile : tiles.subList(i,
+                        Math.min(tiles.size(), i + batchSize))) {
+                    tasks.add(new MinMaxTask(
+                            readTile(z, c, t, tile), tile, x, y, w, h));
+                }
+                getScheduler().execute(
+                        tasks.toArray(new RenderingTask[tasks.size()]));
+                for (MinMaxTask task : tasks) {
+                    merge(minmax, task.minmax);
+                }
+            }
+        }
+
+        for (int i = 0; i < tiles.size(); i += batchSize) {
+            List<HistogramTask> tasks = new ArrayList<HistogramTask>();
+            for (int[] tile : tiles.subList(i,
+                    Math.min(tiles.size(), i + batchSize))) {
+                int[] r = intersection(tile, x, y, w, h);
+                tasks.add(new HistogramTask(readTile(z, c, t, tile), tile[2],
+                        r[0], r[1], r[2], r[3], minmax, data.length));
+            }
+            histogram(tasks, data);
+        }
+    }
+
+    private PixelData readTile(int z, int c, int t, int[] tile)
+            throws IOException {
+        return buffer.getTile(z, c, t, tile[0], tile[1], tile[2], tile[3]);
+    }
+
+    /**
+     * Returns the intersection of the region with the tile, relative to the
+     * tile.
+     */
+    private static int[] intersection(int[] tile, int x, int y, int w, int h) {
+        int x0 = Math.max(x, tile[0]);
+        int y0 = Math.max(y, tile[1]);
+        int x1 = Math.min(x + w, tile[0] + tile[2]);
+        int y1 = Math.min(y + h, tile[1] + tile[3]);
+        return new int[] { x0 - tile[0], y0 - tile[1], x1 - x0, y1 - y0 };
+    }
+
+    /**
+     * Runs the given tasks and adds their histograms to data.
+     */
+    private void histogram(List<HistogramTask> tasks, int[] data)
+            throws Exception {
+        getScheduler().execute(tasks.toArray(new RenderingTask[tasks.size()]));
+        for (HistogramTask task : tasks) {
+            PixelDataHistogram.merge(task.bins, data);
+        }
+    }
+
+    private RenderingScheduler getScheduler() {
+        return renderingScheduler == null ?
+                RenderingScheduler.getDefault() : renderingScheduler;
+    }
+
+    /**
+     * Computes the minimum and maximum of the part of a tile within the
+     * region.
+     */
+    private static class MinMaxTask implements RenderingTask {
+
+        private final PixelData px;
+
+        private final int[] tile;
+
+        private final int x, y, w, h;
+
+        double[] minmax;
+
+        MinMaxTask(PixelData px, int[] tile, int x, int y, int w, int h) {
+            this.px = px;
+            this.tile = tile;
+            this.x = x;
+            this.y = y;
+            this.w = w;
+            this.h = h;
+        }
+
+        public Object call() {
+            int[] r = intersection(tile, x, y, w, h);
+            minmax = PixelDataHistogram.minMax(px, tile[2], r[0], r[1], r[2],
+                    r[3]);
+            return null;
+        }
+    }
+
+    /**
+     * Computes the histogram of a region of a block of pixels in its own
+     * bins.
+     */
+    private static class HistogramTask implements RenderingTask {
+
+        private final PixelData px;
+
+        private final int width, x, y, w, h;
+
+        private final double min, binRange;
+
+        final int[] bins;
+
+        HistogramTask(PixelData px, int width, int x, int y, int w, int h,
+                double[] minmax, int binCount) {
+            this.px = px;
+            this.width = width;
+            this.x = x;
+            this.y = y;
+            this.w = w;
+            this.h = h;
+            this.min = minmax[0];
+            this.binRange = (minmax[1] - minmax[0] + 1) / binCount;
+            this.bins = new int[binCount];
+        }
+
+        public Object call() {
+            PixelDataHistogram.fill(px, width, x, y, w, h, min, binRange,
+                    bins);
+            return null;
+        }
+    }
+
     private synchronized byte[] bufferAsByteArrayWithExceptionIfNull(ByteBuffer buffer) {
         byte[] b = new byte[buffer.capacity()];
         buffer.get(b, 0, buffer.capacity());
@@ -0,0 +1,333 @@
+/*
+ * Copyright (C) 2018 University of Dundee & Open Microscopy Environment.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package ome.services;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Iterator;
+import java.util.List;
+
+import ome.io.nio.PixelsService;
+import ome.model.display.ChannelBinding;
+import ome.model.display.QuantumDef;
+import ome.model.display.RenderingDef;
+import ome.system.metrics.Counter;
+import ome.system.metrics.Metrics;
+import ome.system.metrics.NullMetrics;
+import omeis.providers.re.Renderer;
+import omeis.providers.re.codomain.CodomainChain;
+import omeis.providers.re.codomain.CodomainMapContext;
+import omeis.providers.re.codomain.ReverseIntensityContext;
+import omeis.providers.re.data.PlaneDef;
+import omeis.providers.re.data.RegionDef;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.Weigher;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+/**
+ * In-memory cache of the compressed images returned by
+ * {@link RenderingBean#renderCompressed(PlaneDef)} shared by all the rendering
+ * engines. The entries are keyed by the pixels set, the resolution level, the
+ * plane and region requested and a digest of the rendering settings and
+ * compression level used, so that engines rendering the same pixels set with
+ * the same settings share the entries. The digest also covers the
+ * modification time and size of the pixels and pyramid files of the set, so
+ * that images rendered before the pixels are written or the pyramid is
+ * regenerated, possibly by another process, are no longer returned
+ * afterwards. The least recently used entries are
+ * evicted once the total size of the images exceeds the configured maximum.
+ *
+ * @since 5.5.0
+ */
+public class RenderedTileCache {
+
+    private static final Logger log = LoggerFactory.getLogger(RenderedTileCache.class);
+
+    /** The cached images, <code>null</code> if the cache is disabled. */
+    private final Cache<Key, byte[]> tiles;
+
+    private final Counter hits;
+
+    private final Counter misses;
+
+    /** Locates the pixels files, <code>null</code> if not versioned. */
+    private final PixelsService pixelsService;
+
+    /**
+     * Creates a disabled cache.
+     */
+    public RenderedTileCache() {
+        this(new NullMetrics(), 0, null);
+    }
+
+    /**
+     * Creates a new cache.
+     *
+     * @param metrics Used to count the hits and misses.
+     * @param maxBytes The maximum total size of the cached images, 0 or lower
+     *                 disables the cache.
+     * @param pixelsService Locates the pixels and pyramid files whose
+     *                      modification times version the entries. If
+     *                      <code>null</code>, the entries are not versioned.
+     */
+    public RenderedTileCache(Metrics metrics, long maxBytes,
+            PixelsService pixelsService) {
+        this.pixelsService = pixelsService;
+        if (maxBytes > 0) {
+            tiles = CacheBuilder.newBuilder()
+                    .maximumWeight(maxBytes)
+                    .weigher(new Weigher<Key, byte[]>() {
+                        public int weigh(Key key, byte[] value) {
+                            return value.length;
+                        }
+                    })
+                    .build();
+        } else {
+            tiles = null;
+        }
+        hits = metrics.counter(this, "hits");
+        misses = metrics.counter(this, "misses");
+        log.info("RenderedTileCache(maxBytes={})", maxBytes);
+    }
+
+    /**
+     * Returns whether the images are cached.
+     *
+     * @return See above.
+     */
+    public boolean isEnabled() {
+        return tiles != null;
+    }
+
+    /**
+     * Returns the key of the image rendered by the given renderer for the
+     * given plane or <code>null</code> if the image cannot be cached, for
+     * instance because shapes are rendered over it.
+     *
+     * @param renderer The renderer, its settings must not be modified during
+     *                 the call.
+     * @param pd The plane and region to render.
+     * @param compressionLevel The compression level of the image.
+     * @return See above.
+     */
+    public Key key(Renderer renderer, PlaneDef pd, float compressionLevel) {
+        if (!isEnabled()) {
+            return null;
+        }
+        List<Long> shapeIds = pd.getShapeIds();
+        if (shapeIds != null && !shapeIds.isEmpty()) {
+            return null;
+        }
+        if (renderer.getOverlays() != null
+                && !renderer.getOverlays().isEmpty()) {
+            return null;
+        }
+        RenderingDef def = renderer.getRenderingDef();
+        Long pixelsId = renderer.getMetadata().getId();
+        if (def == null || pixelsId == null) {
+            return null;
+        }
+
+        Hasher hasher = Hashing.murmur3_128().newHasher();
+        if (pixelsService != null) {
+            String path = pixelsService.getPixelsPath(pixelsId);
+            if (!putVersion(hasher, path)
+                    || !putVersion(hasher, path + PixelsService.PYRAMID_SUFFIX)) {
+                return null;
+            }
+        }
+        hasher.putInt(renderer.getResolutionLevel());
+        hasher.putInt(pd.getSlice());
+        hasher.putInt(pd.getZ());
+        hasher.putInt(pd.getT());
+        hasher.putInt(pd.getX());
+        hasher.putInt(pd.getY());
+        hasher.putInt(pd.getStride());
+        RegionDef region = pd.getRegion();
+        if (region != null) {
+            hasher.putInt(region.getX());
+            hasher.putInt(region.getY());
+            hasher.putInt(region.getWidth());
+            hasher.putInt(region.getHeight());
+        }
+        hasher.putFloat(compressionLevel);
+        putString(hasher, def.getModel() == null ?
+                null : def.getModel().getValue());
+        QuantumDef qd = def.getQuantization();
+        hasher.putInt(qd.getBitResolution());
+        hasher.putInt(qd.getCdStart());
+        hasher.putInt(qd.getCdEnd());
+        ChannelBinding[] bindings = renderer.getChannelBindings();
+        for (int w = 0; w < bindings.length; w++) {
+            ChannelBinding cb = bindings[w];
+            hasher.putBoolean(Boolean.TRUE.equals(cb.getActive()));
+            if (!Boolean.TRUE.equals(cb.getActive())) {
+                continue;
+            }
+            hasher.putDouble(cb.getInputStart());
+            hasher.putDouble(cb.getInputEnd());
+            putString(hasher, cb.getFamily().getValue());
+            hasher.putDouble(cb.getCoefficient());
+            hasher.putBoolean(Boolean.TRUE.equals(cb.getNoiseReduction()));
+            hasher.putInt(cb.getRed());
+            hasher.putInt(cb.getGreen());
+            hasher.putInt(cb.getBlue());
+            hasher.putInt(cb.getAlpha());
+            putString(hasher, cb.getLookupTable());
+            CodomainChain chain = renderer.getCodomainChain(w);
+            if (chain != null) {
+                Iterator<CodomainMapContext> i =
+                        chain.getContexts().iterator();
+                while (i.hasNext()) {
+                    CodomainMapContext ctx = i.next();
+                    if (!(ctx instanceof ReverseIntensityContext)) {
+                        // The other maps have parameters we do not track.
+                        return null;
+                    }
+                    putString(hasher, ctx.getClass().getName());
+                }
+            }
+        }
+        return new Key(pixelsId, hasher.hash());
+    }
+
+    /**
+     * Adds the modification time and size of the given file to the digest.
+     *
+     * @return <code>false</code> if the attributes of the file could not be
+     *         read, so that the image must not be cached.
+     */
+    private static boolean putVersion(Hasher hasher, String path) {
+        try {
+            BasicFileAttributes attrs = Files.readAttributes(Paths.get(path),
+                    BasicFileAttributes.class);
+            hasher.putLong(attrs.lastModifiedTime().toMillis());
+            hasher.putLong(attrs.size());
+        } catch (NoSuchFileException e) {
+            hasher.putLong(-1);
+        } catch (IOException e) {
+            log.debug("Cannot read the attributes of " + path, e);
+            return false;
+        }
+        return true;
+    }
+
+    private static void putString(Hasher hasher, String value) {
+        if (value == null) {
+            hasher.putInt(-1);
+        } else {
+            hasher.putInt(value.length());
+            hasher.putUnencodedChars(value);
+        }
+    }
+
+    /**
+     * Returns the cached image or <code>null</code> if not cached.
+     *
+     * @param key The key returned by
+     *            {@link #key(Renderer, PlaneDef, float)}, may be
+     *            <code>null</code>.
+     * @return See above.
+     */
+    public byte[] get(Key key) {
+        if (key == null) {
+            return null;
+        }
+        byte[] tile = tiles.getIfPresent(key);
+        if (tile == null) {
+            misses.inc();
+        } else {
+            hits.inc();
+        }
+        return tile;
+    }
+
+    /**
+     * Caches the given image.
+     *
+     * @param key The key returned by
+     *            {@link #key(Renderer, PlaneDef, float)}, may be
+     *            <code>null</code>.
+     * @param tile The compressed image. The array must not be modified.
+     */
+    public void put(Key key, byte[] tile) {
+        if (key != null) {
+            tiles.put(key, tile);
+        }
+    }
+
+    /**
+     * Removes all the images of the given pixels set, for instance because
+     * its rendering settings have been saved.
+     *
+     * @param pixelsId The id of the pixels set.
+     */
+    public void invalidate(long pixelsId) {
+        if (!isEnabled()) {
+            return;
+        }
+        Iterator<Key> i = tiles.asMap().keySet().iterator();
+        while (i.hasNext()) {
+            if (i.next().pixelsId == pixelsId) {
+                i.remove();
+            }
+        }
+    }
+
+    /**
+     * Identifies a rendered image.
+     */
+    public static final class Key {
+
+        private final long pixelsId;
+
+        private final HashCode digest;
+
+        Key(long pixelsId, HashCode digest) {
+            this.pixelsId = pixelsId;
+            this.digest = digest;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return pixelsId == other.pixelsId && digest.equals(other.digest);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (int) (pixelsId ^ (pixelsId >>> 32))
+                    + digest.asInt();
+        }
+    }
+}
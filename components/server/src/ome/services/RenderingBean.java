@@ -51,6 +51,7 @@ import ome.util.ShallowCopy;
 import omeis.providers.re.RGBBuffer;
 import omeis.providers.re.Renderer;
 import omeis.providers.re.RenderingEngine;
+import omeis.providers.re.RenderingScheduler;
 import omeis.providers.re.codomain.CodomainChain;
 import omeis.providers.re.codomain.CodomainMapContext;
 import omeis.providers.re.codomain.ReverseIntensityContext;
@@ -155,6 +156,12 @@ public class RenderingBean implements RenderingEngine, Serializable {
     /** Reference to the helper used to retrieve luts.*/
     private final LutProvider lutProvider;
 
+    /** Reference to the scheduler shared by all renderers. */
+    private transient RenderingScheduler renderingScheduler;
+
+    /** Reference to the cache of compressed images shared by all engines. */
+    private transient RenderedTileCache renderedTileCache;
+
     /** Notification that the bean has just returned from passivation. */
     private transient boolean wasPassivated = false;
 
@@ -192,6 +199,26 @@ public class RenderingBean implements RenderingEngine, Serializable {
         this.lutProvider = lutProvider;
     }
 
+    /**
+     * Rendering scheduler Bean injector.
+     *
+     * @param renderingScheduler
+     *          The scheduler shared by all renderers.
+     */
+    public void setRenderingScheduler(RenderingScheduler renderingScheduler) {
+        this.renderingScheduler = renderingScheduler;
+    }
+
+    /**
+     * Rendered tile cache Bean injector.
+     *
+     * @param renderedTileCache
+     *          The cache of compressed images shared by all engines.
+     */
+    public void setRenderedTileCache(RenderedTileCache renderedTileCache) {
+        this.renderedTileCache = renderedTileCache;
+    }
+
     @RolesAllowed("user")
     public long getRenderingDefId() {
         if (rendDefObj == null || rendDefObj.getId() == null) {
@@ -417,6 +444,9 @@ public class RenderingBean implements RenderingEngine, Serializable {
             PixelBuffer buffer = getPixelBuffer();
             renderer = new Renderer(quantumFactory, renderingModels, pixelsObj,
                     rendDefObj, buffer, lutProvider);
+            if (renderingScheduler != null) {
+                renderer.setScheduler(renderingScheduler);
+            }
         } finally {
             rwl.writeLock().unlock();
         }
@@ -472,12 +502,8 @@ public class RenderingBean implements RenderingEngine, Serializable {
         rwl.readLock().lock();
 
         try {
-            final Map<byte[], Integer> overlays = getMasks(pd);
-            if (overlays.size() > 0) {
-                renderer.setOverlays(overlays);
-            }
             errorIfInvalidState();
-            return renderer.render(pd);
+            return newRenderContext(pd).render(pd);
         } catch (IOException e) {
             log.error("IO error while rendering.", e);
             throw new ResourceError(e.getMessage());
@@ -496,28 +522,30 @@ public class RenderingBean implements RenderingEngine, Serializable {
      */
     @RolesAllowed("user")
     public int[] renderAsPackedInt(PlaneDef pd) {
-        rwl.writeLock().lock();
+        rwl.readLock().lock();
 
         try {
-            final Map<byte[], Integer> overlays = getMasks(pd);
-            if (overlays.size() > 0) {
-                renderer.setOverlays(overlays);
-            }
             errorIfInvalidState();
+            return renderAsPackedInt(newRenderContext(pd), pd);
+        } finally {
+            rwl.readLock().unlock();
+        }
+    }
+
+    /**
+     * Renders the given plane with the renderer of a single rendering.
+     * Must be called while holding the read lock.
+     */
+    private int[] renderAsPackedInt(Renderer context, PlaneDef pd) {
+        try {
             checkPlaneDef(pd);
-            if (resolutionLevel != null)
-            {
-                renderer.setResolutionLevel(resolutionLevel);
-            }
-            return renderer.renderAsPackedInt(pd, null);
+            return context.renderAsPackedInt(pd, null);
         } catch (IOException e) {
             log.error("IO error while rendering.", e);
             throw new ResourceError(e.getMessage());
         } catch (QuantizationException e) {
             log.error("Quantization exception while rendering.", e);
             throw new InternalException(e.getMessage());
-        } finally {
-            rwl.writeLock().unlock();
         }
     }
 
@@ -528,18 +556,25 @@ public class RenderingBean implements RenderingEngine, Serializable {
      */
     @RolesAllowed("user")
     public byte[] renderCompressed(PlaneDef pd) {
-        rwl.writeLock().lock();
+        rwl.readLock().lock();
 
         ByteArrayOutputStream byteStream = null;
         try {
-            final Map<byte[], Integer> overlays = getMasks(pd);
-            if (overlays.size() > 0) {
-                renderer.setOverlays(overlays);
+            errorIfInvalidState();
+            final Renderer context = newRenderContext(pd);
+            RenderedTileCache.Key key = null;
+            if (renderedTileCache != null) {
+                key = renderedTileCache.key(context, pd,
+                        compressionSrv.getCompressionLevel());
+                byte[] tile = renderedTileCache.get(key);
+                if (tile != null) {
+                    return tile;
+                }
             }
             int stride = pd.getStride();
             if (stride < 0) stride = 0;
             stride++;
-            int[] buf = renderAsPackedInt(pd);
+            int[] buf = renderAsPackedInt(context, pd);
             int sizeX = pixelsObj.getSizeX();
             int sizeY = pixelsObj.getSizeY();
             RegionDef region = pd.getRegion();
@@ -553,12 +588,16 @@ public class RenderingBean implements RenderingEngine, Serializable {
                     sizeY);
             byteStream = new ByteArrayOutputStream();
             compressionSrv.compressToStream(image, byteStream);
-            return byteStream.toByteArray();
+            byte[] tile = byteStream.toByteArray();
+            if (key != null) {
+                renderedTileCache.put(key, tile);
+            }
+            return tile;
         } catch (IOException e) {
             log.error("Could not compress rendered image.", e);
             throw new ResourceError(e.getMessage());
         } finally {
-            rwl.writeLock().unlock();
+            rwl.readLock().unlock();
             try {
                 if (byteStream != null) {
                     byteStream.close();
@@ -578,14 +617,10 @@ public class RenderingBean implements RenderingEngine, Serializable {
     @RolesAllowed("user")
     public int[] renderProjectedAsPackedInt(int algorithm, int timepoint,
             int stepping, int start, int end) {
-        rwl.writeLock().lock();
+        rwl.readLock().lock();
 
         try {
             errorIfInvalidState();
-            if (resolutionLevel != null)
-            {
-                renderer.setResolutionLevel(resolutionLevel);
-            }
             ChannelBinding[] channelBindings = renderer.getChannelBindings();
             byte[][][][] planes = new byte[1][pixelsObj.getSizeC()][1][];
             long pixelsId = pixelsObj.getId();
@@ -611,7 +646,10 @@ public class RenderingBean implements RenderingEngine, Serializable {
                     projectedPixels, planes);
             PlaneDef pd = new PlaneDef(PlaneDef.XY, 0);
             pd.setZ(0);
-            return renderer.renderAsPackedInt(pd, projectedPlanes);
+            // The projection is rendered from the in memory planes so
+            // the resolution level does not apply.
+            return renderer.newRenderContext(null, null).renderAsPackedInt(pd,
+                    projectedPlanes);
         } catch (IOException e) {
             log.error("IO error while rendering.", e);
             throw new ResourceError(e.getMessage());
@@ -619,7 +657,7 @@ public class RenderingBean implements RenderingEngine, Serializable {
             log.error("Quantization exception while rendering.", e);
             throw new InternalException(e.getMessage());
         } finally {
-            rwl.writeLock().unlock();
+            rwl.readLock().unlock();
         }
     }
 
@@ -631,14 +669,10 @@ public class RenderingBean implements RenderingEngine, Serializable {
     @RolesAllowed("user")
     public byte[] renderProjectedCompressed(int algorithm, int timepoint,
             int stepping, int start, int end) {
-        rwl.writeLock().lock();
+        rwl.readLock().lock();
 
         ByteArrayOutputStream byteStream = null;
         try {
-            if (resolutionLevel != null)
-            {
-                renderer.setResolutionLevel(resolutionLevel);
-            }
             int[] buf = renderProjectedAsPackedInt(algorithm, timepoint,
                     stepping, start, end);
             int sizeX = pixelsObj.getSizeX();
@@ -652,7 +686,7 @@ public class RenderingBean implements RenderingEngine, Serializable {
             log.error("Could not compress rendered image.", e);
             throw new ResourceError(e.getMessage());
         } finally {
-            rwl.writeLock().unlock();
+            rwl.readLock().unlock();
             try {
                 if (byteStream != null) {
                     byteStream.close();
@@ -727,6 +761,7 @@ public class RenderingBean implements RenderingEngine, Serializable {
                     // *** Ticket #848 -- Chris Allan <callan@blackcat.ca> ***
                     load();
                 }
+                invalidateRenderedTiles();
             }
             return rendDefObj.getId();
         } finally {
@@ -856,6 +891,18 @@ public class RenderingBean implements RenderingEngine, Serializable {
                 }
             }
         }
+        invalidateRenderedTiles();
+    }
+
+    /**
+     * Removes the cached images of the pixels set since its rendering
+     * settings have changed.
+     */
+    private void invalidateRenderedTiles() {
+        if (renderedTileCache != null && pixelsObj != null
+                && pixelsObj.getId() != null) {
+            renderedTileCache.invalidate(pixelsObj.getId());
+        }
     }
 
     /**
@@ -1024,6 +1071,7 @@ public class RenderingBean implements RenderingEngine, Serializable {
                 // *** Ticket #848 -- Chris Allan <callan@blackcat.ca> ***
             }
             load();
+            invalidateRenderedTiles();
             return id;
         } finally {
             rwl.writeLock().unlock();
@@ -2338,6 +2386,17 @@ public class RenderingBean implements RenderingEngine, Serializable {
         });
     }
 
+    /**
+     * Returns the renderer of a single rendering of the given plane, with
+     * the masks to render, if any, and the resolution level of this
+     * service. The renderings of the returned renderers do not modify the
+     * state of the shared renderer, they can therefore run concurrently
+     * while holding the read lock.
+     */
+    private Renderer newRenderContext(PlaneDef pd) {
+        return renderer.newRenderContext(getMasks(pd), resolutionLevel);
+    }
+
     /**
      * Get Mask attached to the image for rendering.
      */
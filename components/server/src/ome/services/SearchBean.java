@@ -269,8 +269,12 @@ public class SearchBean extends AbstractStatefulBean implements Search {
             return false;
         }
         SearchAction action = actions.popFirst();
+        action.setPageSize(values.batchSize);
         List<IObject> list = (List<IObject>) executor.execute(null, action);
         results.add(list);
+        if (action.hasNextPage()) {
+            actions.pushFirst(action);
+        }
         return hasNext(); // recursive call
     }
 
@@ -308,7 +312,9 @@ public class SearchBean extends AbstractStatefulBean implements Search {
 
         // Now we're guaranteed to have an element
         List<T> rv = new ArrayList<T>();
-        while (hasNext() && rv.size() < values.batchSize) {
+        // Checking the size first so that no further page is loaded once
+        // the batch is full.
+        while (rv.size() < values.batchSize && hasNext()) {
             List<IObject> current = results.get(0);
             if (current.size() > 0) {
                 rv.add((T) pop(current));
@@ -748,6 +754,10 @@ public class SearchBean extends AbstractStatefulBean implements Search {
             actions.clear();
         }
 
+        synchronized void pushFirst(SearchAction a) {
+            actions.add(0, a);
+        }
+
         synchronized SearchAction popFirst() {
             assertNonZero();
             return actions.remove(0);
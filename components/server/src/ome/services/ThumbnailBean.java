@@ -53,6 +53,8 @@ import ome.system.OmeroContext;
 import ome.system.SimpleEventContext;
 import ome.util.ImageUtil;
 import omeis.providers.re.Renderer;
+import omeis.providers.re.RenderingScheduler;
+import omeis.providers.re.RenderingTask;
 import omeis.providers.re.data.PlaneDef;
 import omeis.providers.re.lut.LutProvider;
 import omeis.providers.re.quantum.QuantizationException;
@@ -182,6 +184,9 @@ public class ThumbnailBean extends AbstractLevel2Service
 
     private LutProvider lutProvider;
 
+    /** Reference to the scheduler shared by all renderers. */
+    private transient RenderingScheduler renderingScheduler;
+
     private OmeroContext applicationContext = null;
 
     /**
@@ -354,6 +359,10 @@ public class ThumbnailBean extends AbstractLevel2Service
         PixelBuffer buffer = pixelDataService.getPixelBuffer(pixels, false);
         renderer = new Renderer(quantumFactory, renderingModels, pixels,
                 settings, buffer, lutProvider);
+        if (renderingScheduler != null)
+        {
+            renderer.setScheduler(renderingScheduler);
+        }
         dirty = false;
     }
 
@@ -382,6 +391,17 @@ public class ThumbnailBean extends AbstractLevel2Service
         this.lutProvider = lutProvider;
     }
 
+    /**
+     * Rendering scheduler Bean injector.
+     * @param renderingScheduler The scheduler we'll be providing to the
+     * renderer.
+     */
+    public void setRenderingScheduler(RenderingScheduler renderingScheduler) {
+        getBeanHelper().throwIfAlreadySet(
+                this.renderingScheduler, renderingScheduler);
+        this.renderingScheduler = renderingScheduler;
+    }
+
     /**
      * In-progress image resource Bean injector.
      * @param inProgressImageResource The in-progress image resource we'll be
@@ -603,7 +623,29 @@ public class ThumbnailBean extends AbstractLevel2Service
         {
             return null;
         }
+        return createScaledImage(renderer, settings, pixels,
+                thumbnailMetadata, theZ, theT);
+    }
 
+    /**
+     * Creates a scaled buffered image using the passed renderer rather than
+     * the one of the active pixels set so that several thumbnails may be
+     * rendered in parallel. Only the renderer is modified.
+     *
+     * @param renderer the renderer of the pixels set.
+     * @param settings the rendering settings used by the renderer.
+     * @param pixels the pixels set.
+     * @param thumbnailMetadata the metadata of the thumbnail to create.
+     * @param theZ the optical section (offset across the Z-axis) requested.
+     * <pre>null</pre> signifies the rendering engine default.
+     * @param theT the timepoint (offset across the T-axis) requested.
+     * <pre>null</pre> signifies the rendering engine default.
+     * @return a scaled buffered image.
+     */
+    private BufferedImage createScaledImage(Renderer renderer,
+            RenderingDef settings, Pixels pixels, Thumbnail thumbnailMetadata,
+            Integer theZ, Integer theT)
+    {
         // Retrieve our rendered data
         if (theZ == null)
             theZ = settings.getDefaultZ();
@@ -1008,7 +1050,9 @@ public class ThumbnailBean extends AbstractLevel2Service
     }
 
     /**
-     * Performs the logic of retrieving a set of thumbnails.
+     * Performs the logic of retrieving a set of thumbnails. The thumbnails
+     * already on disk are read and the missing ones are rendered in parallel
+     * by the {@link RenderingScheduler}, if one has been set.
      * @param pixelsIds The Pixels IDs to retrieve thumbnails for.
      * @return Map of Pixels ID vs. thumbnail bytes.
      */
@@ -1021,7 +1065,9 @@ public class ThumbnailBean extends AbstractLevel2Service
             @Override
             protected void actOnOneGroup(Set<Long> pixelsIds) {
                 final List<Thumbnail> toSave = new ArrayList<Thumbnail>();
-                for (final Long pixelsId : pixelsIds) {
+                final List<ThumbnailTask> toRender =
+                        new ArrayList<ThumbnailTask>();
+                for (final Long pixelsId : readCachedThumbnails(pixelsIds, toReturn)) {
                     // Ensure that the renderer has been made dirty otherwise the
                     // same renderer will be used to return all thumbnails with dirty
                     // metadata. (See #2075).
@@ -1044,6 +1090,14 @@ public class ThumbnailBean extends AbstractLevel2Service
                             dirtyMetadata = true;
                         }
                         try {
+                            final ThumbnailTask task = prepareThumbnailTask(pixelsId);
+                            if (task != null) {
+                                toRender.add(task);
+                                if (toRender.size() >= renderingScheduler.getThreadCount()) {
+                                    renderThumbnails(toRender, toReturn, toSave);
+                                }
+                                continue;
+                            }
                             // At this point, we're sure that we have a thumbnail obj
                             // that we want to use, but retrieveThumbnail likes to
                             // re-generate. For the moment, we're saving and restoring
@@ -1061,6 +1115,7 @@ public class ThumbnailBean extends AbstractLevel2Service
                         toReturn.put(pixelsId, null);
                     }
                 }
+                renderThumbnails(toRender, toReturn, toSave);
                 // We're doing the update or creation and save as a two-step
                 // process due to the possible unloaded Pixels. If we do not,
                 // Pixels will be unloaded and we will hit
@@ -1075,6 +1130,236 @@ public class ThumbnailBean extends AbstractLevel2Service
         return toReturn;
     }
 
+    /**
+     * Reads in parallel the thumbnails of the set which are up to date on
+     * disk. The checks requiring the database are performed by the calling
+     * thread beforehand.
+     * @param pixelsIds The Pixels IDs to retrieve thumbnails for.
+     * @param toReturn Map of Pixels ID vs. thumbnail bytes to fill.
+     * @return The Pixels IDs of the thumbnails which were not read.
+     */
+    private List<Long> readCachedThumbnails(Set<Long> pixelsIds,
+            Map<Long, byte[]> toReturn)
+    {
+        final List<Long> remaining = new ArrayList<Long>();
+        final List<ReadThumbnailTask> tasks = new ArrayList<ReadThumbnailTask>();
+        for (final Long pixelsId : pixelsIds) {
+            if (renderingScheduler == null) {
+                remaining.add(pixelsId);
+                continue;
+            }
+            try {
+                if (ctx.hasSettings(pixelsId)
+                        && ctx.isThumbnailCached(pixelsId)) {
+                    tasks.add(new ReadThumbnailTask(
+                            pixelsId, ctx.getMetadata(pixelsId)));
+                    continue;
+                }
+            } catch (Throwable t) {
+                // Retried, and reported, one at a time below.
+                log.debug("Cannot check thumbnail of Pixels ID " + pixelsId, t);
+            }
+            remaining.add(pixelsId);
+        }
+        if (tasks.isEmpty()) {
+            return remaining;
+        }
+        StopWatch s1 = new Slf4JStopWatch("omero.readCachedThumbnails");
+        try {
+            renderingScheduler.execute(
+                    tasks.toArray(new RenderingTask[tasks.size()]));
+        } catch (QuantizationException e) {
+            // Not thrown by the read tasks.
+            throw new InternalException(e.getMessage());
+        } finally {
+            s1.stop();
+        }
+        for (ReadThumbnailTask task : tasks) {
+            if (task.thumbnail == null) {
+                if (log.isDebugEnabled()) {
+                    log.debug("Cache miss, thumbnail missing or out of date.");
+                }
+                remaining.add(task.pixelsId);
+            } else {
+                toReturn.put(task.pixelsId, task.thumbnail);
+            }
+        }
+        return remaining;
+    }
+
+    /**
+     * Prepares the rendering of the thumbnail of the active pixels set by
+     * another thread if the thumbnail is missing from disk. The metadata is
+     * updated and the renderer loaded by the calling thread; the task then
+     * owns the renderer.
+     * @param pixelsId The Pixels ID of the active pixels set.
+     * @return The task or <code>null</code> if the thumbnail must be
+     * retrieved by the calling thread.
+     */
+    private ThumbnailTask prepareThumbnailTask(long pixelsId)
+    {
+        if (renderingScheduler == null || inProgress
+                || ctx.isThumbnailCached(pixelsId))
+        {
+            return null;
+        }
+        errorIfInvalidState();
+        if (inProgress)
+        {
+            return null;
+        }
+        thumbnailMetadata = _createThumbnail(thumbnailMetadata);
+        final ThumbnailTask task = new ThumbnailTask(pixelsId, renderer,
+                settings, pixels, thumbnailMetadata, dirtyMetadata);
+        // The renderer is closed by the task.
+        renderer = null;
+        dirty = true;
+        return task;
+    }
+
+    /**
+     * Renders the passed thumbnails in parallel and writes them to disk.
+     * @param tasks The thumbnails to render, cleared once rendered.
+     * @param toReturn Map of Pixels ID vs. thumbnail bytes to fill.
+     * @param toSave The metadata to save once the thumbnails are rendered.
+     */
+    private void renderThumbnails(List<ThumbnailTask> tasks,
+            Map<Long, byte[]> toReturn, List<Thumbnail> toSave)
+    {
+        if (tasks.isEmpty()) {
+            return;
+        }
+        StopWatch s1 = new Slf4JStopWatch("omero.renderThumbnails");
+        Throwable failure = null;
+        try {
+            if (diskSpaceChecking) {
+                iRepositoryInfo.sanityCheckRepository();
+            }
+        } catch (Throwable t) {
+            failure = t;
+            for (ThumbnailTask task : tasks) {
+                task.close();
+            }
+        }
+        if (failure == null) {
+            try {
+                renderingScheduler.execute(
+                        tasks.toArray(new RenderingTask[tasks.size()]));
+            } catch (Throwable t) {
+                // Not thrown by the tasks, e.g. interrupted while waiting.
+                failure = t;
+            }
+        }
+        s1.stop();
+        for (ThumbnailTask task : tasks) {
+            if (failure != null && task.thumbnail == null
+                    && task.failure == null) {
+                task.failure = failure;
+            }
+            if (task.failure != null) {
+                log.warn("Retrieving thumbnail in set for " + "Pixels ID "
+                        + task.pixelsId + " failed.", task.failure);
+                toReturn.put(task.pixelsId, null);
+            } else {
+                toReturn.put(task.pixelsId, task.thumbnail);
+                if (task.dirtyMetadata) {
+                    toSave.add(task.metadata);
+                }
+            }
+        }
+        tasks.clear();
+    }
+
+    /**
+     * Reads a thumbnail from disk, leaving it <code>null</code> if it cannot
+     * be read.
+     */
+    private class ReadThumbnailTask implements RenderingTask {
+
+        private final long pixelsId;
+
+        private final Thumbnail metadata;
+
+        private byte[] thumbnail;
+
+        ReadThumbnailTask(long pixelsId, Thumbnail metadata) {
+            this.pixelsId = pixelsId;
+            this.metadata = metadata;
+        }
+
+        public Object call() {
+            try {
+                thumbnail = ioService.getThumbnail(metadata);
+            } catch (Throwable t) {
+                log.debug("Cannot read thumbnail of Pixels ID " + pixelsId, t);
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Renders, scales and compresses a thumbnail and writes it to disk.
+     * Failures are recorded rather than thrown so that they only affect the
+     * thumbnail concerned.
+     */
+    private class ThumbnailTask implements RenderingTask {
+
+        private final long pixelsId;
+
+        private final Renderer renderer;
+
+        private final RenderingDef settings;
+
+        private final Pixels pixels;
+
+        private final Thumbnail metadata;
+
+        private final boolean dirtyMetadata;
+
+        private byte[] thumbnail;
+
+        private Throwable failure;
+
+        private boolean closed = false;
+
+        ThumbnailTask(long pixelsId, Renderer renderer, RenderingDef settings,
+                Pixels pixels, Thumbnail metadata, boolean dirtyMetadata) {
+            this.pixelsId = pixelsId;
+            this.renderer = renderer;
+            this.settings = settings;
+            this.pixels = pixels;
+            this.metadata = metadata;
+            this.dirtyMetadata = dirtyMetadata;
+        }
+
+        public Object call() {
+            try {
+                BufferedImage image = createScaledImage(
+                        renderer, settings, pixels, metadata, null, null);
+                thumbnail = convertThumbnailToBytes(image, false);
+                ioService.createThumbnail(metadata, thumbnail);
+            } catch (Throwable t) {
+                failure = t;
+            } finally {
+                close();
+            }
+            return null;
+        }
+
+        synchronized void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                renderer.close();
+            } catch (Throwable t) {
+                log.warn("Renderer of Pixels ID " + pixelsId
+                        + " did not close successfully.", t);
+            }
+        }
+    }
+
     /*
      * (non-Javadoc)
      *
@@ -63,11 +63,21 @@ public class Deletion {
 
         protected ExtendedMetadata em;
 
+        protected int threads = 1;
+
         public Builder(AbstractFileSystemService afs, ExtendedMetadata em) {
             this.afs = afs;
             this.em = em;
         }
 
+        /**
+         * Sets the number of threads deleting the binary files of each
+         * deletion, 0 or lower for one per available processor.
+         */
+        public void setThreads(int threads) {
+            this.threads = threads;
+        }
+
         @Override
         public void setApplicationContext(ApplicationContext ctx)
             throws BeansException {
@@ -77,7 +87,7 @@ public class Deletion {
         @Override
         protected Deletion createInstance()
             throws Exception {
-            return new Deletion(afs, ctx);
+            return new Deletion(afs, ctx, threads);
         }
 
         @Override
@@ -97,10 +107,18 @@ public class Deletion {
 
     private final AbstractFileSystemService afs;
 
+    private final int threads;
+
     public Deletion(AbstractFileSystemService afs, OmeroContext ctx) {
+        this(afs, ctx, 1);
+    }
+
+    public Deletion(AbstractFileSystemService afs, OmeroContext ctx,
+            int threads) {
 
         this.afs = afs;
         this.ctx = ctx;
+        this.threads = threads;
 
     }
 
@@ -112,7 +130,8 @@ public class Deletion {
     public void deleteFiles(SetMultimap<String, Long> deleteTargets) {
         final StopWatch sw = new Slf4JStopWatch();
         try {
-            final FileDeleter files = new FileDeleter(ctx, afs, deleteTargets);
+            final FileDeleter files = new FileDeleter(ctx, afs, deleteTargets,
+                    threads);
             files.run();
             if (files.getFailedFilesCount() > 0) {
                 log.warn(files.getWarning());
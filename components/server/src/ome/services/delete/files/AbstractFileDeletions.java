@@ -18,11 +18,18 @@
 package ome.services.delete.files;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import ome.io.nio.AbstractFileSystemService;
 
@@ -42,6 +49,24 @@ public abstract class AbstractFileDeletions {
     
     protected final AbstractFileSystemService afs;
 
+    /**
+     * A file which could not be deleted by {@link #deleteLocal(ExecutorService)}.
+     */
+    private static class Failure {
+
+        final File file;
+
+        final Long id;
+
+        final long size;
+
+        Failure(File file, Long id, long size) {
+            this.file = file;
+            this.id = id;
+            this.size = size;
+        }
+    }
+
     private Map<File, Long> localFiles = new HashMap<File, Long>();
 
     private Map<File, Long> failedFiles = new HashMap<File, Long>();
@@ -75,21 +100,98 @@ public abstract class AbstractFileDeletions {
      * for example because they don't live in a repository.
      */
     public int deleteLocal() {
-        for (Map.Entry<File, Long> entry: localFiles.entrySet()) {
+        return deleteLocal(null);
+    }
+
+    /**
+     * Helper to delete and log. These files have not been handled elsewhere,
+     * for example because they don't live in a repository. The files are
+     * grouped by directory and the directories deleted from in parallel.
+     * @param executor the threads deleting the files of each directory,
+     * or <code>null</code> to delete all the files in the calling thread
+     * @return the number of files which could not be deleted so far
+     */
+    public int deleteLocal(ExecutorService executor) {
+        final Map<File, Map<File, Long>> byDirectory =
+                new LinkedHashMap<File, Map<File, Long>>();
+        for (Map.Entry<File, Long> entry : localFiles.entrySet()) {
+            final File dir = entry.getKey().getParentFile();
+            Map<File, Long> files = byDirectory.get(dir);
+            if (files == null) {
+                files = new HashMap<File, Long>();
+                byDirectory.put(dir, files);
+            }
+            files.put(entry.getKey(), entry.getValue());
+        }
+
+        if (executor == null || byDirectory.size() < 2) {
+            for (Map<File, Long> files : byDirectory.values()) {
+                failAll(deleteFiles(files));
+            }
+            return failedFiles.size();
+        }
+
+        final Map<Map<File, Long>, Future<List<Failure>>> futures =
+                new LinkedHashMap<Map<File, Long>, Future<List<Failure>>>();
+        for (final Map<File, Long> files : byDirectory.values()) {
+            futures.put(files, executor.submit(() -> deleteFiles(files)));
+        }
+        for (Map.Entry<Map<File, Long>, Future<List<Failure>>> entry :
+                futures.entrySet()) {
+            try {
+                failAll(entry.getValue().get());
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                entry.getValue().cancel(true);
+                failUnknown(entry.getKey());
+            } catch (ExecutionException ee) {
+                log.warn("Error deleting files", ee.getCause());
+                failUnknown(entry.getKey());
+            }
+        }
+        return failedFiles.size();
+    }
+
+    /**
+     * Deletes the given files.
+     * @param files the files of a directory and their ids
+     * @return the files which could not be deleted
+     */
+    private static List<Failure> deleteFiles(Map<File, Long> files) {
+        final List<Failure> failed = new ArrayList<Failure>();
+        for (Map.Entry<File, Long> entry: files.entrySet()) {
             File file = entry.getKey();
             Long id = entry.getValue();
-            if (file.exists()) {
-                if (file.delete()) {
-                    log.debug("DELETED: " + file.getAbsolutePath());
-                } else {
-                    log.debug("Failed to delete " + file.getAbsolutePath());
-                    fail(file, id, file.length());
-                }
-            } else {
+            try {
+                Files.delete(file.toPath());
+                log.debug("DELETED: " + file.getAbsolutePath());
+            } catch (NoSuchFileException nsfe) {
                 log.debug("File " + file.getAbsolutePath() + " does not exist.");
+            } catch (IOException ioe) {
+                log.debug("Failed to delete " + file.getAbsolutePath() + ": "
+                        + ioe);
+                failed.add(new Failure(file, id, file.length()));
+            }
+        }
+        return failed;
+    }
+
+    private void failAll(List<Failure> failed) {
+        for (Failure f : failed) {
+            fail(f.file, f.id, f.size);
+        }
+    }
+
+    /**
+     * Marks as failed the files whose deletion was interrupted since it is
+     * not known which of them remain.
+     */
+    private void failUnknown(Map<File, Long> files) {
+        for (Map.Entry<File, Long> entry : files.entrySet()) {
+            if (entry.getKey().exists()) {
+                fail(entry.getKey(), entry.getValue(), entry.getKey().length());
             }
         }
-        return failedFiles.size();
     }
 
     public long getBytesFailed() {
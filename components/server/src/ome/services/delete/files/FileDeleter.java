@@ -22,6 +22,8 @@ import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import ome.io.nio.AbstractFileSystemService;
 import ome.system.OmeroContext;
@@ -30,6 +32,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.common.collect.SetMultimap;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 /**
  * Helper class which sorts through a number of
@@ -54,6 +57,8 @@ public class FileDeleter {
 
     private final SetMultimap<String, Long> deleteTargets;
 
+    private final int threads;
+
     private OriginalFileDeletions originalFD;
  
     private ThumbnailFileDeletions thumbFD;
@@ -67,23 +72,45 @@ public class FileDeleter {
     private long bytesFailed = 0;
 
 	public FileDeleter(OmeroContext ctx, AbstractFileSystemService afs, SetMultimap<String, Long> deleteTargets) {
+        this(ctx, afs, deleteTargets, 1);
+    }
+
+    /**
+     * @param threads the number of threads deleting the files of different
+     * directories in parallel, 0 or lower for one per available processor
+     */
+    public FileDeleter(OmeroContext ctx, AbstractFileSystemService afs, SetMultimap<String, Long> deleteTargets,
+            int threads) {
         this.ctx = ctx;
         this.afs = afs;
         this.deleteTargets = deleteTargets;
+        this.threads = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
     }
 
     public void run() {
-        originalFD = new OriginalFileDeletions(afs, load(Type.OriginalFile), ctx);
-        filesFailed += originalFD.deleteLocal();
-        bytesFailed += originalFD.getBytesFailed();
-
-        thumbFD = new ThumbnailFileDeletions(afs, load(Type.Thumbnail));
-        filesFailed += thumbFD.deleteLocal();
-        bytesFailed += thumbFD.getBytesFailed();
-
-        pixelsFD = new PixelsFileDeletions(afs, load(Type.Pixels));
-        filesFailed += pixelsFD.deleteLocal();
-        bytesFailed += pixelsFD.getBytesFailed();
+        ExecutorService executor = null;
+        if (threads > 1) {
+            executor = Executors.newFixedThreadPool(threads,
+                    new ThreadFactoryBuilder().setDaemon(true)
+                    .setNameFormat("FileDeleter-%d").build());
+        }
+        try {
+            originalFD = new OriginalFileDeletions(afs, load(Type.OriginalFile), ctx);
+            filesFailed += originalFD.deleteLocal(executor);
+            bytesFailed += originalFD.getBytesFailed();
+
+            thumbFD = new ThumbnailFileDeletions(afs, load(Type.Thumbnail));
+            filesFailed += thumbFD.deleteLocal(executor);
+            bytesFailed += thumbFD.getBytesFailed();
+
+            pixelsFD = new PixelsFileDeletions(afs, load(Type.Pixels));
+            filesFailed += pixelsFD.deleteLocal(executor);
+            bytesFailed += pixelsFD.getBytesFailed();
+        } finally {
+            if (executor != null) {
+                executor.shutdownNow();
+            }
+        }
 
         undeletedFiles = new HashMap<String, long[]>();
         undeletedFiles.put(Type.OriginalFile.toString(), originalFD.getUndeletedFiles());
@@ -19,13 +19,15 @@ package ome.services.delete.files;
 
 import java.io.File;
 import java.io.FileFilter;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
 
 import ome.io.bioformats.BfPyramidPixelBuffer;
 import ome.io.nio.AbstractFileSystemService;
 import ome.io.nio.PixelsService;
 
-import org.apache.commons.io.filefilter.WildcardFileFilter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -42,10 +44,13 @@ public class PixelsFileDeletions extends AbstractFileDeletions {
 
     public PixelsFileDeletions(AbstractFileSystemService afs, Set<Long> deletedIds) {
         super(afs, deletedIds);
+        final Map<File, Set<Long>> idsByDir = new HashMap<File, Set<Long>>();
         for (Long id : deletedIds) {
             final String filePath = afs.getPixelsPath(id);
             final File file = new File(filePath);
             final File pyrFile = new File(filePath + PixelsService.PYRAMID_SUFFIX);
+            final File histogramFile =
+                new File(filePath + PixelsService.HISTOGRAM_SUFFIX);
             final File dir = file.getParentFile();
             final File lockFile = new File(dir, "." + id + PixelsService.PYRAMID_SUFFIX
                 + BfPyramidPixelBuffer.PYR_LOCK_EXT);
@@ -56,16 +61,64 @@ public class PixelsFileDeletions extends AbstractFileDeletions {
             addLocalFile(pyrFile, id);
             // Now any lock file
             addLocalFile(lockFile, id);
+            // And the histograms of the planes
+            addLocalFile(histogramFile, id);
 
-            // Now any tmp files
-            FileFilter tmpFileFilter = new WildcardFileFilter("."
-                    + id + PixelsService.PYRAMID_SUFFIX + "*.tmp");
-            File[] tmpFiles = dir.listFiles(tmpFileFilter);
+            // Now any tmp files, see below
+            Set<Long> dirIds = idsByDir.get(dir);
+            if (dirIds == null) {
+                dirIds = new HashSet<Long>();
+                idsByDir.put(dir, dirIds);
+            }
+            dirIds.add(id);
+        }
+        // Listing each directory once rather than once per id.
+        for (Map.Entry<File, Set<Long>> entry : idsByDir.entrySet()) {
+            File[] tmpFiles = entry.getKey().listFiles(
+                    tmpFileFilter(entry.getValue()));
             if(tmpFiles != null) {
                 for (int i = 0; i < tmpFiles.length; i++) {
-                    addLocalFile(tmpFiles[i], id);
+                    addLocalFile(tmpFiles[i], tmpFileId(tmpFiles[i].getName()));
                 }
             }
         }
     }
+
+    /**
+     * Accepts the files named <code>.ID_pyramid*.tmp</code> or
+     * <code>.ID_histogram.tmp</code> for any of the given ids.
+     */
+    private static FileFilter tmpFileFilter(final Set<Long> ids) {
+        return new FileFilter() {
+            public boolean accept(File file) {
+                final Long id = tmpFileId(file.getName());
+                return id != null && ids.contains(id);
+            }
+        };
+    }
+
+    /**
+     * Returns the id of the pixels of a temporary pyramid or histogram file
+     * or <code>null</code> if the name is not that of such a file.
+     */
+    private static Long tmpFileId(String name) {
+        if (!name.startsWith(".") || !name.endsWith(".tmp")) {
+            return null;
+        }
+        int end = name.indexOf(PixelsService.PYRAMID_SUFFIX);
+        if (end < 2 || end + PixelsService.PYRAMID_SUFFIX.length() > name.length() - 4) {
+            // Or .ID_histogram.tmp as written by PixelsHistogramFile.Writer
+            end = name.length() - 4 - PixelsService.HISTOGRAM_SUFFIX.length();
+            if (end < 2 || !name.startsWith(PixelsService.HISTOGRAM_SUFFIX, end)) {
+                return null;
+            }
+        }
+        final String id = name.substring(1, end);
+        try {
+            final Long rv = Long.valueOf(id);
+            return rv.toString().equals(id) ? rv : null;
+        } catch (NumberFormatException nfe) {
+            return null;
+        }
+    }
 }
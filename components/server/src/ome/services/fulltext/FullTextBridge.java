@@ -57,6 +57,19 @@ import org.hibernate.search.bridge.builtin.DateBridge;
 public class FullTextBridge extends BridgeHelper {
 // TODO insert/update OR delete regular type OR annotated type OR originalfile
 
+    /**
+     * Name of the field holding the id of the owner of an object. The field
+     * is neither analyzed nor added to the combined fields so that results
+     * may be filtered by permissions.
+     */
+    public final static String OWNER_ID = "details.owner.id";
+
+    /**
+     * Name of the field holding the id of the group of an object.
+     * @see #OWNER_ID
+     */
+    public final static String GROUP_ID = "details.group.id";
+
     final protected OriginalFilesService files;
     final protected Map<String, FileParser> parsers;
     final protected Class<FieldBridge>[] classes;
@@ -247,6 +260,9 @@ public class FullTextBridge extends BridgeHelper {
         Details details = object.getDetails();
         if (details != null) {
             Experimenter e = details.getOwner();
+            if (e != null && e.getId() != null) {
+                addId(document, OWNER_ID, e.getId());
+            }
             if (e != null && e.isLoaded()) {
                 String omename = e.getOmeName();
                 String firstName = e.getFirstName();
@@ -257,6 +273,9 @@ public class FullTextBridge extends BridgeHelper {
             }
 
             ExperimenterGroup g = details.getGroup();
+            if (g != null && g.getId() != null) {
+                addId(document, GROUP_ID, g.getId());
+            }
             if (g != null && g.isLoaded()) {
                 String groupName = g.getName();
                 add(document, "details.group.name", groupName, stored);
@@ -294,6 +313,14 @@ public class FullTextBridge extends BridgeHelper {
 
     }
 
+    /**
+     * Adds an id to the given field only, without analyzing it.
+     */
+    private void addId(Document document, String field, Long id) {
+        document.add(new Field(field, id.toString(), Store.YES,
+                Index.NOT_ANALYZED));
+    }
+
     /**
      * Walks the various {@link Folder} instances attached to the object
      * argument so that it may be found via its immediate parent folder.
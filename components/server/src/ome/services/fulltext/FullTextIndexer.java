@@ -20,6 +20,13 @@
 package ome.services.fulltext;
 
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
 import ome.model.IAnnotated;
 import ome.model.IGlobal;
 import ome.model.IMutable;
@@ -68,6 +75,12 @@ public class FullTextIndexer extends SimpleWork implements ApplicationContextAwa
      */
     public final static int DEFAULT_REPORTING_LOOPS = 100;
 
+    /**
+     * Maximum number of ids passed to a single query when loading the
+     * entities of a batch.
+     */
+    final static int LOAD_CHUNK = 500;
+
     abstract class Action {
         Class type;
         long id;
@@ -259,9 +272,18 @@ public class FullTextIndexer extends SimpleWork implements ApplicationContextAwa
         return rc;
     }
 
+    /**
+     * Consumes one batch of {@link EventLog} instances from the
+     * {@link EventLogLoader}. The logs are coalesced so that each entity is
+     * handled only once per batch according to its last log, the entities to
+     * index are loaded with a single query per type, and the session is
+     * flushed once at the end of the batch. The files parsed for an entity
+     * are closed as soon as it has been indexed.
+     */
     public int doIndexing(FullTextSession session) {
 
         int count = 0;
+        final Map<String, EventLog> batch = new LinkedHashMap<String, EventLog>();
 
         for (EventLog eventLog : loader) {
 
@@ -270,31 +292,86 @@ public class FullTextIndexer extends SimpleWork implements ApplicationContextAwa
             }
 
             if (eventLog != null) {
-                handleEventLog(session, eventLog);
+                coalesce(batch, eventLog);
                 count++;
             }
-            session.flush();
-            parserSession.closeParsedFiles();
+        }
 
+        if (!batch.isEmpty()) {
+            handleEventLogs(session, batch.values());
+            session.flush();
         }
         return count;
     }
 
-    protected void handleEventLog(FullTextSession session, EventLog eventLog) {
+    /**
+     * Adds the given log to the batch, replacing any earlier log of the same
+     * entity. Logs whose action is not handled by the indexer are not added
+     * so that they do not replace a log which needs handling.
+     */
+    protected void coalesce(Map<String, EventLog> batch, EventLog eventLog) {
         String act = eventLog.getAction();
-        Class type = asClassOrNull(eventLog.getEntityType());
-        if (type != null) {
-            long id = eventLog.getEntityId();
+        if (!"DELETE".equals(act) && !"REINDEX".equals(act)
+                && !"UPDATE".equals(act) && !"INSERT".equals(act)) {
+            // Likely CHGRP-VALIDATION, PIXELDATA or similar.
+            if (log.isDebugEnabled()) {
+                log.debug("Unknown action type: " + act);
+            }
+            return;
+        }
+        String key = eventLog.getEntityType() + ":" + eventLog.getEntityId();
+        // Remove first so that the entity is handled in the order of its
+        // last log.
+        EventLog previous = batch.remove(key);
+        if (previous != null && log.isDebugEnabled()) {
+            log.debug(String.format("Coalesced %s into %s", previous, eventLog));
+        }
+        batch.put(key, eventLog);
+    }
+
+    /**
+     * Handles the given coalesced logs, loading all the entities of a given
+     * type to index at once.
+     */
+    protected void handleEventLogs(FullTextSession session,
+            Collection<EventLog> eventLogs) {
+
+        final List<EventLog> known = new ArrayList<EventLog>(eventLogs.size());
+        final List<Class> types = new ArrayList<Class>(eventLogs.size());
+        final Map<Class, List<Long>> toLoad = new HashMap<Class, List<Long>>();
+        for (EventLog eventLog : eventLogs) {
+            Class type = asClassOrNull(eventLog.getEntityType());
+            if (type != null) {
+                known.add(eventLog);
+                types.add(type);
+                if (!"DELETE".equals(eventLog.getAction())) {
+                    List<Long> ids = toLoad.get(type);
+                    if (ids == null) {
+                        ids = new ArrayList<Long>();
+                        toLoad.put(type, ids);
+                    }
+                    ids.add(eventLog.getEntityId());
+                }
+            }
+        }
+
+        final Map<Class, Map<Long, IObject>> loaded =
+                new HashMap<Class, Map<Long, IObject>>();
+        for (Map.Entry<Class, List<Long>> entry : toLoad.entrySet()) {
+            loaded.put(entry.getKey(),
+                    getAll(session, entry.getKey(), entry.getValue()));
+        }
 
-            Action action = null;
-            if ("DELETE".equals(act)) {
+        for (int i = 0; i < known.size(); i++) {
+            EventLog eventLog = known.get(i);
+            Class type = types.get(i);
+            long id = eventLog.getEntityId();
+            Action action;
+            if ("DELETE".equals(eventLog.getAction())) {
                 action = new Purge(type, id);
-            } else if ("REINDEX".equals(act) || "UPDATE".equals(act) || "INSERT".equals(act)) {
-                IObject obj = get(session, type, id);
+            } else {
+                IObject obj = loaded.get(type).get(id);
                 if (obj == null) {
-                    // This object was deleted before the indexer caught up with
-                    // the INSERT/UDPDATE log. Though this isn't a problem itself,
-                    // this does mean that the indexer is likely going too slow.
                     log.debug(String.format("Null returned! Purging "
                             + "since cannot index %s:Id_%s for %s", type
                             .getName(), id, eventLog));
@@ -302,28 +379,30 @@ public class FullTextIndexer extends SimpleWork implements ApplicationContextAwa
                 } else {
                     action = new Index(obj);
                 }
-            } else {
-                // Likely CHGRP-VALIDATION, PIXELDATA or similar.
-                if (log.isDebugEnabled()) {
-                    log.debug("Unknown action type: " + act);
-                }
             }
+            try {
+                go(session, eventLog, action);
+            } finally {
+                // The entity has been flushed to the index so that the files
+                // parsed for it can be closed before the next one is handled.
+                parserSession.closeParsedFiles();
+            }
+        }
+    }
 
-            if (action != null) {
-                try {
-                    action.go(session);
-                } catch (Exception e) {
-                    try {
-                        this.context.publishMessage(new EventLogFailure(loader, eventLog, e));
-                    } catch (RuntimeException re) {
-                        throw re;
-                    } catch (Throwable e1) {
-                        throw new RuntimeException(e1);
-                    }
-                }
-                action.log(log);
+    private void go(FullTextSession session, EventLog eventLog, Action action) {
+        try {
+            action.go(session);
+        } catch (Exception e) {
+            try {
+                this.context.publishMessage(new EventLogFailure(loader, eventLog, e));
+            } catch (RuntimeException re) {
+                throw re;
+            } catch (Throwable e1) {
+                throw new RuntimeException(e1);
             }
         }
+        action.log(log);
     }
 
     /**
@@ -358,6 +437,14 @@ public class FullTextIndexer extends SimpleWork implements ApplicationContextAwa
     protected IObject get(Session session, Class type, long id) {
         QueryBuilder qb = new QueryBuilder();
         qb.select("this").from(type.getName(), "this");
+        joins(qb, type);
+        qb.where().and("this.id = :id");
+        qb.param("id", id);
+
+        return (IObject) qb.query(session).uniqueResult();
+    }
+
+    private void joins(QueryBuilder qb, Class type) {
         if (IAnnotated.class.isAssignableFrom(type)) {
             qb.join("this.annotationLinks", "l1", true, true);
             qb.join("l1.child", "a1", true, true);
@@ -372,9 +459,38 @@ public class FullTextIndexer extends SimpleWork implements ApplicationContextAwa
             qb.join("this.details.owner", "owner", false, true);
             qb.join("this.details.group", "group", false, true);
         }
-        qb.where().and("this.id = :id");
-        qb.param("id", id);
+    }
 
-        return (IObject) qb.query(session).uniqueResult();
+    /**
+     * Loads the entities of the given type with the same joins as
+     * {@link #get(Session, Class, long)}, in chunks of at most
+     * {@link #LOAD_CHUNK} ids.
+     *
+     * @return the loaded entities by id, missing ids have been deleted.
+     */
+    protected Map<Long, IObject> getAll(Session session, Class type,
+            List<Long> ids) {
+        final Map<Long, IObject> rv = new HashMap<Long, IObject>();
+        for (int i = 0; i < ids.size(); i += LOAD_CHUNK) {
+            List<Long> chunk = ids.subList(i,
+                    Math.min(ids.size(), i + LOAD_CHUNK));
+            if (chunk.size() == 1) {
+                IObject obj = get(session, type, chunk.get(0));
+                if (obj != null) {
+                    rv.put(obj.getId(), obj);
+                }
+                continue;
+            }
+            QueryBuilder qb = new QueryBuilder();
+            qb.select("this").from(type.getName(), "this");
+            joins(qb, type);
+            qb.where().and("this.id in (:ids)");
+            qb.paramList("ids", new ArrayList<Long>(chunk));
+            for (Object obj : qb.query(session).list()) {
+                // Fetching the collections repeats the rows.
+                rv.put(((IObject) obj).getId(), (IObject) obj);
+            }
+        }
+        return rv;
     }
 }
@@ -7,8 +7,10 @@
 
 package ome.services.projection;
 
+import java.awt.Dimension;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.List;
 
 import org.slf4j.Logger;
@@ -31,6 +33,7 @@ import ome.model.core.Image;
 import ome.model.core.Pixels;
 import ome.model.enums.PixelsType;
 import ome.model.stats.StatsInfo;
+import omeis.providers.re.RenderingScheduler;
 
 /**
  * Implements projection functionality for Pixels sets as declared in {@link
@@ -51,6 +54,9 @@ public class ProjectionBean extends AbstractLevel2Service implements IProjection
     
     /** Reference to the service used to retrieve the pixels data. */
     protected transient PixelsService pixelsService;
+
+    /** The threads accumulating the optical sections into a projection. */
+    protected transient RenderingScheduler renderingScheduler;
     
     /**
      * Returns the interface this implementation is for.
@@ -80,6 +86,17 @@ public class ProjectionBean extends AbstractLevel2Service implements IProjection
         getBeanHelper().throwIfAlreadySet(this.pixelsService, pixelsService);
         this.pixelsService = pixelsService;
     }
+
+    /**
+     * RenderingScheduler bean injector. For use during configuration. Can
+     * only be called once.
+     */
+    public void setRenderingScheduler(RenderingScheduler renderingScheduler)
+    {
+        getBeanHelper().throwIfAlreadySet(
+                this.renderingScheduler, renderingScheduler);
+        this.renderingScheduler = renderingScheduler;
+    }
     
     /* (non-Javadoc)
      * @see ome.api.IProjection#projectStack(long, ome.model.enums.PixelsType, int, int, int, int, int, int)
@@ -120,31 +137,17 @@ public class ProjectionBean extends AbstractLevel2Service implements IProjection
             int planeSize = 
                 ctx.planeSizeInPixels * (iPixels.getBitDepth(pixelsType) / 8);
             byte[] buf = new byte[planeSize];
-            ctx.from = pixelBuffer.getStack(channelIndex, timepoint);
             ctx.to = new PixelData(pixelsType.getValue(), ByteBuffer.wrap(buf));
+            ctx.tiled = pixelsService.requiresPixelsPyramid(ctx.pixels);
+            ctx.tileSize = pixelBuffer.getTileSize();
 
-            switch (algorithm)
+            for (int[] region : getRegions(ctx))
             {
-                case IProjection.MAXIMUM_INTENSITY:
-                {
-                    projectStackMax(ctx, stepping, start, end, false);
-                    break;
-                }
-                case IProjection.MEAN_INTENSITY:
-                {
-                    projectStackMean(ctx, stepping, start, end, false);
-                    break;
-                }
-                case IProjection.SUM_INTENSITY:
-                {
-                    projectStackSum(ctx, stepping, start, end, false);
-                    break;
-                }
-                default:
-                {
-                    throw new IllegalArgumentException(
-                            "Unknown algorithm: " + algorithm);
-                }
+                StackProjection projection = projectRegion(ctx, pixelBuffer,
+                        algorithm, channelIndex, timepoint, stepping, start,
+                        end, region);
+                projection.write(ctx.to, ctx.pixels.getSizeX(), region[0],
+                        region[1], null);
             }
             return buf;
         }
@@ -176,9 +179,6 @@ public class ProjectionBean extends AbstractLevel2Service implements IProjection
                 throw new ResourceError(
                         e.getMessage() + " Please check server log.");
             }
-            if (ctx.from != null) {
-                ctx.from.dispose();
-            }
         }
     }
 
@@ -233,44 +233,56 @@ public class ProjectionBean extends AbstractLevel2Service implements IProjection
             try
             {
                 ctx.planeSizeInPixels = ctx.pixels.getSizeX() * ctx.pixels.getSizeY();
-                int planeSize =
-                    ctx.planeSizeInPixels * (iPixels.getBitDepth(pixelsType) / 8);
-                byte[] buf = new byte[planeSize];
-                ctx.to = new PixelData(pixelsType.getValue(), ByteBuffer.wrap(buf));
-                int newC = 0;
-                for (Integer c : channels)
+                int bytesPerPixel = iPixels.getBitDepth(pixelsType) / 8;
+                // A pyramid is written tile by tile, in the order of the
+                // planes, hence the timepoints before the channels.
+                ctx.tiled = pixelsService.requiresPixelsPyramid(ctx.pixels)
+                    || pixelsService.requiresPixelsPyramid(newPixels);
+                ctx.tileSize = destinationBuffer.getTileSize();
+                byte[] buf = null;
+                if (!ctx.tiled)
+                {
+                    buf = new byte[ctx.planeSizeInPixels * bytesPerPixel];
+                    ctx.to = new PixelData(pixelsType.getValue(),
+                            ByteBuffer.wrap(buf));
+                }
+                double[][] minMax = new double[channels.size()][];
+                for (int newC = 0; newC < minMax.length; newC++)
                 {
-                    ctx.minimum = Double.MAX_VALUE;
-                    ctx.maximum = Double.MIN_VALUE;
-                    for (int t = tStart; t <= tEnd; t++)
+                    minMax[newC] = new double[] {
+                            Double.MAX_VALUE, Double.MIN_VALUE };
+                }
+                for (int t = tStart; t <= tEnd; t++)
+                {
+                    int newC = 0;
+                    for (Integer c : channels)
                     {
                         try
                         {
-                            ctx.from = sourceBuffer.getStack(c, t);
-                            switch (algorithm)
+                            for (int[] region : getRegions(ctx))
                             {
-                                case IProjection.MAXIMUM_INTENSITY:
+                                StackProjection projection = projectRegion(
+                                        ctx, sourceBuffer, algorithm, c, t,
+                                        stepping, zStart, zEnd, region);
+                                if (!ctx.tiled)
                                 {
-                                    projectStackMax(ctx, stepping, zStart, zEnd, true);
-                                    break;
-                                }
-                                case IProjection.MEAN_INTENSITY:
-                                {
-                                    projectStackMean(ctx, stepping, zStart, zEnd, true);
-                                    break;
-                                }
-                                case IProjection.SUM_INTENSITY:
-                                {
-                                    projectStackSum(ctx, stepping, zStart, zEnd, true);
-                                    break;
-                                }
-                                default:
-                                {
-                                    throw new IllegalArgumentException(
-                                            "Unknown algorithm: " + algorithm);
+                                    projection.write(ctx.to,
+                                            ctx.pixels.getSizeX(), 0, 0,
+                                            minMax[newC]);
+                                    destinationBuffer.setPlane(
+                                            buf, 0, newC, t-tStart);
+                                    continue;
                                 }
+                                byte[] tile = new byte[
+                                        region[2] * region[3] * bytesPerPixel];
+                                projection.write(new PixelData(
+                                        pixelsType.getValue(),
+                                        ByteBuffer.wrap(tile)), region[2],
+                                        0, 0, minMax[newC]);
+                                destinationBuffer.setTile(tile, 0, newC,
+                                        t-tStart, region[0], region[1],
+                                        region[2], region[3]);
                             }
-                            destinationBuffer.setPlane(buf, 0, newC, t-tStart);
                         }
                         catch (IOException e)
                         {
@@ -287,23 +299,22 @@ public class ProjectionBean extends AbstractLevel2Service implements IProjection
                                     c, t, ctx.pixels.getId(), e.getMessage());
                             log.error(error, e);
                             throw new ValidationException(error);
-                        } finally {
-                            if (ctx.from != null) {
-                                ctx.from.dispose();
-                            }
                         }
+                        newC++;
                     }
+                }
+                for (int newC = 0; newC < minMax.length; newC++)
+                {
                     // Handle the change of minimum and maximum for this channel.
                     Channel channel = newPixels.getChannel(newC);
                     StatsInfo si = new StatsInfo();
-                    si.setGlobalMin(ctx.minimum);
-                    si.setGlobalMax(ctx.maximum);
+                    si.setGlobalMin(minMax[newC][0]);
+                    si.setGlobalMax(minMax[newC][1]);
                     channel.setStatsInfo(si);
-                    // Set our methodology
-                    newPixels.setMethodology(
-                            IProjection.METHODOLOGY_STRINGS[algorithm]);
-                    newC++;
                 }
+                // Set our methodology
+                newPixels.setMethodology(
+                        IProjection.METHODOLOGY_STRINGS[algorithm]);
             }
             finally
             {
@@ -379,96 +390,43 @@ public class ProjectionBean extends AbstractLevel2Service implements IProjection
     }
     
     /**
-     * Projects a stack based on the maximum intensity at each XY coordinate.
+     * Returns the regions projected one at a time: the whole plane or, for
+     * images which require a pyramid, the tiles of the plane in row-major
+     * order.
      * @param ctx The context of our projection.
-     * @param stepping Stepping value to use while calculating the projection.
-     * For example, <code>stepping=1</code> will use every optical section from
-     * <code>start</code> to <code>end</code> where <code>stepping=2</code> will
-     * use every other section from <code>start</code> to <code>end</code> to
-     * perform the projection.
-     * @param start Optical section to start projecting from.
-     * @param end Optical section to finish projecting.
-     * @param doMinMax Whether or not to calculate the minimum and maximum of
-     * the projected pixel data.
+     * @return <code>{x, y, w, h}</code> of each region.
      */
-    private void projectStackMax(ProjectionContext ctx, int stepping,
-                                 int start, int end, boolean doMinMax)
+    private List<int[]> getRegions(ProjectionContext ctx)
     {
-        int currentPlaneStart;
-        double projectedValue, stackValue;
-        double minimum = ctx.minimum;
-        double maximum = ctx.maximum;
-        for (int i = 0; i < ctx.planeSizeInPixels; i++)
+        int sizeX = ctx.pixels.getSizeX();
+        int sizeY = ctx.pixels.getSizeY();
+        List<int[]> regions = new ArrayList<int[]>();
+        if (!ctx.tiled)
         {
-            projectedValue = 0;
-            for (int z = start; z <= end; z += stepping)
-            {
-                currentPlaneStart = ctx.planeSizeInPixels * z;
-                stackValue = ctx.from.getPixelValue(currentPlaneStart + i);
-                if (stackValue > projectedValue)
-                {
-                    projectedValue = stackValue;
-                }
-            }
-            ctx.to.setPixelValue(i, projectedValue);
-            if (doMinMax)
+            regions.add(new int[] { 0, 0, sizeX, sizeY });
+            return regions;
+        }
+        int tileWidth = (int) ctx.tileSize.getWidth();
+        int tileHeight = (int) ctx.tileSize.getHeight();
+        for (int y = 0; y < sizeY; y += tileHeight)
+        {
+            for (int x = 0; x < sizeX; x += tileWidth)
             {
-                minimum = projectedValue < minimum? projectedValue : minimum;
-                maximum = projectedValue > maximum? projectedValue : maximum;
+                regions.add(new int[] { x, y, Math.min(tileWidth, sizeX - x),
+                        Math.min(tileHeight, sizeY - y) });
             }
         }
-        ctx.minimum = minimum;
-        ctx.maximum = maximum;
-    }
-    
-    /**
-     * Projects a stack based on the mean intensity at each XY coordinate.
-     * @param from The raw pixel data from the stack to project from.
-     * @param ctx The context of our projection.
-     * source Pixels set pixels type will be used.
-     * @param stepping Stepping value to use while calculating the projection.
-     * For example, <code>stepping=1</code> will use every optical section from
-     * <code>start</code> to <code>end</code> where <code>stepping=2</code> will
-     * use every other section from <code>start</code> to <code>end</code> to
-     * perform the projection.
-     * @param start Optical section to start projecting from.
-     * @param end Optical section to finish projecting.
-     * @param doMinMax Whether or not to calculate the minimum and maximum of
-     * the projected pixel data.
-     */
-    private void projectStackMean(ProjectionContext ctx, int stepping, 
-                                  int start, int end, boolean doMinMax)
-    {
-        projectStackMeanOrSum(ctx, stepping, start, end, true, doMinMax);
+        return regions;
     }
-    
-    /**
-     * Projects a stack based on the sum intensity at each XY coordinate.
-     * @param ctx The context of our projection.
-     * @param pixelsType The destination Pixels type. If <code>null</code>, the
-     * source Pixels set pixels type will be used.
-     * @param stepping Stepping value to use while calculating the projection.
-     * For example, <code>stepping=1</code> will use every optical section from
-     * <code>start</code> to <code>end</code> where <code>stepping=2</code> will
-     * use every other section from <code>start</code> to <code>end</code> to
-     * perform the projection.
-     * @param start Optical section to start projecting from.
-     * @param end Optical section to finish projecting.
-     * @param doMinMax Whether or not to calculate the minimum and maximum of
-     * the projected pixel data.
-     */
-    private void projectStackSum(ProjectionContext ctx, int stepping, 
-                                 int start, int end, boolean doMinMax)
-    {
-        projectStackMeanOrSum(ctx, stepping, start, end, false, doMinMax);
-    }
-    
+
     /**
-     * Projects a stack based on the sum intensity at each XY coordinate with
-     * the option to also average the sum intensity.
+     * Projects a region of a stack, reading and accumulating one optical
+     * section at a time.
      * @param ctx The context of our projection.
-     * @param pixelsType The destination Pixels type. If <code>null</code>, the
-     * source Pixels set pixels type will be used.
+     * @param source The pixel buffer to read the optical sections from.
+     * @param algorithm The projection algorithm.
+     * @param c The channel of the stack.
+     * @param t The timepoint of the stack.
      * @param stepping Stepping value to use while calculating the projection.
      * For example, <code>stepping=1</code> will use every optical section from
      * <code>start</code> to <code>end</code> where <code>stepping=2</code> will
@@ -476,51 +434,43 @@ public class ProjectionBean extends AbstractLevel2Service implements IProjection
      * perform the projection.
      * @param start Optical section to start projecting from.
      * @param end Optical section to finish projecting.
-     * @param mean Whether or not we're performing an average post sum
-     * intensity projection.
-     * @param doMinMax Whether or not to calculate the minimum and maximum of
-     * the projected pixel data.
+     * @param region <code>{x, y, w, h}</code> of the region.
+     * @return The projection of the region.
      */
-    private void projectStackMeanOrSum(ProjectionContext ctx, int stepping,
-                                       int start, int end, 
-                                       boolean mean, boolean doMinMax)
+    private StackProjection projectRegion(ProjectionContext ctx,
+            PixelBuffer source, int algorithm, int c, int t, int stepping,
+            int start, int end, int[] region)
+        throws IOException, DimensionsOutOfBoundsException
     {
-        double planeMaximum = ctx.to.getMaximum();
-
-        int currentPlaneStart;
-        double projectedValue, stackValue;
-        double minimum = ctx.minimum;
-        double maximum = ctx.maximum;
-        for (int i = 0; i < ctx.planeSizeInPixels; i++)
+        StackProjection projection =
+            new StackProjection(algorithm, region[2], region[3]);
+        // The mean and sum intensity projections have always stopped
+        // before the end optical section.
+        int last = algorithm == IProjection.MAXIMUM_INTENSITY? end : end - 1;
+        for (int z = start; z <= last; z += stepping)
         {
-            projectedValue = 0;
-            int projectedPlaneCount = 0;
-            for (int z = start; z < end; z += stepping)
-            {
-                currentPlaneStart = ctx.planeSizeInPixels * z;
-                stackValue = ctx.from.getPixelValue(currentPlaneStart + i);
-                projectedValue += stackValue;
-                projectedPlaneCount++;
-            }
-            if (mean)
-            {
-                projectedValue = projectedValue / projectedPlaneCount;
-            }
-            if (projectedValue > planeMaximum)
+            PixelData plane = ctx.tiled?
+                    source.getTile(z, c, t, region[0], region[1], region[2],
+                            region[3]) :
+                    source.getPlane(z, c, t);
+            try
             {
-                projectedValue = planeMaximum;
+                projection.add(plane, getScheduler());
             }
-            ctx.to.setPixelValue(i, projectedValue);
-            if (doMinMax)
+            finally
             {
-                minimum = projectedValue < minimum? projectedValue : minimum;
-                maximum = projectedValue > maximum? projectedValue : maximum;
+                plane.dispose();
             }
         }
-        ctx.minimum = minimum;
-        ctx.maximum = maximum;
+        return projection;
     }
-    
+
+    private RenderingScheduler getScheduler()
+    {
+        return renderingScheduler == null?
+                RenderingScheduler.getDefault() : renderingScheduler;
+    }
+
     /**
      * Stores the context of a projection operation.
      * 
@@ -539,16 +489,13 @@ public class ProjectionBean extends AbstractLevel2Service implements IProjection
         /** Count of the number of pixels per plane for <code>pixels</code>. */
         public int planeSizeInPixels;
         
-        /** Current minimum for the projected pixel data. */
-        public double minimum = Double.MAX_VALUE;
-        
-        /** Current maximum for the projected pixel data. */
-        public double maximum = Double.MIN_VALUE;
-        
-        /** The raw pixel data from the stack to project from. */
-        public PixelData from;
-        
-        /** The raw pixel data buffer to project into. */
+        /** Whether the planes are projected tile by tile. */
+        public boolean tiled;
+
+        /** The size of the tiles if <code>tiled</code>. */
+        public Dimension tileSize;
+
+        /** The raw pixel data buffer to project the planes into. */
         public PixelData to;
     }
 }
@@ -0,0 +1,239 @@
+/*
+ * Copyright (C) 2018 University of Dundee & Open Microscopy Environment.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package ome.services.projection;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import ome.api.IProjection;
+import ome.util.PixelData;
+import omeis.providers.re.RenderingScheduler;
+import omeis.providers.re.RenderingTask;
+
+/**
+ * Accumulates the optical sections of a stack, or of a region of a stack,
+ * into a projection one plane at a time, rather than reading every section
+ * for each pixel. Each plane is read sequentially through the typed values of
+ * its backing buffer and its rows are split into bands accumulated by the
+ * threads of a {@link RenderingScheduler}.
+ *
+ * @since 5.5.0
+ */
+public class StackProjection {
+
+    /** Minimum number of rows of a band accumulated by a single task. */
+    private static final int MIN_ROWS = 64;
+
+    /** One of the algorithms of {@link IProjection}. */
+    private final int algorithm;
+
+    /** The width of the projected region. */
+    private final int width;
+
+    /** The height of the projected region. */
+    private final int height;
+
+    /** The maximum or sum of the pixels added so far. */
+    private final double[] values;
+
+    /** The number of planes added so far. */
+    private int planeCount;
+
+    /**
+     * Creates a new projection of a region.
+     * @param algorithm One of {@link IProjection#MAXIMUM_INTENSITY},
+     * {@link IProjection#MEAN_INTENSITY} or
+     * {@link IProjection#SUM_INTENSITY}.
+     * @param width The width of the region.
+     * @param height The height of the region.
+     */
+    public StackProjection(int algorithm, int width, int height) {
+        switch (algorithm) {
+            case IProjection.MAXIMUM_INTENSITY:
+            case IProjection.MEAN_INTENSITY:
+            case IProjection.SUM_INTENSITY:
+                break;
+            default:
+                throw new IllegalArgumentException(
+                        "Unknown algorithm: " + algorithm);
+        }
+        this.algorithm = algorithm;
+        this.width = width;
+        this.height = height;
+        this.values = new double[width * height];
+    }
+
+    /**
+     * Adds a plane of the region to the projection.
+     * @param plane The pixels of the region, <code>width * height</code>
+     * pixels.
+     * @param scheduler The scheduler running the bands of rows.
+     */
+    public void add(PixelData plane, RenderingScheduler scheduler) {
+        final boolean max = algorithm == IProjection.MAXIMUM_INTENSITY;
+        int n = Math.max(1, Math.min(scheduler.getThreadCount(),
+                height / MIN_ROWS));
+        int rows = (height + n - 1) / n;
+        List<RenderingTask> tasks = new ArrayList<RenderingTask>(n);
+        for (int row = 0; row < height; row += rows) {
+            tasks.add(new BandTask(plane, values, row * width,
+                    Math.min(height, row + rows) * width, max));
+        }
+        scheduler.execute(tasks.toArray(new RenderingTask[tasks.size()]));
+        planeCount++;
+    }
+
+    /**
+     * Writes the projected region. The maximum starts from <code>0</code>
+     * and the mean or sum is clipped to the maximum of the type of
+     * <code>to</code>.
+     * @param to The pixels to write to.
+     * @param toWidth The width of <code>to</code>.
+     * @param x The X coordinate of the region within <code>to</code>.
+     * @param y The Y coordinate of the region within <code>to</code>.
+     * @param minMax The minimum and maximum projected values so far, updated
+     * with the values of the region, or <code>null</code>.
+     */
+    public void write(PixelData to, int toWidth, int x, int y,
+            double[] minMax) {
+        final boolean max = algorithm == IProjection.MAXIMUM_INTENSITY;
+        final boolean mean = algorithm == IProjection.MEAN_INTENSITY;
+        final double typeMaximum = to.getMaximum();
+        double minimum = minMax == null ? 0 : minMax[0];
+        double maximum = minMax == null ? 0 : minMax[1];
+        for (int row = 0; row < height; row++) {
+            int offset = (y + row) * toWidth + x;
+            for (int col = 0; col < width; col++) {
+                double value = values[row * width + col];
+                if (!max) {
+                    if (mean) {
+                        value = value / planeCount;
+                    }
+                    if (value > typeMaximum) {
+                        value = typeMaximum;
+                    }
+                }
+                to.setPixelValue(offset + col, value);
+                minimum = value < minimum ? value : minimum;
+                maximum = value > maximum ? value : maximum;
+            }
+        }
+        if (minMax != null) {
+            minMax[0] = minimum;
+            minMax[1] = maximum;
+        }
+    }
+
+    /**
+     * Accumulates the values of a band of rows of a plane.
+     */
+    private static class BandTask implements RenderingTask {
+
+        private final PixelData plane;
+
+        private final double[] values;
+
+        private final int start;
+
+        private final int end;
+
+        private final boolean max;
+
+        BandTask(PixelData plane, double[] values, int start, int end,
+                boolean max) {
+            this.plane = plane;
+            this.values = values;
+            this.start = start;
+            this.end = end;
+            this.max = max;
+        }
+
+        public Object call() {
+            final ByteBuffer data = plane.getData();
+            final double[] values = this.values;
+            final boolean signed = plane.isSigned();
+            switch (plane.javaType()) {
+                case PixelData.BYTE:
+                    for (int i = start; i < end; i++) {
+                        final int v = signed ? data.get(i) : data.get(i) & 0xFF;
+                        if (max) {
+                            if (v > values[i]) values[i] = v;
+                        } else {
+                            values[i] += v;
+                        }
+                    }
+                    break;
+                case PixelData.SHORT:
+                    for (int i = start; i < end; i++) {
+                        final int v = signed ? data.getShort(i << 1)
+                                : data.getShort(i << 1) & 0xFFFF;
+                        if (max) {
+                            if (v > values[i]) values[i] = v;
+                        } else {
+                            values[i] += v;
+                        }
+                    }
+                    break;
+                case PixelData.INT:
+                    for (int i = start; i < end; i++) {
+                        final long v = signed ? data.getInt(i << 2)
+                                : data.getInt(i << 2) & 0xFFFFFFFFL;
+                        if (max) {
+                            if (v > values[i]) values[i] = v;
+                        } else {
+                            values[i] += v;
+                        }
+                    }
+                    break;
+                case PixelData.FLOAT:
+                    for (int i = start; i < end; i++) {
+                        final float v = data.getFloat(i << 2);
+                        if (max) {
+                            if (v > values[i]) values[i] = v;
+                        } else {
+                            values[i] += v;
+                        }
+                    }
+                    break;
+                case PixelData.DOUBLE:
+                    for (int i = start; i < end; i++) {
+                        final double v = data.getDouble(i << 3);
+                        if (max) {
+                            if (v > values[i]) values[i] = v;
+                        } else {
+                            values[i] += v;
+                        }
+                    }
+                    break;
+                default:
+                    for (int i = start; i < end; i++) {
+                        final double v = plane.getPixelValue(i);
+                        if (max) {
+                            if (v > values[i]) values[i] = v;
+                        } else {
+                            values[i] += v;
+                        }
+                    }
+            }
+            return null;
+        }
+    }
+}
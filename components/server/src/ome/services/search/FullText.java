@@ -21,7 +21,14 @@ import java.util.Map;
 import ome.conditions.ApiUsageException;
 import ome.model.IAnnotated;
 import ome.model.IObject;
+import ome.model.IGlobal;
 import ome.model.core.Image;
+import ome.model.internal.Permissions;
+import ome.model.internal.Permissions.Right;
+import ome.model.internal.Permissions.Role;
+import ome.model.meta.ExperimenterGroup;
+import ome.services.fulltext.FullTextBridge;
+import ome.system.EventContext;
 import ome.system.ServiceFactory;
 import ome.util.search.InvalidQueryException;
 import ome.util.search.LuceneQueryBuilder;
@@ -30,8 +37,16 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.queryParser.ParseException;
+import org.apache.lucene.index.Term;
 import org.apache.lucene.queryParser.QueryParser;
+import org.apache.lucene.search.BooleanClause.Occur;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.ConstantScoreRangeQuery;
+import org.apache.lucene.search.Filter;
+import org.apache.lucene.search.MatchAllDocsQuery;
 import org.apache.lucene.search.Query;
+import org.apache.lucene.search.QueryWrapperFilter;
+import org.apache.lucene.search.TermQuery;
 import org.hibernate.Criteria;
 import org.hibernate.Session;
 import org.hibernate.criterion.Order;
@@ -70,6 +85,15 @@ public class FullText extends SearchAction {
 
     private final Class<? extends Analyzer> analyzer;
 
+    /** Maximum number of objects loaded per call, all if not positive. */
+    private int pageSize = 0;
+
+    /** Index of the first Lucene hit of the next page. */
+    private int offset = 0;
+
+    /** Whether further pages remain. */
+    private boolean nextPage = false;
+
     /**
      * Constructs a new instance; Builds a Lucence query with the provided
      * arguments and passes it on the Lucene parser
@@ -303,20 +327,82 @@ public class FullText extends SearchAction {
                 ProjectionConstants.ID);
     }
 
+    @Override
+    public void setPageSize(int pageSize) {
+        this.pageSize = pageSize;
+    }
+
+    @Override
+    public boolean hasNextPage() {
+        return nextPage;
+    }
+
     @Transactional(readOnly = true)
     public Object doWork(Session s, ServiceFactory sf) {
 
+        nextPage = false;
         if (q == null) {
             return null;
         }
 
         final Class<?> cls = values.onlyTypes.get(0);
         FullTextSession session = Search.createFullTextSession(s);
-        Criteria criteria = criteria(session);
-        if (criteria == null) {
+        if (criteria(session) == null) {
             return null; // EARLY EXIT. See criteria method.
         }
 
+        // Main query
+        FullTextQuery ftQuery = session.createFullTextQuery(this.q, cls);
+        initializeQuery(ftQuery);
+        Filter visible = visible(s, sf, cls);
+        if (visible != null) {
+            ftQuery.setFilter(visible);
+        }
+
+        if (pageSize <= 0) {
+            List<?> result = ftQuery.list();
+            if (result.size() == 0) {
+                // EARLY EXIT
+                return result; // of wrong type but with generics it doesn't matter
+            }
+            return load(session, result, ftQuery.getResultSize());
+        }
+
+        // Only load the objects of the requested page. Since the criteria
+        // may reject some of the hits, further hits are read until the page
+        // is full.
+        final List<IObject> page = new ArrayList<IObject>();
+        while (page.size() < pageSize) {
+            ftQuery.setFirstResult(offset);
+            ftQuery.setMaxResults(pageSize - page.size());
+            List<?> result = ftQuery.list();
+            int totalSize = ftQuery.getResultSize();
+            offset += result.size();
+            nextPage = result.size() > 0 && offset < totalSize;
+            if (result.size() > 0) {
+                page.addAll(load(session, result, totalSize));
+            }
+            if (!nextPage) {
+                break;
+            }
+        }
+        return page;
+    }
+
+    /**
+     * Loads the objects of the given Lucene hits in the order of the hits.
+     *
+     * @param session
+     * @param result
+     *            The projections of the hits as set by
+     *            {@link #initializeQuery(FullTextQuery)}.
+     * @param totalSize
+     *            The total number of hits.
+     */
+    private List<IObject> load(FullTextSession session, List<?> result,
+            int totalSize) {
+
+        final Class<?> cls = values.onlyTypes.get(0);
         final String ticket975 = "ticket:975 - Wrong return type: %s instead of %s\n"
                 + "Under some circumstances, byFullText and related methods \n"
                 + "like bySomeMustNone can return instances of the wrong \n"
@@ -324,17 +410,6 @@ public class FullText extends SearchAction {
                 + "If you are recieving this error, please try using the \n"
                 + "intersection/union methods to achieve the same results.";
 
-        // Main query
-        FullTextQuery ftQuery = session.createFullTextQuery(this.q, cls);
-        initializeQuery(ftQuery);
-        List<?> result = ftQuery.list();
-        int totalSize = ftQuery.getResultSize();
-
-        if (result.size() == 0) {
-            // EARLY EXIT 
-            return result; // of wrong type but with generics it doesn't matter
-        }
-
         final Map<Long, Integer> order = new HashMap<Long, Integer>();
         final Map<Long, Float> scores = new HashMap<Long, Float>();
         final Map<Long, Object[]> projections = new HashMap<Long, Object[]>();
@@ -355,12 +430,9 @@ public class FullText extends SearchAction {
             for (int i = 0; i < 1000 && ids.size() > 0; i++) {
                 page.add(ids.removeFirst());
             }
-            if (criteria == null) {
-                criteria = criteria(session);
-            }
+            Criteria criteria = criteria(session);
             criteria.add(Restrictions.in("id", page));
             check975.addAll(criteria.list());
-            criteria = null;
         }
 
         for (IObject object : check975) {
@@ -393,6 +465,64 @@ public class FullText extends SearchAction {
         return check975;
     }
 
+    /**
+     * Builds a filter restricting the Lucene hits to the documents which the
+     * current user may read, so that the hits which would be rejected by the
+     * database are neither counted nor loaded. The security filters of the
+     * database still apply when loading the objects. Documents indexed
+     * without the {@link FullTextBridge#GROUP_ID group} field are kept until
+     * they have been re-indexed.
+     *
+     * @return the filter or <code>null</code> if all documents may be read
+     *         or the context is unknown.
+     */
+    private Filter visible(Session session, ServiceFactory sf, Class<?> cls) {
+        if (sf == null || IGlobal.class.isAssignableFrom(cls)) {
+            return null;
+        }
+        final EventContext ec = sf.getAdminService().getEventContext();
+        if (ec.getCurrentShareId() != null) {
+            return null;
+        }
+        final List<Long> groupIds;
+        final Long currentGroupId = ec.getCurrentGroupId();
+        if (currentGroupId != null && currentGroupId >= 0) {
+            groupIds = Collections.singletonList(currentGroupId);
+        } else if (ec.isCurrentUserAdmin()) {
+            return null;
+        } else {
+            groupIds = ec.getMemberOfGroupsList();
+        }
+
+        final BooleanQuery readable = new BooleanQuery();
+        final Term owner = new Term(FullTextBridge.OWNER_ID,
+                ec.getCurrentUserId().toString());
+        final List<Long> leaderOf = ec.getLeaderOfGroupsList();
+        for (Long groupId : groupIds) {
+            final Query inGroup = new TermQuery(new Term(
+                    FullTextBridge.GROUP_ID, groupId.toString()));
+            final ExperimenterGroup group = (ExperimenterGroup)
+                    session.get(ExperimenterGroup.class, groupId);
+            final Permissions perms = group == null ?
+                    null : group.getDetails().getPermissions();
+            if (ec.isCurrentUserAdmin() || leaderOf.contains(groupId) ||
+                    (perms != null && perms.isGranted(Role.GROUP, Right.READ))) {
+                readable.add(inGroup, Occur.SHOULD);
+            } else {
+                final BooleanQuery own = new BooleanQuery();
+                own.add(inGroup, Occur.MUST);
+                own.add(new TermQuery(owner), Occur.MUST);
+                readable.add(own, Occur.SHOULD);
+            }
+        }
+        final BooleanQuery unknown = new BooleanQuery();
+        unknown.add(new MatchAllDocsQuery(), Occur.MUST);
+        unknown.add(new ConstantScoreRangeQuery(FullTextBridge.GROUP_ID,
+                null, null, false, false), Occur.MUST_NOT);
+        readable.add(unknown, Occur.SHOULD);
+        return new QueryWrapperFilter(readable);
+    }
+
     public Float getScore(IObject object) {
         Object o = object.retrieve(ProjectionConstants.SCORE);
         if (o instanceof Float) {
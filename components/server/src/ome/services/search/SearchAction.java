@@ -80,6 +80,32 @@ public abstract class SearchAction implements Serializable,
         this.chainedList = chainedList;
     }
 
+    /**
+     * Limits the number of results returned by each call to
+     * {@link #doWork(org.hibernate.Session, ome.system.ServiceFactory)} so
+     * that the results are loaded one page at a time. Only called on the
+     * actions executed directly by {@link SearchBean}; the actions combined
+     * by {@link Union} and similar are expected to return all their results.
+     * Ignored by default.
+     *
+     * @param pageSize
+     *            Maximum number of results per call, not positive to return
+     *            all the results at once.
+     */
+    public void setPageSize(int pageSize) {
+        // no-op
+    }
+
+    /**
+     * Returns whether the last call to
+     * {@link #doWork(org.hibernate.Session, ome.system.ServiceFactory)}
+     * returned a page of the results and the action should be executed again
+     * for the next one.
+     */
+    public boolean hasNextPage() {
+        return false;
+    }
+
     protected void ids(Criteria criteria) {
         ids(criteria, null, null);
     }
@@ -7,6 +7,7 @@ package ome.services.sessions;
 
 import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
@@ -90,7 +91,7 @@ import com.google.common.collect.MapMaker;
  * @author Josh Moore, josh at glencoesoftware.com
  * @since 3.0-Beta3
  */
-public class SessionManagerImpl implements SessionManager, SessionCache.StaleCacheListener,
+public class SessionManagerImpl implements SessionManager, SessionCache.BatchStaleCacheListener,
         ApplicationContextAware, ApplicationListener<ApplicationEvent> {
 
     public final static String GROUP_SUDO_NS = "openmicroscopy.org/security/group-sudo";
@@ -1089,6 +1090,49 @@ public class SessionManagerImpl implements SessionManager, SessionCache.StaleCac
         return createSessionContext(list, ctx);
     }
 
+    /**
+     * Reloads the given sessions within a single transaction, looking up the
+     * experimenters, groups and memberships shared by several sessions only
+     * once.
+     */
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    public List<SessionContext> reload(final List<SessionContext> contexts) {
+        final List<List> lists = (List<List>) executor.execute(asroot,
+                new Executor.SimpleWork(this, "reload", contexts.size()) {
+            @Transactional(readOnly = true)
+            public Object doWork(org.hibernate.Session session,
+                    ServiceFactory sf) {
+                final LocalAdmin admin = (LocalAdmin) sf.getAdminService();
+                final Map<Long, Experimenter> users = new HashMap<Long, Experimenter>();
+                final Map<Long, ExperimenterGroup> groups = new HashMap<Long, ExperimenterGroup>();
+                final Map<Long, List<?>> memberships = new HashMap<Long, List<?>>();
+                final List<List> rv = new ArrayList<List>(contexts.size());
+                for (SessionContext ctx : contexts) {
+                    /* user and group names may change while the session is open */
+                    Experimenter exp = users.get(ctx.getCurrentUserId());
+                    if (exp == null) {
+                        exp = admin.userProxy(ctx.getCurrentUserId());
+                        users.put(exp.getId(), exp);
+                    }
+                    ExperimenterGroup grp = groups.get(ctx.getCurrentGroupId());
+                    if (grp == null) {
+                        grp = admin.groupProxy(ctx.getCurrentGroupId());
+                        groups.put(grp.getId(), grp);
+                    }
+                    final Principal p = new Principal(exp.getOmeName(), grp.getName(), ctx.getCurrentEventType());
+                    rv.add(executeSessionContextLookup(sf, p, exp, grp, ctx.getSession(), memberships));
+                }
+                return rv;
+            }
+        });
+        final List<SessionContext> replacements = new ArrayList<SessionContext>(contexts.size());
+        for (int i = 0; i < contexts.size(); i++) {
+            final List list = lists.get(i);
+            replacements.add(list == null ? null : createSessionContext(list, contexts.get(i)));
+        }
+        return replacements;
+    }
+
     // Executor methods
     // =========================================================================
 
@@ -1353,17 +1397,36 @@ public class SessionManagerImpl implements SessionManager, SessionCache.StaleCac
      */
     private List<Object> executeSessionContextLookup(ServiceFactory sf,
             Principal principal, Experimenter exp, ExperimenterGroup grp, Session session) {
+        return executeSessionContextLookup(sf, principal, exp, grp, session,
+                new HashMap<Long, List<?>>());
+    }
+
+    /**
+     * Like {@link #executeSessionContextLookup(ServiceFactory, Principal, Experimenter, ExperimenterGroup, Session)}
+     * but reuses the memberships already looked up within the same
+     * transaction.
+     *
+     * @param memberships the member of and leader of group ids and the roles
+     *            of the experimenters already looked up, by experimenter id
+     */
+    @SuppressWarnings("unchecked")
+    private List<Object> executeSessionContextLookup(ServiceFactory sf,
+            Principal principal, Experimenter exp, ExperimenterGroup grp, Session session,
+            Map<Long, List<?>> memberships) {
         try {
             List<Object> list = new ArrayList<Object>();
             LocalAdmin admin = (LocalAdmin) sf.getAdminService();
-            final List<Long> memberOfGroupsIds = admin.getMemberOfGroupIds(exp);
-            final List<Long> leaderOfGroupsIds = admin.getLeaderOfGroupIds(exp);
-            final List<String> userRoles = admin.getUserRoles(exp);
+            final List<?> membership = lookupMemberships(admin, exp, memberships);
+            final List<Long> memberOfGroupsIds = (List<Long>) membership.get(0);
+            final List<Long> leaderOfGroupsIds = (List<Long>) membership.get(1);
+            final List<String> userRoles = (List<String>) membership.get(2);
             final Session reloaded = sessionProvider.findSessionById(session.getId(), sf);
             final Experimenter sudoer = reloaded.getSudoer();
             boolean hasAdminPrivileges = memberOfGroupsIds.contains(roles.getSystemGroupId());
             if (sudoer != null) {
-                hasAdminPrivileges = hasAdminPrivileges && admin.getMemberOfGroupIds(sudoer).contains(roles.getSystemGroupId());
+                final List<Long> sudoerGroupIds = (List<Long>)
+                        lookupMemberships(admin, sudoer, memberships).get(0);
+                hasAdminPrivileges = hasAdminPrivileges && sudoerGroupIds.contains(roles.getSystemGroupId());
             }
             list.add(exp);
             list.add(grp);
@@ -1380,6 +1443,21 @@ public class SessionManagerImpl implements SessionManager, SessionCache.StaleCac
         }
     }
 
+    /**
+     * Returns the member of and leader of group ids and the roles of the
+     * given experimenter, looking them up if not already in the given map.
+     */
+    private List<?> lookupMemberships(LocalAdmin admin, Experimenter exp,
+            Map<Long, List<?>> memberships) {
+        List<?> membership = memberships.get(exp.getId());
+        if (membership == null) {
+            membership = Arrays.asList(admin.getMemberOfGroupIds(exp),
+                    admin.getLeaderOfGroupIds(exp), admin.getUserRoles(exp));
+            memberships.put(exp.getId(), membership);
+        }
+        return membership;
+    }
+
     private Share newShare() {
         Share share = new Share();
         share.putAt("#2733", "ALLOW");
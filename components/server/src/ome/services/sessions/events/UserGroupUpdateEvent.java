@@ -5,6 +5,9 @@
 
 package ome.services.sessions.events;
 
+import java.util.Collections;
+import java.util.Set;
+
 import ome.model.meta.Experimenter;
 import ome.model.meta.ExperimenterGroup;
 import ome.model.meta.GroupExperimenterMap;
@@ -17,15 +20,67 @@ import ome.util.messages.InternalMessage;
  * {@link Experimenter}, {@link ExperimenterGroup}, or
  * {@link GroupExperimenterMap} is inserted or updated.
  * 
- * This signals the {@link SessionManager} to update its cache.
+ * This signals the {@link SessionManager} to update its cache. If the ids of
+ * the modified users and groups are known, only the sessions which depend on
+ * them need to be reloaded; otherwise all the sessions are reloaded.
  * 
  * @author Josh Moore, josh at glencoesoftware.com
  * @since 3.0-Beta3
  */
 public class UserGroupUpdateEvent extends InternalMessage {
 
+    private final Set<Long> userIds;
+
+    private final Set<Long> groupIds;
+
+    /**
+     * Signals a modification of unknown users or groups.
+     */
     public UserGroupUpdateEvent(Object source) {
         super(source);
+        this.userIds = null;
+        this.groupIds = null;
+    }
+
+    /**
+     * Signals a modification of the given users and groups.
+     *
+     * @param userIds the ids of the modified experimenters, including those
+     *            whose group memberships were modified
+     * @param groupIds the ids of the modified groups
+     * @since 5.5.0
+     */
+    public UserGroupUpdateEvent(Object source, Set<Long> userIds,
+            Set<Long> groupIds) {
+        super(source);
+        this.userIds = Collections.unmodifiableSet(userIds);
+        this.groupIds = Collections.unmodifiableSet(groupIds);
+    }
+
+    /**
+     * Returns <code>true</code> if the modified users and groups are known.
+     * @since 5.5.0
+     */
+    public boolean isTargeted() {
+        return userIds != null && groupIds != null;
+    }
+
+    /**
+     * Returns the ids of the modified users or <code>null</code> if not
+     * {@link #isTargeted() targeted}.
+     * @since 5.5.0
+     */
+    public Set<Long> getUserIds() {
+        return userIds;
+    }
+
+    /**
+     * Returns the ids of the modified groups or <code>null</code> if not
+     * {@link #isTargeted() targeted}.
+     * @since 5.5.0
+     */
+    public Set<Long> getGroupIds() {
+        return groupIds;
     }
 
     private static final long serialVersionUID = 1L;
@@ -5,18 +5,25 @@
 package ome.services.sessions.state;
 
 import java.sql.Timestamp;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
 
 import net.sf.ehcache.CacheManager;
 import net.sf.ehcache.Ehcache;
 import ome.conditions.ApiUsageException;
 import ome.conditions.RemovedSessionException;
 import ome.conditions.SessionTimeoutException;
+import ome.model.meta.Experimenter;
 import ome.model.meta.Session;
 import ome.services.messages.DestroySessionMessage;
 import ome.services.sessions.SessionCallback;
@@ -24,6 +31,10 @@ import ome.services.sessions.SessionContext;
 import ome.services.sessions.SessionManager;
 import ome.services.sessions.events.UserGroupUpdateEvent;
 import ome.system.OmeroContext;
+import ome.system.metrics.Histogram;
+import ome.system.metrics.Metrics;
+import ome.system.metrics.NullMetrics;
+import ome.system.metrics.Timer;
 
 import org.perf4j.StopWatch;
 import org.perf4j.slf4j.Slf4JStopWatch;
@@ -35,6 +46,7 @@ import org.springframework.context.ApplicationContextAware;
 
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.MapMaker;
+import com.google.common.collect.Sets;
 
 /**
  * Synchronized and lockable state for the {@link SessionManager}. Maps from
@@ -70,11 +82,32 @@ public class SessionCache implements ApplicationContextAware {
     }
 
     /**
-     * Container which can be put in a single {@link AtomicReference} instance.
-     * Contains all the data for a single session immutably. Therefore any
-     * thread that manages to get access to this instance can work with this
-     * data even if another thread is currently in the process of removing this
-     * from the map.
+     * {@link StaleCacheListener} which can reload several sessions at once,
+     * for instance within a single transaction.
+     *
+     * @since 5.5.0
+     */
+    public interface BatchStaleCacheListener extends StaleCacheListener {
+
+        /**
+         * Method called for batches of the sessions to reload. The returned
+         * list must hold the replacement of each {@link SessionContext} in
+         * the same order, <code>null</code> if the session should be removed.
+         *
+         * Any runtime exception can be thrown to show that the batch could
+         * not be reloaded, the sessions are then reloaded one by one via
+         * {@link #reload(SessionContext)}.
+         */
+        List<SessionContext> reload(List<SessionContext> contexts);
+    }
+
+    /**
+     * Contains all the data for a single session. The {@link SessionContext}
+     * is immutable and is replaced by putting a new instance in the map on
+     * reload. The access information is updated in place so that looking up
+     * a session does not allocate. Any thread that manages to get access to
+     * this instance can work with this data even if another thread is
+     * currently in the process of removing this from the map.
      */
     private static class Data {
 
@@ -92,55 +125,66 @@ public class SessionCache implements ApplicationContextAware {
         final AtomicInteger error = new AtomicInteger(0);
 
         final SessionContext sessionContext;
-        final long lastAccessTime;
-        final long hitCount;
 
         /**
-         * Initial creation of a Data instance when a new session is
-         * added to the cache.
+         * Time of the last access, updated by {@link #touch()}.
          */
-        Data(SessionContext sc) {
-            this(sc, System.currentTimeMillis(), 1);
-        }
+        private volatile long lastAccessTime;
 
         /**
-         * Copy constructor which uses the current time for {@link #lastAccessTime} and
-         * increments {@link #hitCount} by one. Used when updating the access
-         * time for a session.
+         * Number of accesses, a {@link LongAdder} so that concurrent
+         * lookups of the same session do not contend.
          */
-        Data(Data old) {
-            this(old, true);
-        }
+        private final LongAdder hitCount = new LongAdder();
 
         /**
-         * Copy constructor which uses either the current time for {@link #lastAccessTime}
-         * (if reset is true) or the previous lastAccessTime (if reset is false); and
-         * increments {@link #hitCount} by one. Used when reloading the session.
+         * Initial creation of a Data instance when a new session is
+         * added to the cache.
          */
-        Data(Data old, boolean reset) {
-            this(old, old.sessionContext, reset);
+        Data(SessionContext sc) {
+            this(sc, System.currentTimeMillis(), 1);
         }
 
         /**
-         * Like {@link Data#Data(Data, boolean)} but allows setting the
-         * {@link SessionContext} which should be stored in the new instance.
-         * This is used on reload. See {@link SessionCache#doUpdate()}.
-         * @param old
-         * @param ctx
-         * @param reset
+         * Creates the instance storing the given {@link SessionContext}
+         * which keeps the previous lastAccessTime and increments the hit
+         * count by one. This is used on reload. See
+         * {@link SessionCache#doUpdate()}.
          */
-        Data(Data old, SessionContext ctx, boolean reset) {
-            this(ctx, reset ? System.currentTimeMillis() : old.lastAccessTime, old.hitCount+1);
+        Data(Data old, SessionContext ctx) {
+            this(ctx, old.lastAccessTime, old.getHitCount() + 1);
         }
 
         Data(SessionContext sc, long last, long count) {
             this.sessionContext = sc;
             this.lastAccessTime = last;
-            this.hitCount = count;
+            this.hitCount.add(count);
             // clear context
             sc.getSession().getDetails().setContexts(null);
         }
 
+        /**
+         * Uses the current time for the last access time and increments the
+         * hit count by one. Used when accessing the session.
+         */
+        void touch() {
+            final long now = System.currentTimeMillis();
+            if (lastAccessTime != now) {
+                // Avoids invalidating the cache line of other readers
+                // when called repeatedly within the same millisecond.
+                lastAccessTime = now;
+            }
+            hitCount.increment();
+        }
+
+        long getLastAccessTime() {
+            return lastAccessTime;
+        }
+
+        long getHitCount() {
+            return hitCount.sum();
+        }
+
     }
 
     /**
@@ -185,6 +229,16 @@ public class SessionCache implements ApplicationContextAware {
             this.lastUpdateRequest = request;
         }
 
+        /**
+         * Completion constructor for State, which is used when a full
+         * synchronization which started at the given time has finished. The
+         * requests received since then still cause another synchronization.
+         */
+        State(long run, State old) {
+            this.lastUpdateRun = run;
+            this.lastUpdateRequest = old.lastUpdateRequest;
+        }
+
 
         /**
          * Whether or not {@link #doUpdate()} should run. Returns immediately
@@ -215,13 +269,39 @@ public class SessionCache implements ApplicationContextAware {
     /**
      *
      */
-    private final Map<String, Data> sessions;
+    private final ConcurrentMap<String, Data> sessions;
 
     /**
      *
      */
     private final AtomicReference<State> state = new AtomicReference<State>(new State());
 
+    /**
+     * Ids of the users modified since the last call to {@link #doUpdate()}
+     * by a targeted {@link UserGroupUpdateEvent}.
+     */
+    private final Set<Long> staleUserIds =
+            Sets.newSetFromMap(new ConcurrentHashMap<Long, Boolean>());
+
+    /**
+     * Ids of the groups modified since the last call to {@link #doUpdate()}
+     * by a targeted {@link UserGroupUpdateEvent}.
+     */
+    private final Set<Long> staleGroupIds =
+            Sets.newSetFromMap(new ConcurrentHashMap<Long, Boolean>());
+
+    /**
+     * Maximum number of sessions passed at once to a
+     * {@link BatchStaleCacheListener}.
+     */
+    private int reloadBatchSize = 100;
+
+    private Timer fullSyncTimer;
+
+    private Timer targetedSyncTimer;
+
+    private Histogram reloadedSessions;
+
     /**
      * Time in milliseconds between updates. Can be set via
      * {@link #setUpdateInterval(long)} but has a non-null value just in case
@@ -256,6 +336,25 @@ public class SessionCache implements ApplicationContextAware {
         final MapMaker mapMaker = new MapMaker();
         sessions = mapMaker.makeMap();
         sessionCallbackMap = mapMaker.makeMap();
+        setMetrics(new NullMetrics());
+    }
+
+    /**
+     * Injects the {@link Metrics} used to time the synchronizations and
+     * count the sessions reloaded.
+     */
+    public void setMetrics(Metrics metrics) {
+        fullSyncTimer = metrics.timer(this, "fullSync");
+        targetedSyncTimer = metrics.timer(this, "targetedSync");
+        reloadedSessions = metrics.histogram(this, "reloadedSessions");
+    }
+
+    /**
+     * Inject the maximum number of sessions reloaded at once by a
+     * {@link BatchStaleCacheListener}.
+     */
+    public void setReloadBatchSize(int reloadBatchSize) {
+        this.reloadBatchSize = Math.max(1, reloadBatchSize);
     }
 
     /**
@@ -341,8 +440,10 @@ public class SessionCache implements ApplicationContextAware {
      */
     private void refresh(String uuid, Data data, SessionContext replacement) {
         // Adding and upping hit information.
-        Data fresh = new Data(data, replacement, false);
-        this.sessions.put(uuid, fresh);
+        Data fresh = new Data(data, replacement);
+        // Only replaces the instance which was reloaded, which may have been
+        // removed in the meantime.
+        this.sessions.replace(uuid, data, fresh);
     }
 
     /**
@@ -369,7 +470,7 @@ public class SessionCache implements ApplicationContextAware {
 
         if (!quietly) {
             // Up'ing access time
-            this.sessions.put(uuid, new Data(data));
+            data.touch();
         }
         return data.sessionContext;
     }
@@ -391,14 +492,14 @@ public class SessionCache implements ApplicationContextAware {
 
         if (!quietly) {
             // Up'ing access time
-            this.sessions.put(uuid, new Data(data));
+            data.touch();
         }
 
         return new ImmutableMap.Builder<String, Object>()
             .put("class", getClass().getName())
             .put("sessionContext", data.sessionContext)
-            .put("hitCount", data.hitCount)
-            .put("lastAccessTime", data.lastAccessTime)
+            .put("hitCount", data.getHitCount())
+            .put("lastAccessTime", data.getLastAccessTime())
             // .put("error", data.error.get())
             .build();
     }
@@ -435,8 +536,7 @@ public class SessionCache implements ApplicationContextAware {
             }
         }
 
-        long lastAccess = data.lastAccessTime;
-        long hits = data.hitCount;
+        long lastAccess = data.getLastAccessTime();
 
         // Get session info
         SessionContext ctx = data.sessionContext;
@@ -456,7 +556,7 @@ public class SessionCache implements ApplicationContextAware {
 
         // Do comparisons if timeTo{} is non-0
         if (0 < timeToLive && timeToLive < alive) {
-            String reason = reason("timeToLive", lastAccess, hits, start,
+            String reason = reason("timeToLive", lastAccess, data.getHitCount(), start,
                     timeToLive, (alive - timeToLive));
             if (strict) {
                 throw new SessionTimeoutException(reason, ctx);
@@ -464,7 +564,7 @@ public class SessionCache implements ApplicationContextAware {
                 return null;
             }
         } else if (0 < timeToIdle && timeToIdle < idle) {
-            String reason = reason("timeToIdle", lastAccess, hits, start,
+            String reason = reason("timeToIdle", lastAccess, data.getHitCount(), start,
                     timeToIdle, (idle - timeToIdle));
             if (strict) {
                 throw new SessionTimeoutException(reason, ctx);
@@ -585,8 +685,18 @@ public class SessionCache implements ApplicationContextAware {
      * Adds a new entry to {@link #state}. If the
      * timestamp on the event is invalid, then
      * {@link System#currentTimeMillis()} will be used.
+     *
+     * If the event is {@link UserGroupUpdateEvent#isTargeted() targeted},
+     * only the ids of the modified users and groups are recorded so that the
+     * next {@link #doUpdate()} reloads the dependent sessions only.
      */
     public void updateEvent(UserGroupUpdateEvent ugue) {
+        if (ugue != null && ugue.isTargeted()) {
+            staleUserIds.addAll(ugue.getUserIds());
+            staleGroupIds.addAll(ugue.getGroupIds());
+            return;
+        }
+
         long time = 0;
         if (ugue == null || ugue.getTimestamp() > System.currentTimeMillis()) {
             time = System.currentTimeMillis();
@@ -603,14 +713,15 @@ public class SessionCache implements ApplicationContextAware {
      * time again in case a second write thread was blocking the current one.
      * {@link #active} gets set to <code>true</code> value to specify that this
      * method is currently running.
+     *
+     * All the sessions are reloaded if an untargeted update was requested or
+     * if the forced update interval has passed. Otherwise, only the sessions
+     * depending on the users and groups recorded by
+     * {@link #updateEvent(UserGroupUpdateEvent)} are reloaded. In both cases
+     * the sessions which have timed out are removed.
      */
     public void doUpdate() {
 
-        // Check whether entry is required.
-        if (!state.get().checkNeedsUpdate(forceUpdateInterval)) {
-            return;
-        }
-
         // Prevent recursion!
         // ------------------
         // To prevent another call from entering this block it's
@@ -620,17 +731,50 @@ public class SessionCache implements ApplicationContextAware {
         }
 
         try {
+            final long start = System.currentTimeMillis();
+            final boolean full = state.get().checkNeedsUpdate(forceUpdateInterval);
+            final Set<Long> userIds = drain(staleUserIds);
+            final Set<Long> groupIds = drain(staleGroupIds);
+            if (!full && userIds.isEmpty() && groupIds.isEmpty()) {
+                removeTimedOut();
+                return;
+            }
+
             final Set<String> ids = sessions.keySet();
-            log.info("Synchronizing session cache. Count = " + ids.size());
-            final StopWatch sw = new Slf4JStopWatch();
+            final List<String> stale = new ArrayList<String>();
             for (String id : ids) {
-                reload(id);
+                final Data data = sessions.get(id);
+                if (data != null && (full ||
+                        dependsOn(data.sessionContext, userIds, groupIds))) {
+                    stale.add(id);
+                }
             }
 
+            log.info(String.format("Synchronizing session cache (%s). "
+                    + "Count = %s of %s", full ? "full" : "targeted",
+                    stale.size(), ids.size()));
+            final StopWatch sw = new Slf4JStopWatch();
+            final Timer.Context timer =
+                    (full ? fullSyncTimer : targetedSyncTimer).time();
+            try {
+                reload(stale);
+            } finally {
+                timer.stop();
+            }
+            reloadedSessions.update(stale.size());
+            removeTimedOut();
+
             sw.stop("omero.sessions.synchronization");
             log.info(String.format("Synchronization took %s ms.",
                     sw.getElapsedTime()));
 
+            if (full) {
+                State old;
+                do {
+                    old = state.get();
+                } while (!state.compareAndSet(old, new State(start, old)));
+            }
+
         } catch (Exception e) {
             log.error("Error synchronizing cache", e);
         } finally {
@@ -639,6 +783,128 @@ public class SessionCache implements ApplicationContextAware {
 
     }
 
+    /**
+     * Removes and returns the ids currently in the given set.
+     */
+    private static Set<Long> drain(Set<Long> ids) {
+        final Set<Long> drained = new HashSet<Long>();
+        final Iterator<Long> it = ids.iterator();
+        while (it.hasNext()) {
+            drained.add(it.next());
+            it.remove();
+        }
+        return drained;
+    }
+
+    /**
+     * Whether the given session must be reloaded after a modification of the
+     * given users and groups. If the session cannot be checked, it is
+     * reloaded.
+     */
+    private static boolean dependsOn(SessionContext ctx, Set<Long> userIds,
+            Set<Long> groupIds) {
+        try {
+            if (userIds.contains(ctx.getCurrentUserId())
+                    || groupIds.contains(ctx.getCurrentGroupId())) {
+                return true;
+            }
+            final Experimenter sudoer = ctx.getSession().getSudoer();
+            return sudoer != null && userIds.contains(sudoer.getId());
+        } catch (RuntimeException e) {
+            return true;
+        }
+    }
+
+    /**
+     * Removes the sessions which have timed out without reloading the others.
+     * No database calls are made.
+     */
+    private void removeTimedOut() {
+        for (String id : sessions.keySet()) {
+            try {
+                if (getDataNullOrThrowOnTimeout(id, false) == null
+                        && sessions.containsKey(id)) {
+                    internalRemove(id, "Timeout");
+                }
+            } catch (Exception e) {
+                log.warn("Removing session on get error of " + id, e);
+                internalRemove(id, "Get error");
+            }
+        }
+    }
+
+    /**
+     * Reloads the given sessions, in batches if the
+     * {@link StaleCacheListener} is a {@link BatchStaleCacheListener}.
+     */
+    private void reload(List<String> ids) {
+        final StaleCacheListener listener = staleCacheListener.get();
+        if (!(listener instanceof BatchStaleCacheListener)) {
+            for (String id : ids) {
+                reload(id);
+            }
+            return;
+        }
+
+        for (int i = 0; i < ids.size(); i += reloadBatchSize) {
+            final List<String> batch =
+                    ids.subList(i, Math.min(ids.size(), i + reloadBatchSize));
+            final List<String> uuids = new ArrayList<String>(batch.size());
+            final List<Data> datas = new ArrayList<Data>(batch.size());
+            final List<SessionContext> contexts =
+                    new ArrayList<SessionContext>(batch.size());
+            for (String id : batch) {
+                final Data data;
+                try {
+                    data = getDataNullOrThrowOnTimeout(id, false);
+                } catch (Exception e) {
+                    log.warn("Removing session on get error of " + id, e);
+                    internalRemove(id, "Get error");
+                    continue;
+                }
+                if (data == null) {
+                    if (sessions.containsKey(id)) {
+                        internalRemove(id, "Timeout");
+                    }
+                    continue;
+                }
+                uuids.add(id);
+                datas.add(data);
+                contexts.add(data.sessionContext);
+            }
+            if (contexts.isEmpty()) {
+                continue;
+            }
+
+            final List<SessionContext> replacements;
+            try {
+                replacements =
+                        ((BatchStaleCacheListener) listener).reload(contexts);
+                if (replacements == null
+                        || replacements.size() != contexts.size()) {
+                    throw new IllegalStateException(
+                            "Wrong number of replacements");
+                }
+            } catch (Exception e) {
+                log.warn("Error reloading batch of " + contexts.size()
+                        + " sessions, reloading one by one", e);
+                for (String id : uuids) {
+                    reload(id);
+                }
+                continue;
+            }
+
+            for (int j = 0; j < uuids.size(); j++) {
+                final SessionContext replacement = replacements.get(j);
+                if (replacement == null) {
+                    internalRemove(uuids.get(j), "Replacement null");
+                } else {
+                    refresh(uuids.get(j), datas.get(j), replacement);
+                }
+            }
+        }
+    }
+
     /**
      * Provides the reloading logic of the {@link SessionCache} for the
      * {@link ome.services.sessions.SessionManagerImpl} to use.
@@ -36,7 +36,11 @@ import ome.model.internal.Permissions;
 import ome.model.meta.Experimenter;
 import ome.model.meta.ExperimenterGroup;
 import ome.parameters.Parameters;
+import ome.services.fulltext.FullTextAnalyzer;
+import ome.services.search.FullText;
+import ome.services.search.SearchValues;
 import ome.services.util.Executor;
+import ome.system.EventContext;
 import ome.system.Principal;
 import ome.system.ServiceFactory;
 import ome.server.itests.FileUploader;
@@ -1647,6 +1651,69 @@ public class SearchTest extends AbstractTest {
         assertResults(search, 2);
     }
 
+    /**
+     * The hits which other users' objects would give in a private group or
+     * in another group are filtered out by Lucene, so that they are neither
+     * counted nor take the place of visible hits in a page.
+     */
+    @Test
+    public void testPagesOnlyContainVisibleHits() {
+        final String uuid = uuid();
+
+        // Private objects of another member of the group
+        Experimenter user1 = loginNewUser(Permissions.USER_PRIVATE);
+        saveAndIndexImages(uuid, 3);
+
+        // Objects of another group
+        loginNewUser(Permissions.COLLAB_READONLY);
+        saveAndIndexImages(uuid, 3);
+
+        Experimenter user2 = loginNewUserInOtherUsersGroup(user1);
+        saveAndIndexImages(uuid, 3);
+
+        final EventContext ec = this.iAdmin.getEventContext();
+        final Principal p = new Principal(ec.getCurrentSessionUuid(),
+                ec.getCurrentGroupName(), "Test");
+        final SearchValues values = new SearchValues();
+        values.onlyTypes = new ArrayList<Class>(Arrays.asList(Image.class));
+        final FullText fullText = new FullText(values, uuid,
+                FullTextAnalyzer.class);
+        fullText.setPageSize(2);
+        List<IObject> page = (List<IObject>) getExecutor().execute(p,
+                fullText);
+        assertEquals(2, page.size());
+        for (IObject obj : page) {
+            assertEquals(user2.getId(), obj.getDetails().getOwner().getId());
+            assertEquals(Integer.valueOf(3), fullText.getTotalSize(obj));
+        }
+        assertTrue(fullText.hasNextPage());
+        page = (List<IObject>) getExecutor().execute(p, fullText);
+        assertEquals(1, page.size());
+        assertFalse(fullText.hasNextPage());
+
+        // And the same through the search service
+        Search search = this.factory.createSearchService();
+        search.onlyType(Image.class);
+        search.setBatchSize(2);
+        search.byFullText(uuid);
+        List<IObject> results = new ArrayList<IObject>();
+        results.addAll(search.<IObject>results());
+        assertEquals(2, results.size());
+        results.addAll(search.<IObject>results());
+        assertEquals(3, results.size());
+        for (IObject obj : results) {
+            assertEquals(user2.getId(), obj.getDetails().getOwner().getId());
+        }
+        assertFalse(search.hasNext());
+    }
+
+    private void saveAndIndexImages(String name, int count) {
+        for (int j = 0; j < count; j++) {
+            Image image = this.iUpdate.saveAndReturnObject(new Image(name));
+            this.iUpdate.indexObject(image);
+        }
+    }
+
     @Test
     public void testOrderBy() throws Exception {
         String uuid = uuid();
@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2018 University of Dundee & Open Microscopy Environment.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package ome.server.utests;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import ome.model.core.Image;
+import ome.model.meta.EventLog;
+import ome.services.eventlogs.EventLogLoader;
+import ome.services.fulltext.FullTextIndexer;
+
+import org.hibernate.search.FullTextSession;
+import org.jmock.Mock;
+import org.jmock.MockObjectTestCase;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Checks that {@link FullTextIndexer#doIndexing(FullTextSession)} handles
+ * one batch of the {@link EventLogLoader} per call, flushing the session
+ * once per batch, including the last partial batch.
+ *
+ * @since 5.5.0
+ */
+@Test(groups = { "query", "fulltext" })
+public class FullTextIndexerTest extends MockObjectTestCase {
+
+    private ListLogLoader loader;
+
+    private FullTextIndexer indexer;
+
+    private Mock session;
+
+    @BeforeMethod
+    public void setup() {
+        loader = new ListLogLoader();
+        loader.setBatchSize(3);
+        indexer = new FullTextIndexer(loader);
+        session = mock(FullTextSession.class);
+    }
+
+    public void testEveryBatchIsFlushed() {
+        for (long id = 1; id <= 7; id++) {
+            loader.logs.add(delete(id));
+        }
+        assertBatch(1, 2, 3);
+        assertBatch(4, 5, 6);
+        // The last batch is not full
+        assertBatch(7);
+        assertBatch();
+    }
+
+    /**
+     * Indexes a batch and checks that the images of the given ids were
+     * purged and the session flushed, only if any logs were handled.
+     */
+    private void assertBatch(long... ids) {
+        session.reset();
+        for (long id : ids) {
+            session.expects(once()).method("purge")
+                    .with(eq(Image.class), eq(Long.valueOf(id)));
+            session.expects(once()).method("flushToIndexes");
+        }
+        if (ids.length > 0) {
+            session.expects(once()).method("flush");
+        }
+        assertEquals(ids.length,
+                indexer.doIndexing((FullTextSession) session.proxy()));
+        session.verify();
+    }
+
+    private static EventLog delete(long id) {
+        EventLog el = new EventLog();
+        el.setAction("DELETE");
+        el.setEntityType(Image.class.getName());
+        el.setEntityId(id);
+        return el;
+    }
+
+    private static class ListLogLoader extends EventLogLoader {
+        final List<EventLog> logs = new ArrayList<EventLog>();
+
+        @Override
+        protected EventLog query() {
+            return logs.isEmpty() ? null : logs.remove(0);
+        }
+
+        @Override
+        public long more() {
+            return logs.size();
+        }
+    }
+}
@@ -107,6 +107,47 @@ public class SearchBeanTest extends MockObjectTestCase {
         assertEquals(4, bean.results().size());
     }
 
+    @Test
+    public void testPagedAction() {
+        bean = new SearchBean(executor, analyzer);
+        final List<Integer> pageSizes = new ArrayList<Integer>();
+        bean.addAction(new SearchAction(new SearchValues()) {
+
+            int remaining = 5;
+
+            int pageSize;
+
+            @Override
+            public void setPageSize(int pageSize) {
+                this.pageSize = pageSize;
+            }
+
+            @Override
+            public boolean hasNextPage() {
+                return remaining > 0;
+            }
+
+            public Object doWork(Session session, ServiceFactory sf) {
+                pageSizes.add(pageSize);
+                List<IObject> rv = new ArrayList<IObject>();
+                for (int i = 0; i < pageSize && remaining > 0; i++) {
+                    rv.add(new Image());
+                    remaining--;
+                }
+                return rv;
+            }
+        });
+        bean.setBatchSize(2);
+        assertEquals(2, bean.results().size());
+        assertEquals(1, pageSizes.size());
+        assertTrue(bean.activeQueries() == 1);
+        assertEquals(2, bean.results().size());
+        assertEquals(1, bean.results().size());
+        assertFalse(bean.hasNext());
+        assertTrue(bean.activeQueries() == 0);
+        assertEquals(Arrays.asList(2, 2, 2), pageSizes);
+    }
+
     @Test
     public void testUnloaded() {
         bean = new SearchBean(executor, analyzer);
@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2018 University of Dundee & Open Microscopy Environment.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package ome.server.utests.sec;
+
+import java.util.Collections;
+
+import ome.model.core.Image;
+import ome.model.internal.Permissions;
+import ome.model.meta.ExperimenterGroup;
+import ome.security.basic.GroupPermissionsCache;
+import ome.services.messages.EventLogMessage;
+import ome.system.metrics.DefaultMetrics;
+import ome.util.SqlAction;
+import ome.util.Utils;
+
+import org.jmock.Mock;
+import org.jmock.MockObjectTestCase;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Tests the lookups and the invalidation of {@link GroupPermissionsCache}.
+ * @since 5.5.0
+ */
+@Test
+public class GroupPermissionsCacheTest extends MockObjectTestCase {
+
+    Mock mockSql;
+
+    GroupPermissionsCache cache;
+
+    @BeforeMethod
+    public void setup() {
+        mockSql = mock(SqlAction.class);
+        cache = new GroupPermissionsCache((SqlAction) mockSql.proxy(),
+                new DefaultMetrics());
+    }
+
+    private void expectLoad(Permissions p) {
+        mockSql.expects(once()).method("getGroupPermissions")
+                .with(eq(3L)).will(returnValue(Utils.internalForm(p)));
+    }
+
+    private EventLogMessage message(String action,
+            Class<? extends ome.model.IObject> type) {
+        return new EventLogMessage(this, action, type,
+                Collections.singletonList(3L));
+    }
+
+    @Test
+    public void testPermissionsAreCached() {
+        expectLoad(Permissions.GROUP_READABLE);
+        assertTrue(cache.getPermissions(3L).sameRights(
+                Permissions.GROUP_READABLE));
+        assertTrue(cache.getPermissions(3L).sameRights(
+                Permissions.GROUP_READABLE));
+        mockSql.verify();
+        assertEquals(1, cache.getMisses());
+        assertEquals(1, cache.getHits());
+    }
+
+    @Test
+    public void testChmodInvalidates() {
+        expectLoad(Permissions.GROUP_PRIVATE);
+        assertTrue(cache.getPermissions(3L).sameRights(
+                Permissions.GROUP_PRIVATE));
+        cache.onApplicationEvent(message("CHMOD(rwr---)",
+                ExperimenterGroup.class));
+        expectLoad(Permissions.GROUP_READABLE);
+        assertTrue(cache.getPermissions(3L).sameRights(
+                Permissions.GROUP_READABLE));
+        mockSql.verify();
+        assertEquals(2, cache.getMisses());
+    }
+
+    @Test
+    public void testOtherEventsAreIgnored() {
+        expectLoad(Permissions.GROUP_PRIVATE);
+        cache.getPermissions(3L);
+        cache.onApplicationEvent(message("CHMOD(rwr---)", Image.class));
+        cache.onApplicationEvent(message("UPDATE", ExperimenterGroup.class));
+        cache.getPermissions(3L);
+        mockSql.verify();
+        assertEquals(2, cache.getHits() + cache.getMisses());
+        assertEquals(1, cache.getMisses());
+    }
+}
@@ -6,6 +6,7 @@
 package ome.server.utests.sessions;
 
 import java.sql.Timestamp;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
@@ -23,12 +24,14 @@ import ome.conditions.RemovedSessionException;
 import ome.conditions.SessionException;
 import ome.conditions.SessionTimeoutException;
 import ome.model.internal.Permissions;
+import ome.model.meta.Experimenter;
 import ome.model.meta.ExperimenterGroup;
 import ome.model.meta.Session;
 import ome.services.sessions.SessionCallback;
 import ome.services.sessions.SessionContext;
 import ome.services.sessions.SessionContextImpl;
 import ome.services.sessions.events.UserGroupUpdateEvent;
+import ome.services.sessions.state.SessionCache.BatchStaleCacheListener;
 import ome.services.sessions.state.SessionCache.StaleCacheListener;
 import ome.services.sessions.state.SessionCache;
 import ome.services.sessions.stats.NullSessionStats;
@@ -354,6 +357,51 @@ public class SessionCacheTest extends TestCase {
         }
     }
 
+    @Test
+    public void testTargetedUpdateOnlyReloadsDependentSessions()
+            throws Exception {
+        final Session s1 = sess();
+        final Session s2 = sess();
+        s1.getDetails().setOwner(new Experimenter(1L, false));
+        s2.getDetails().setOwner(new Experimenter(2L, false));
+        cache.putSession(s1.getUuid(), sc(s1));
+        cache.putSession(s2.getUuid(), sc(s2));
+        final RecordingStaleCacheListener stale =
+                new RecordingStaleCacheListener();
+        cache.setStaleCacheListener(stale);
+
+        cache.doUpdate();
+        assertTrue(stale.reloaded.isEmpty());
+
+        cache.updateEvent(new UserGroupUpdateEvent(this,
+                Collections.singleton(2L), Collections.<Long>emptySet()));
+        cache.doUpdate();
+        assertEquals(Arrays.asList(s2.getUuid()), stale.reloaded);
+        assertEquals(1, stale.batches);
+
+        stale.reloaded.clear();
+        cache.doUpdate();
+        assertTrue(stale.reloaded.isEmpty());
+    }
+
+    @Test
+    public void testFullUpdateIsNotRepeated() throws Exception {
+        final Session s = sess();
+        cache.putSession(s.getUuid(), sc(s));
+        final RecordingStaleCacheListener stale =
+                new RecordingStaleCacheListener();
+        cache.setStaleCacheListener(stale);
+
+        cache.updateEvent(new UserGroupUpdateEvent(this));
+        Thread.sleep(10L);
+        cache.doUpdate();
+        assertEquals(Arrays.asList(s.getUuid()), stale.reloaded);
+
+        stale.reloaded.clear();
+        cache.doUpdate();
+        assertTrue(stale.reloaded.isEmpty());
+    }
+
     /**
      * Note: the listener logic was removed from the cache. The new semantics
      * of when things should be cleaned up needs to be removed along with the
@@ -451,6 +499,27 @@ public class SessionCacheTest extends TestCase {
         }
     }
 
+    private final class RecordingStaleCacheListener implements
+            BatchStaleCacheListener {
+
+        final List<String> reloaded = new ArrayList<String>();
+
+        int batches = 0;
+
+        public SessionContext reload(SessionContext context) {
+            reloaded.add(context.getSession().getUuid());
+            return context;
+        }
+
+        public List<SessionContext> reload(List<SessionContext> contexts) {
+            batches++;
+            for (SessionContext context : contexts) {
+                reloaded.add(context.getSession().getUuid());
+            }
+            return contexts;
+        }
+    }
+
     private final class ThrowsStaleCacheListener implements StaleCacheListener {
         public void prepareReload() {
             // noop.
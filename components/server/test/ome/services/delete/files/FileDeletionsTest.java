@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) 2018 University of Dundee & Open Microscopy Environment.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package ome.services.delete.files;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import ome.io.nio.AbstractFileSystemService;
+import ome.io.nio.PixelsService;
+
+import org.apache.commons.io.FileUtils;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Tests the removal of the binary files of pixels and thumbnails, in the
+ * calling thread and in parallel.
+ * @since 5.5.0
+ */
+public class FileDeletionsTest {
+
+    /** Ids spread over two directories. */
+    private static final Set<Long> IDS =
+            new HashSet<Long>(Arrays.asList(1L, 2L, 1001L, 1002L));
+
+    private File root;
+
+    private AbstractFileSystemService afs;
+
+    private ExecutorService executor;
+
+    @BeforeMethod
+    public void setUp() throws IOException {
+        root = File.createTempFile("FileDeletionsTest", "");
+        root.delete();
+        root.mkdirs();
+        afs = new AbstractFileSystemService(root.getAbsolutePath());
+        executor = Executors.newFixedThreadPool(4);
+    }
+
+    @AfterMethod
+    public void tearDown() throws IOException {
+        executor.shutdownNow();
+        FileUtils.deleteDirectory(root);
+    }
+
+    private File touch(String path) throws IOException {
+        File file = new File(path);
+        FileUtils.touch(file);
+        return file;
+    }
+
+    private void assertPixelsDeleted(ExecutorService executor)
+            throws IOException {
+        for (Long id : IDS) {
+            String path = afs.getPixelsPath(id);
+            touch(path);
+            touch(path + PixelsService.PYRAMID_SUFFIX);
+            touch(path + PixelsService.HISTOGRAM_SUFFIX);
+        }
+        File dir = new File(afs.getPixelsPath(1L)).getParentFile();
+        File tmp = new File(dir, ".1" + PixelsService.PYRAMID_SUFFIX + "1.tmp");
+        FileUtils.touch(tmp);
+        File histogramTmp = new File(dir, ".2" + PixelsService.HISTOGRAM_SUFFIX
+                + ".tmp");
+        FileUtils.touch(histogramTmp);
+        // Not deleted
+        File other = touch(afs.getPixelsPath(3L));
+        File otherTmp = new File(dir, ".3" + PixelsService.PYRAMID_SUFFIX
+                + ".tmp");
+        FileUtils.touch(otherTmp);
+        File prefixedTmp = new File(dir, ".01" + PixelsService.PYRAMID_SUFFIX
+                + ".tmp");
+        FileUtils.touch(prefixedTmp);
+        File otherHistogramTmp = new File(dir, ".3"
+                + PixelsService.HISTOGRAM_SUFFIX + ".tmp");
+        FileUtils.touch(otherHistogramTmp);
+
+        PixelsFileDeletions deletions = new PixelsFileDeletions(afs, IDS);
+        Assert.assertEquals(deletions.deleteLocal(executor), 0);
+        Assert.assertEquals(deletions.getUndeletedFiles().length, 0);
+        for (Long id : IDS) {
+            String path = afs.getPixelsPath(id);
+            Assert.assertFalse(new File(path).exists(), path);
+            Assert.assertFalse(new File(path + PixelsService.PYRAMID_SUFFIX)
+                    .exists(), path);
+            Assert.assertFalse(new File(path + PixelsService.HISTOGRAM_SUFFIX)
+                    .exists(), path);
+        }
+        Assert.assertFalse(tmp.exists());
+        Assert.assertFalse(histogramTmp.exists());
+        Assert.assertTrue(other.exists());
+        Assert.assertTrue(otherTmp.exists());
+        Assert.assertTrue(prefixedTmp.exists());
+        Assert.assertTrue(otherHistogramTmp.exists());
+    }
+
+    @Test
+    public void testPixelsFilesAreDeleted() throws IOException {
+        assertPixelsDeleted(null);
+    }
+
+    @Test
+    public void testPixelsFilesAreDeletedInParallel() throws IOException {
+        assertPixelsDeleted(executor);
+    }
+
+    @Test
+    public void testFailuresAreReported() throws IOException {
+        for (Long id : IDS) {
+            if (id == 1001L) {
+                // A non-empty directory cannot be deleted.
+                touch(afs.getThumbnailPath(id) + File.separator + "file");
+            } else {
+                touch(afs.getThumbnailPath(id));
+            }
+        }
+
+        ThumbnailFileDeletions deletions = new ThumbnailFileDeletions(afs, IDS);
+        Assert.assertEquals(deletions.deleteLocal(executor), 1);
+        Assert.assertEquals(deletions.getUndeletedFiles(), new long[] {1001L});
+        for (Long id : IDS) {
+            Assert.assertEquals(new File(afs.getThumbnailPath(id)).exists(),
+                    id == 1001L);
+        }
+    }
+}
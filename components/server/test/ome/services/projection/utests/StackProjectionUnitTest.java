@@ -0,0 +1,154 @@
+/*
+ * Copyright (C) 2018 University of Dundee & Open Microscopy Environment.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package ome.services.projection.utests;
+
+import java.nio.ByteBuffer;
+
+import ome.api.IProjection;
+import ome.services.projection.StackProjection;
+import ome.system.metrics.NullMetrics;
+import ome.util.PixelData;
+import omeis.providers.re.RenderingScheduler;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+/**
+ * Tests the plane by plane {@link StackProjection} against the values
+ * projected pixel by pixel through {@link PixelData#getPixelValue(int)}.
+ * @since 5.5.0
+ */
+public class StackProjectionUnitTest {
+
+    private static final int sizeX = 48;
+
+    private static final int sizeY = 200;
+
+    private static final int sizeZ = 5;
+
+    private RenderingScheduler scheduler;
+
+    @BeforeClass
+    public void setUp() {
+        scheduler = new RenderingScheduler(new NullMetrics(), 4, 0);
+    }
+
+    @AfterClass
+    public void tearDown() {
+        scheduler.destroy();
+    }
+
+    private PixelData[] stack(String type, int bytesPerPixel) {
+        PixelData[] planes = new PixelData[sizeZ];
+        for (int z = 0; z < sizeZ; z++) {
+            byte[] bytes = new byte[sizeX * sizeY * bytesPerPixel];
+            for (int i = 0; i < bytes.length; i++) {
+                bytes[i] = (byte) (i * (z + 3) + z);
+            }
+            planes[z] = new PixelData(type, ByteBuffer.wrap(bytes));
+        }
+        return planes;
+    }
+
+    private double expected(int algorithm, PixelData[] planes, int i,
+            double typeMaximum) {
+        double value = 0;
+        for (PixelData plane : planes) {
+            double v = plane.getPixelValue(i);
+            if (algorithm == IProjection.MAXIMUM_INTENSITY) {
+                value = v > value ? v : value;
+            } else {
+                value += v;
+            }
+        }
+        if (algorithm == IProjection.MAXIMUM_INTENSITY) {
+            return value;
+        }
+        if (algorithm == IProjection.MEAN_INTENSITY) {
+            value = value / planes.length;
+        }
+        return value > typeMaximum ? typeMaximum : value;
+    }
+
+    private void assertProjection(String type, int bytesPerPixel,
+            int algorithm) {
+        PixelData[] planes = stack(type, bytesPerPixel);
+        StackProjection projection =
+                new StackProjection(algorithm, sizeX, sizeY);
+        for (PixelData plane : planes) {
+            projection.add(plane, scheduler);
+        }
+        PixelData to = new PixelData(type,
+                ByteBuffer.allocate(sizeX * sizeY * bytesPerPixel));
+        double[] minMax = { Double.MAX_VALUE, Double.MIN_VALUE };
+        projection.write(to, sizeX, 0, 0, minMax);
+        PixelData expected = new PixelData(type,
+                ByteBuffer.allocate(sizeX * sizeY * bytesPerPixel));
+        double min = Double.MAX_VALUE;
+        double max = Double.MIN_VALUE;
+        for (int i = 0; i < sizeX * sizeY; i++) {
+            double value = expected(algorithm, planes, i, to.getMaximum());
+            expected.setPixelValue(i, value);
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+            Assert.assertEquals(to.getPixelValue(i),
+                    expected.getPixelValue(i), type + " " + i);
+        }
+        Assert.assertEquals(minMax[0], min);
+        Assert.assertEquals(minMax[1], max);
+    }
+
+    @Test
+    public void testAlgorithms() {
+        String[] types = { "uint8", "int8", "uint16", "int16", "uint32",
+                "int32", "float" };
+        int[] sizes = { 1, 1, 2, 2, 4, 4, 4 };
+        int[] algorithms = { IProjection.MAXIMUM_INTENSITY,
+                IProjection.MEAN_INTENSITY, IProjection.SUM_INTENSITY };
+        for (int i = 0; i < types.length; i++) {
+            for (int algorithm : algorithms) {
+                assertProjection(types[i], sizes[i], algorithm);
+            }
+        }
+    }
+
+    @Test
+    public void testRegionIsWrittenAtOffset() {
+        PixelData plane = new PixelData("uint8", ByteBuffer.wrap(
+                new byte[] { 1, 2, 3, 4, 5, 6 }));
+        StackProjection projection =
+                new StackProjection(IProjection.MAXIMUM_INTENSITY, 3, 2);
+        projection.add(plane, scheduler);
+        PixelData to = new PixelData("uint8", ByteBuffer.allocate(5 * 4));
+        projection.write(to, 5, 2, 1, null);
+        Assert.assertEquals(to.getPixelValue(5 * 1 + 2), 1.0);
+        Assert.assertEquals(to.getPixelValue(5 * 1 + 4), 3.0);
+        Assert.assertEquals(to.getPixelValue(5 * 2 + 2), 4.0);
+        Assert.assertEquals(to.getPixelValue(5 * 2 + 4), 6.0);
+        Assert.assertEquals(to.getPixelValue(0), 0.0);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testUnknownAlgorithm() {
+        new StackProjection(-1, sizeX, sizeY);
+    }
+}
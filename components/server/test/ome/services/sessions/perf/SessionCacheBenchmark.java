@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2018 University of Dundee & Open Microscopy Environment.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package ome.services.sessions.perf;
+
+import java.sql.Timestamp;
+import java.util.Collections;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import ome.model.internal.Permissions;
+import ome.model.meta.Experimenter;
+import ome.model.meta.ExperimenterGroup;
+import ome.model.meta.Session;
+import ome.services.sessions.SessionContext;
+import ome.services.sessions.SessionContextImpl;
+import ome.services.sessions.state.SessionCache;
+import ome.services.sessions.stats.NullSessionStats;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the throughput of {@link SessionCache#getSessionContext(String)}
+ * as called on each service invocation, with 1 to 8 threads looking up
+ * either the same session or sessions picked at random. Run with
+ * <code>ant benchmark -DBENCHMARK=SessionCacheBenchmark</code> from
+ * <code>components/server</code>; the allocation rate reported by the
+ * <code>gc</code> profiler should be close to zero.
+ *
+ * @since 5.5.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SessionCacheBenchmark {
+
+    /** The number of sessions in the cache. */
+    @Param({"1000"})
+    public int sessions;
+
+    /** Whether all the threads look up the same session. */
+    @Param({"true", "false"})
+    public boolean hot;
+
+    private SessionCache cache;
+
+    private String[] uuids;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        cache = new SessionCache();
+        uuids = new String[sessions];
+        for (int i = 0; i < sessions; i++) {
+            uuids[i] = UUID.randomUUID().toString();
+            cache.putSession(uuids[i], createContext(uuids[i]));
+        }
+    }
+
+    private String pick() {
+        return hot ? uuids[0] :
+            uuids[ThreadLocalRandom.current().nextInt(uuids.length)];
+    }
+
+    @Benchmark
+    @Threads(1)
+    public SessionContext lookup1() {
+        return cache.getSessionContext(pick());
+    }
+
+    @Benchmark
+    @Threads(2)
+    public SessionContext lookup2() {
+        return cache.getSessionContext(pick());
+    }
+
+    @Benchmark
+    @Threads(4)
+    public SessionContext lookup4() {
+        return cache.getSessionContext(pick());
+    }
+
+    @Benchmark
+    @Threads(8)
+    public SessionContext lookup8() {
+        return cache.getSessionContext(pick());
+    }
+
+    private static SessionContext createContext(String uuid) {
+        Session s = new Session();
+        s.setStarted(new Timestamp(System.currentTimeMillis()));
+        s.setTimeToIdle(0L);
+        s.setTimeToLive(0L);
+        s.setUuid(uuid);
+        ExperimenterGroup g = new ExperimenterGroup(1L, false);
+        g.getDetails().setPermissions(Permissions.PRIVATE);
+        s.getDetails().setGroup(g);
+        s.getDetails().setOwner(new Experimenter(1L, false));
+        return new SessionContextImpl(s, Collections.singletonList(1L),
+                Collections.singletonList(1L), Collections.singletonList(""),
+                new NullSessionStats(), null);
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2018 University of Dundee & Open Microscopy Environment.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package ome.services.utests;
+
+import java.io.File;
+import java.util.Random;
+
+import ome.api.IAdmin;
+import ome.api.local.LocalQuery;
+import ome.api.local.LocalUpdate;
+import ome.io.nio.FileBuffer;
+import ome.model.core.OriginalFile;
+import ome.model.enums.ChecksumAlgorithm;
+import ome.services.RawFileBean;
+import ome.util.checksum.ChecksumProviderFactory;
+import ome.util.checksum.ChecksumProviderFactoryImpl;
+import ome.util.checksum.ChecksumType;
+
+import org.jmock.Mock;
+import org.jmock.MockObjectTestCase;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Checks that the hash saved by {@link RawFileBean} matches the content of
+ * the file whether or not it could be calculated as the file was written.
+ *
+ * @since 5.5.0
+ */
+@Test
+public class RawFileBeanMockTest extends MockObjectTestCase {
+
+    private static final int BLOCK = 1000;
+
+    private final ChecksumProviderFactory factory =
+            new ChecksumProviderFactoryImpl();
+
+    private final Random random = new Random(0);
+
+    private File path;
+
+    private RawFileBean bean;
+
+    @Override
+    @BeforeMethod
+    protected void setUp() throws Exception {
+        super.setUp();
+        path = File.createTempFile("RawFileBeanMockTest", ".bin");
+
+        final OriginalFile file = new OriginalFile(1L, true);
+        file.setHasher(new ChecksumAlgorithm(ChecksumAlgorithm.VALUE_SHA1_160));
+
+        final Mock qm = mock(LocalQuery.class);
+        qm.expects(once()).method("get").will(returnValue(file));
+        final Mock um = mock(LocalUpdate.class);
+        um.expects(atLeastOnce()).method("flush");
+        final Mock am = mock(IAdmin.class);
+        am.expects(once()).method("canUpdate").will(returnValue(true));
+
+        bean = new RawFileBean(false);
+        bean.setQueryService((LocalQuery) qm.proxy());
+        bean.setUpdateService((LocalUpdate) um.proxy());
+        bean.setAdminService((IAdmin) am.proxy());
+        bean.setChecksumProviderFactory(factory);
+        bean.setFileIdWithBuffer(1L, new FileBuffer(path.getPath(), "rw"));
+    }
+
+    @Override
+    @AfterMethod
+    protected void tearDown() throws Exception {
+        path.delete();
+        super.tearDown();
+    }
+
+    public void testSequentialWrites() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            bean.write(block(), i * BLOCK, BLOCK);
+        }
+        assertSavedHash();
+    }
+
+    public void testOutOfOrderWrites() throws Exception {
+        bean.write(block(), BLOCK, BLOCK);
+        bean.write(block(), 0, BLOCK);
+        assertSavedHash();
+    }
+
+    public void testOverwrite() throws Exception {
+        bean.write(block(), 0, BLOCK);
+        bean.write(block(), BLOCK, BLOCK);
+        bean.write(block(), BLOCK / 2, BLOCK);
+        assertSavedHash();
+    }
+
+    public void testWriteAfterSave() throws Exception {
+        bean.write(block(), 0, BLOCK);
+        assertSavedHash();
+        bean.write(block(), BLOCK, BLOCK);
+        assertSavedHash();
+    }
+
+    public void testShortWrite() throws Exception {
+        bean.write(block(), 0, BLOCK / 3);
+        bean.write(block(), BLOCK / 3, BLOCK);
+        assertSavedHash();
+    }
+
+    private byte[] block() {
+        final byte[] buf = new byte[BLOCK];
+        random.nextBytes(buf);
+        return buf;
+    }
+
+    /**
+     * Saves the file and checks its hash against the hash of the whole file
+     * as read from disk.
+     */
+    private void assertSavedHash() {
+        final OriginalFile saved = bean.save();
+        assertNotNull(saved);
+        assertEquals(Long.valueOf(path.length()), saved.getSize());
+        assertEquals(factory.getProvider(ChecksumType.SHA1)
+                .putFile(path.getPath()).checksumAsString(), saved.getHash());
+    }
+}
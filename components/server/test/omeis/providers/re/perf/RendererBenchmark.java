@@ -0,0 +1,293 @@
+/*
+ * Copyright (C) 2018 University of Dundee & Open Microscopy Environment.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package omeis.providers.re.perf;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import ome.io.nio.InMemoryPlanarPixelBuffer;
+import ome.logic.RenderingSettingsImpl;
+import ome.model.core.Channel;
+import ome.model.core.Pixels;
+import ome.model.display.ChannelBinding;
+import ome.model.display.RenderingDef;
+import ome.model.enums.Family;
+import ome.model.enums.PixelsType;
+import ome.model.enums.RenderingModel;
+import ome.model.stats.StatsInfo;
+import ome.system.metrics.NullMetrics;
+import omeis.providers.re.Renderer;
+import omeis.providers.re.RenderingScheduler;
+import omeis.providers.re.codomain.ReverseIntensityContext;
+import omeis.providers.re.data.PlaneDef;
+import omeis.providers.re.lut.LutProvider;
+import omeis.providers.re.lut.LutReader;
+import omeis.providers.re.lut.LutReaderFactory;
+import omeis.providers.re.quantum.QuantumFactory;
+import omeis.providers.re.utests.TestPixelsMetadataService;
+import omeis.providers.re.utests.TestPixelsService;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the throughput of {@link Renderer#renderAsPackedInt(PlaneDef,
+ * ome.io.nio.PixelBuffer)} for a plane held in an
+ * {@link InMemoryPlanarPixelBuffer}, so that only the quantization and
+ * colour mapping loops are measured. Run with <code>ant benchmark</code>
+ * from <code>components/server</code>, which also reports the allocation
+ * rates.
+ * <p>
+ * The <code>mode</code> parameter selects the colours of the channels and
+ * hence the {@link omeis.providers.re.Optimizations} enabled:
+ * <ul>
+ * <li><code>primary</code>: red, green and blue channels, both primary
+ * colour and alphaless rendering are enabled for up to 3 channels.</li>
+ * <li><code>color</code>: other opaque colours, only alphaless rendering
+ * is enabled.</li>
+ * <li><code>alpha</code>: translucent colours, no optimization.</li>
+ * <li><code>lut</code>: each channel is mapped through a lookup table.</li>
+ * </ul>
+ * </p>
+ *
+ * @since 5.5.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RendererBenchmark {
+
+    /** The name of the lookup table used in <code>lut</code> mode. */
+    private static final String LUT = "benchmark.lut";
+
+    /** The opaque colours which are not primary. */
+    private static final int[][] COLORS = {
+        {255, 128, 0}, {0, 255, 255}, {255, 0, 255}, {128, 128, 128}
+    };
+
+    @Param({"uint8", "uint16", "float"})
+    public String pixelsType;
+
+    @Param({"1", "3", "4"})
+    public int sizeC;
+
+    @Param({"primary", "color", "alpha", "lut"})
+    public String mode;
+
+    @Param({"false", "true"})
+    public boolean reverseIntensity;
+
+    @Param({"1024"})
+    public int size;
+
+    /** The number of rendering threads, 0 for one per processor. */
+    @Param({"1"})
+    public int threads;
+
+    private Renderer renderer;
+
+    private RenderingScheduler scheduler;
+
+    private PlaneDef planeDef;
+
+    private File lutFile;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        lutFile = createLookupTable();
+        final LutReader lutReader = LutReaderFactory.read(lutFile);
+
+        PixelsType type = new PixelsType();
+        type.setValue(pixelsType);
+        type.setBitSize(getBytesPerPixel() * 8);
+        Pixels pixels = createPixels(type);
+        byte[][][][] planes = new byte[1][sizeC][1][];
+        Random random = new Random(0);
+        for (int c = 0; c < sizeC; c++) {
+            planes[0][c][0] = createPlane(random);
+        }
+
+        TestPixelsMetadataService metadataService =
+                new TestPixelsMetadataService();
+        TestPixelsService pixelsService = new TestPixelsService(pixels);
+        pixelsService.setDummyPlane(planes[0][0][0]);
+        RenderingSettingsImpl settingsService = new RenderingSettingsImpl();
+        settingsService.setPixelsMetadata(metadataService);
+        settingsService.setPixelsData(pixelsService);
+        RenderingDef settings = settingsService.createNewRenderingDef(pixels);
+        settingsService.resetDefaultsNoSave(settings, pixels);
+
+        List<Family> families =
+                metadataService.getAllEnumerations(Family.class);
+        List<RenderingModel> models =
+                metadataService.getAllEnumerations(RenderingModel.class);
+        renderer = new Renderer(new QuantumFactory(families), models,
+                pixels, settings, new InMemoryPlanarPixelBuffer(pixels, planes),
+                new LutProvider() {
+                    public List<LutReader> getLutReaders(
+                            ChannelBinding[] channelBindings) {
+                        List<LutReader> readers = new ArrayList<LutReader>();
+                        for (ChannelBinding cb : channelBindings) {
+                            if (cb.getActive()) {
+                                readers.add(cb.getLookupTable() == null ?
+                                        null : lutReader);
+                            }
+                        }
+                        return readers;
+                    }
+                });
+        scheduler = new RenderingScheduler(new NullMetrics(), threads, 0);
+        renderer.setScheduler(scheduler);
+        for (RenderingModel model : models) {
+            if (Renderer.MODEL_RGB.equals(model.getValue())) {
+                renderer.setModel(model);
+            }
+        }
+        for (int c = 0; c < sizeC; c++) {
+            renderer.setActive(c, true);
+            configureChannel(c);
+            if (reverseIntensity) {
+                renderer.getCodomainChain(c).add(
+                        new ReverseIntensityContext());
+            }
+        }
+
+        planeDef = new PlaneDef(PlaneDef.XY, 0);
+        planeDef.setZ(0);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        renderer.close();
+        scheduler.destroy();
+        lutFile.delete();
+    }
+
+    @Benchmark
+    public int[] renderAsPackedInt() throws Exception {
+        return renderer.renderAsPackedInt(planeDef, null);
+    }
+
+    /**
+     * Sets the colour or lookup table of the given channel according to
+     * {@link #mode}.
+     */
+    private void configureChannel(int c) {
+        if ("lut".equals(mode)) {
+            renderer.setRGBA(c, 255, 255, 255, 255);
+            renderer.setChannelLookupTable(c, LUT);
+        } else if ("primary".equals(mode)) {
+            int[] rgb = new int[3];
+            rgb[c % 3] = 255;
+            renderer.setRGBA(c, rgb[0], rgb[1], rgb[2], 255);
+        } else {
+            int[] rgb = COLORS[c % COLORS.length];
+            int alpha = "alpha".equals(mode) ? 200 : 255;
+            renderer.setRGBA(c, rgb[0], rgb[1], rgb[2], alpha);
+        }
+    }
+
+    private int getBytesPerPixel() {
+        if ("uint8".equals(pixelsType)) {
+            return 1;
+        } else if ("uint16".equals(pixelsType)) {
+            return 2;
+        }
+        return 4;
+    }
+
+    /**
+     * Returns random values spread over the whole range of the integer
+     * types and between 0 and 1000 for floating point data.
+     */
+    private byte[] createPlane(Random random) {
+        byte[] plane = new byte[size * size * getBytesPerPixel()];
+        if ("float".equals(pixelsType)) {
+            ByteBuffer buf = ByteBuffer.wrap(plane);
+            while (buf.hasRemaining()) {
+                buf.putFloat(random.nextFloat() * 1000);
+            }
+        } else {
+            random.nextBytes(plane);
+        }
+        return plane;
+    }
+
+    private Pixels createPixels(PixelsType type) {
+        Pixels pixels = new Pixels(1L, true);
+        pixels.setSizeX(size);
+        pixels.setSizeY(size);
+        pixels.setSizeZ(1);
+        pixels.setSizeC(sizeC);
+        pixels.setSizeT(1);
+        pixels.setPixelsType(type);
+        double max = "float".equals(pixelsType) ?
+                1000 : Math.pow(2, getBytesPerPixel() * 8) - 1;
+        for (int c = 0; c < sizeC; c++) {
+            StatsInfo si = new StatsInfo();
+            si.setGlobalMin(0.0);
+            si.setGlobalMax(max);
+            Channel channel = new Channel();
+            channel.setStatsInfo(si);
+            pixels.addChannel(channel);
+        }
+        return pixels;
+    }
+
+    /**
+     * Writes a raw 256 entries lookup table to a temporary file.
+     */
+    private static File createLookupTable() throws IOException {
+        File file = File.createTempFile("renderer", ".lut");
+        byte[] lut = new byte[768];
+        for (int i = 0; i < 256; i++) {
+            lut[i] = (byte) i;
+            lut[256 + i] = (byte) (255 - i);
+            lut[512 + i] = (byte) (i / 2);
+        }
+        FileOutputStream stream = new FileOutputStream(file);
+        try {
+            stream.write(lut);
+        } finally {
+            stream.close();
+        }
+        return file;
+    }
+}
@@ -11,6 +11,7 @@ import java.util.List;
 import java.util.Random;
 
 import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
 
 import ome.api.IPixels;
 import ome.io.nio.PixelBuffer;
@@ -25,6 +26,7 @@ import ome.model.stats.StatsInfo;
 import omeis.providers.re.Renderer;
 import omeis.providers.re.lut.LutProvider;
 import omeis.providers.re.quantum.QuantumFactory;
+import omeis.providers.re.quantum.QuantumStrategy;
 import junit.framework.TestCase;
 
 public class BaseRenderingTest extends TestCase
@@ -83,6 +85,20 @@ public class BaseRenderingTest extends TestCase
 				                pixels, settings, pixelBuffer, lutProvider);
 	}
 	
+	@Test
+	public void testBulkQuantize() throws Exception
+	{
+		QuantumStrategy qs =
+			quantumFactory.getStrategy(settings.getQuantization(), pixels);
+		int size = data.size();
+		int[] values = new int[size];
+		qs.quantize(data, 0, size, values, 0);
+		for (int i = 0; i < size; i++)
+		{
+			assertEquals(qs.quantize(data.getPixelValue(i)), values[i]);
+		}
+	}
+
 	protected QuantumFactory createQuantumFactory()
 	{
 		return new TestQuantumFactory();
@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2018 University of Dundee & Open Microscopy Environment.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package omeis.providers.re.utests;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.file.Files;
+import java.nio.file.attribute.FileTime;
+
+import ome.io.nio.PixelsService;
+import ome.services.RenderedTileCache;
+import ome.system.metrics.NullMetrics;
+import omeis.providers.re.data.PlaneDef;
+
+import org.apache.commons.io.FileUtils;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.Test;
+
+/**
+ * Checks that the images cached by {@link RenderedTileCache} are no longer
+ * returned once the pixels have been written or the pyramid regenerated.
+ */
+public class RenderedTileCacheTest extends BaseRenderingTest
+{
+	private File root;
+
+	private PixelsService service;
+
+	private RenderedTileCache cache;
+
+	@Override
+	protected int getSizeX()
+	{
+		return 64;
+	}
+
+	@Override
+	protected int getSizeY()
+	{
+		return 64;
+	}
+
+	@AfterClass
+	public void deleteRoot() throws Exception
+	{
+		if (root != null)
+		{
+			FileUtils.deleteDirectory(root);
+		}
+	}
+
+	private void createCache() throws Exception
+	{
+		root = Files.createTempDirectory("RenderedTileCacheTest").toFile();
+		service = new PixelsService(root.getAbsolutePath());
+		cache = new RenderedTileCache(new NullMetrics(), 1 << 20, service);
+		File file = new File(service.getPixelsPath(pixels.getId()));
+		file.getParentFile().mkdirs();
+		FileUtils.writeByteArrayToFile(file,
+				new byte[getSizeX() * getSizeY() * getBytesPerPixel()]);
+	}
+
+	/** Renders the plane as the engine would before caching it. */
+	private byte[] render(PlaneDef def) throws Exception
+	{
+		int[] rgb = renderer.renderAsPackedInt(def, pixelBuffer);
+		ByteBuffer bytes = ByteBuffer.allocate(rgb.length * 4);
+		IntBuffer ints = bytes.asIntBuffer();
+		ints.put(rgb);
+		return bytes.array();
+	}
+
+	/** Modifies the given file and moves its modification time forward. */
+	private void touch(File file, int position) throws Exception
+	{
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try
+		{
+			raf.seek(position);
+			raf.write(1);
+		}
+		finally
+		{
+			raf.close();
+		}
+		Files.setLastModifiedTime(file.toPath(), FileTime.fromMillis(
+				file.lastModified() + 2000));
+	}
+
+	@Test
+	public void testWriteThenRerender() throws Exception
+	{
+		createCache();
+		PlaneDef def = new PlaneDef(PlaneDef.XY, 0);
+		RenderedTileCache.Key key = cache.key(renderer, def, 0.85f);
+		assertNotNull(key);
+		byte[] tile = render(def);
+		cache.put(key, tile);
+		assertSame(tile, cache.get(cache.key(renderer, def, 0.85f)));
+
+		// Overwriting the pixels does not change the size of the file.
+		touch(new File(service.getPixelsPath(pixels.getId())), 0);
+		RenderedTileCache.Key written = cache.key(renderer, def, 0.85f);
+		assertFalse(key.equals(written));
+		assertNull(cache.get(written));
+		cache.put(written, render(def));
+		assertNotNull(cache.get(cache.key(renderer, def, 0.85f)));
+
+		// A pyramid generated since also invalidates the images.
+		File pyramid = new File(service.getPixelsPath(pixels.getId())
+				+ PixelsService.PYRAMID_SUFFIX);
+		FileUtils.writeByteArrayToFile(pyramid, new byte[16]);
+		assertNull(cache.get(cache.key(renderer, def, 0.85f)));
+	}
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2018 University of Dundee & Open Microscopy Environment.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package omeis.providers.re.utests;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import ome.system.metrics.Counter;
+import ome.system.metrics.DefaultCounter;
+import ome.system.metrics.NullMetrics;
+import omeis.providers.re.RenderingScheduler;
+import omeis.providers.re.RenderingTask;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Checks that {@link RenderingScheduler} runs every task exactly once and
+ * that its queue depth returns to zero whichever thread runs the tasks.
+ */
+public class RenderingSchedulerTest {
+
+    private final Map<String, Counter> counters = new HashMap<String, Counter>();
+
+    private RenderingScheduler scheduler;
+
+    /** Keeps the counters created by the scheduler for inspection. */
+    private final NullMetrics metrics = new NullMetrics() {
+        @Override
+        public Counter counter(Object obj, String name) {
+            Counter counter =
+                    new DefaultCounter(new com.codahale.metrics.Counter());
+            counters.put(name, counter);
+            return counter;
+        }
+    };
+
+    @AfterMethod
+    public void destroy() {
+        if (scheduler != null) {
+            scheduler.destroy();
+        }
+    }
+
+    private RenderingTask[] tasks(int n, final long sleep,
+            final AtomicInteger count, final Runnable nested) {
+        RenderingTask[] tasks = new RenderingTask[n];
+        for (int i = 0; i < n; i++) {
+            tasks[i] = new RenderingTask() {
+                public Object call() {
+                    if (nested != null) {
+                        nested.run();
+                    }
+                    try {
+                        Thread.sleep(sleep);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    count.incrementAndGet();
+                    return null;
+                }
+            };
+        }
+        return tasks;
+    }
+
+    @Test(timeOut = 30000)
+    public void testSaturatedPool() throws Exception {
+        scheduler = new RenderingScheduler(metrics, 1, 1);
+        AtomicInteger count = new AtomicInteger();
+        scheduler.execute(tasks(20, 5, count, null));
+        Assert.assertEquals(count.get(), 20);
+        Assert.assertTrue(counters.get("saturatedCount").getCount() > 0);
+        Assert.assertEquals(counters.get("queueDepth").getCount(), 0);
+    }
+
+    @Test(timeOut = 30000)
+    public void testNestedSubmission() throws Exception {
+        scheduler = new RenderingScheduler(metrics, 2, 2);
+        final AtomicInteger inner = new AtomicInteger();
+        AtomicInteger outer = new AtomicInteger();
+        Runnable nested = new Runnable() {
+            public void run() {
+                try {
+                    scheduler.execute(tasks(8, 1, inner, null));
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        };
+        for (int i = 0; i < 5; i++) {
+            scheduler.execute(tasks(6, 0, outer, nested));
+        }
+        Assert.assertEquals(outer.get(), 30);
+        Assert.assertEquals(inner.get(), 30 * 8);
+        Assert.assertEquals(counters.get("queueDepth").getCount(), 0);
+    }
+}
@@ -28,7 +28,6 @@ import java.util.Map.Entry;
 
 import ome.api.RawPixelsStore;
 import ome.io.nio.RomioPixelBuffer;
-import omero.ApiUsageException;
 import omero.api.RawPixelsStorePrx;
 import omero.model.Image;
 import omero.model.Pixels;
@@ -369,23 +368,56 @@ public class RawPixelsStoreTest extends AbstractServerTest {
     }
 
     /**
-     * Tests that the histogram generation fails for big images
+     * Tests the histogram generation for big images, which is computed from
+     * the tiles of the pyramid.
      * 
      * @throws Exception
      *             Thrown if an error occurred.
      */
     @Test
-    public void testGetHistogramFail() throws Exception {
-        // Test fail, if called on big images
+    public void testGetHistogramBigImage() throws Exception {
         localSetUp(1, 10000, 10000, ModelMockFactory.UINT16);
-        try {
-            svc.getHistogram(new int[] { 0 }, -1, true, new PlaneDef(
-                    omeis.providers.re.data.PlaneDef.XY, 0, 0, 0, 0, null, -1));
-            Assert.fail("The method getHistogram() can not handle big images and should "
-                    + "have thrown an ApiUsageException.");
-        } catch (ApiUsageException ex) {
-            // expected
+        Map<Integer, int[]> histo = svc.getHistogram(new int[] { 0 }, -1,
+                true, new PlaneDef(omeis.providers.re.data.PlaneDef.XY, 0, 0,
+                        0, 0, new RegionDef(0, 0, 1024, 1024), -1));
+        Assert.assertEquals(histo.size(), 1);
+        Assert.assertEquals(histo.get(0).length, 256);
+        Assert.assertEquals(sum(histo.get(0)), 1024 * 1024);
+    }
+
+    /**
+     * Tests the histogram generation for big images with regions which
+     * only cover part of the tiles at their edges, or which extend beyond
+     * the image.
+     *
+     * @throws Exception
+     *             Thrown if an error occurred.
+     */
+    @Test
+    public void testGetHistogramBigImagePartialTiles() throws Exception {
+        localSetUp(1, 10000, 10000, ModelMockFactory.UINT16);
+        Map<Integer, int[]> histo = svc.getHistogram(new int[] { 0 }, -1,
+                true, new PlaneDef(omeis.providers.re.data.PlaneDef.XY, 0, 0,
+                        0, 0, new RegionDef(300, 500, 700, 900), -1));
+        Assert.assertEquals(histo.get(0).length, 256);
+        Assert.assertEquals(sum(histo.get(0)), 700 * 900);
+
+        // Only the pixels within the image are counted.
+        histo = svc.getHistogram(new int[] { 0 }, -1,
+                true, new PlaneDef(omeis.providers.re.data.PlaneDef.XY, 0, 0,
+                        0, 0, new RegionDef(9700, 9900, 500, 500), -1));
+        Assert.assertEquals(sum(histo.get(0)), 300 * 100);
+    }
+
+    /**
+     * Returns the number of pixels counted in a histogram.
+     */
+    private static int sum(int[] bins) {
+        int sum = 0;
+        for (int bin : bins) {
+            sum += bin;
         }
+        return sum;
     }
     
     /**
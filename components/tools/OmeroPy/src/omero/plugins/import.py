@@ -465,6 +465,13 @@ class ImportControl(BaseControl):
         add_advjava_argument(
             "--parallel-fileset", metavar="COUNT",
             help="Number of fileset candidates to import at the same time")
+        add_advjava_argument(
+            "--parallel-scan", metavar="COUNT",
+            help="Number of files to scan for fileset candidates at the same"
+            " time")
+        add_advjava_argument(
+            "--upload-window", metavar="COUNT",
+            help="Number of blocks of a file to upload at the same time")
 
         # Unsure on these.
         add_python_argument(